@@ -3,7 +3,10 @@ package net.whirvis.mc.discraft.bot;
 import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.login.LoginException;
 
@@ -18,13 +21,27 @@ import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.hooks.AnnotatedEventManager;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
+import net.whirvis.mc.discraft.bot.cmd.CommandExecutor;
+import net.whirvis.mc.discraft.bot.cmd.DiscordCommand;
 import net.whirvis.mc.discraft.bot.cmd.DiscordCommandCenter;
 import net.whirvis.mc.discraft.bot.cmd.LangCommand;
+import net.whirvis.mc.discraft.bot.cmd.LinkCommand;
+import net.whirvis.mc.discraft.bot.cmd.PrefixCommand;
 import net.whirvis.mc.discraft.bot.cmd.RegisterCommand;
+import net.whirvis.mc.discraft.bot.cmd.Scope;
 import net.whirvis.mc.discraft.bot.config.DBConfig;
-import net.whirvis.mc.discraft.bot.config.DBUser;
+import net.whirvis.mc.discraft.bot.db.CircuitBreaker;
+import net.whirvis.mc.discraft.bot.db.ConnectionPool;
+import net.whirvis.mc.discraft.bot.db.DBExecutor;
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.db.DiscraftSchema;
+import net.whirvis.mc.discraft.bot.guild.GuildPrefixes;
+import net.whirvis.mc.discraft.bot.link.LinkManager;
+import net.whirvis.mc.discraft.bot.rest.RestScheduler;
+import net.whirvis.mc.discraft.bot.sched.MaintenanceEngine;
 import net.whirvis.mc.discraft.bot.user.UserManager;
 import net.whirvis.mc.discraft.bot.web.DiscraftWebserver;
+import net.whirvis.mc.discraft.bot.web.LinkEndpoint;
 
 /**
  * The Discraft bot.
@@ -34,13 +51,20 @@ public class DiscraftBot {
 	private final File configFile;
 	private final EventManager events;
 	private final DiscordCommandCenter guildCmds;
+	private final List<DBExecutor> dbExecutors;
+	private final List<DiscordCommand> commands;
 
 	private DiscraftBotConfig botConfig;
 	private DBConfig dbConfig;
 
+	private CommandExecutor cmdExecutor;
+	private RestScheduler outbound;
 	private JDA discord;
 	private UserManager userManager;
+	private GuildPrefixes guildPrefixes;
+	private LinkManager linkManager;
 	private DiscraftWebserver webserver;
+	private MaintenanceEngine maintenance;
 
 	/**
 	 * Constructs a new {@code DiscraftBot}.
@@ -55,6 +79,45 @@ public class DiscraftBot {
 		this.configFile = Objects.requireNonNull(configFile, "configFile");
 		this.events = new EventManager();
 		this.guildCmds = new DiscordCommandCenter("!discraft", "guild", events);
+		this.dbExecutors = new ArrayList<>();
+		this.commands = new ArrayList<>();
+	}
+
+	/*
+	 * The breaker is set on the router as well, so database work done on
+	 * other threads (such as the maintenance jobs) is refused while the
+	 * database is down, rather than waiting out a timeout every time.
+	 */
+	private DBExecutor createExecutor(DBRouter router) {
+		CircuitBreaker breaker = new CircuitBreaker(
+				router.getPrimary().getName(), botConfig.getBreakerSettings());
+		router.setBreaker(breaker);
+		DBExecutor executor =
+				new DBExecutor(router, botConfig.getDBQueueSize(), breaker);
+		dbExecutors.add(executor);
+		return executor;
+	}
+
+	/*
+	 * Commands set their own per user rate limits, as how often someone
+	 * should use a command depends on what it does. The channel and guild
+	 * limits are the same for every command.
+	 */
+	private void registerCommand(DiscordCommand command) {
+		command.timeout(botConfig.getCommandTimeout());
+		command.rateLimit(Scope.CHANNEL, botConfig.getChannelRateBurst(),
+				botConfig.getChannelRatePeriod());
+		command.rateLimit(Scope.GUILD, botConfig.getGuildRateBurst(),
+				botConfig.getGuildRatePeriod());
+		guildCmds.register(command);
+		commands.add(command);
+	}
+
+	private void sweepRateLimits() {
+		for (DiscordCommand command : commands) {
+			command.sweepRateLimits();
+		}
+		outbound.sweep();
 	}
 
 	private JDA createDiscord() throws LoginException {
@@ -70,10 +133,48 @@ public class DiscraftBot {
 
 	private DiscraftWebserver createWebserver() {
 		DiscraftWebserver webserver = new DiscraftWebserver(botConfig.getWebserverPort());
-		/* TODO: Register endpoints, etc. */
+		if (linkManager != null) {
+			webserver.registerEndpoint(new LinkEndpoint(linkManager, outbound));
+		}
 		return webserver;
 	}
 
+	private MaintenanceEngine createMaintenance() {
+		MaintenanceEngine engine = new MaintenanceEngine("discraft",
+				botConfig.getMaintenanceThreads());
+		long jitter = botConfig.getMaintenanceJitter();
+
+		engine.schedule("user-update", botConfig.getUserUpdateInterval(),
+				jitter, TimeUnit.MILLISECONDS, userManager::update)
+				.runOnShutdown(true);
+		engine.schedule("settings-flush", botConfig.getSettingsFlushInterval(),
+				jitter, TimeUnit.MILLISECONDS, userManager::flushSettings)
+				.runOnShutdown(true);
+
+		for (ConnectionPool pool : dbConfig.getPools()) {
+			engine.schedule("pool-evict-" + pool.getName(),
+					botConfig.getPoolEvictInterval(), jitter,
+					TimeUnit.MILLISECONDS, pool::evictIdle);
+		}
+
+		engine.schedule("rate-limit-sweep",
+				botConfig.getRateLimitSweepInterval(), jitter,
+				TimeUnit.MILLISECONDS, this::sweepRateLimits);
+
+		engine.schedule("guild-prefix-reload",
+				botConfig.getGuildPrefixReloadInterval(), jitter,
+				TimeUnit.MILLISECONDS, guildPrefixes::reload);
+
+		if (linkManager != null) {
+			long maxAge = botConfig.getLinkExpiryAge();
+			engine.schedule("link-expiry", botConfig.getLinkExpiryInterval(),
+					jitter, TimeUnit.MILLISECONDS,
+					() -> linkManager.expireLinks(maxAge));
+		}
+
+		return engine;
+	}
+
 	/**
 	 * Starts the Discraft bot.
 	 * 
@@ -90,6 +191,14 @@ public class DiscraftBot {
 		this.botConfig = DiscraftBotConfig.load(configFile);
 		this.dbConfig = DBConfig.load(botConfig.getDBConfigFile());
 
+		this.cmdExecutor = new CommandExecutor("guild",
+				botConfig.getCommandThreads(), botConfig.getCommandQueueSize());
+		guildCmds.executor(cmdExecutor);
+
+		this.outbound =
+				new RestScheduler("discraft", botConfig.getRestSettings());
+		guildCmds.outbound(outbound);
+
 		try {
 			this.discord = this.createDiscord();
 			discord.awaitReady();
@@ -97,21 +206,102 @@ public class DiscraftBot {
 			throw new DiscraftException("Discord login failure", e);
 		}
 
-		DBUser dbum = dbConfig.getUser("user-manager");
-		this.userManager = new UserManager(dbum.conn());
-		guildCmds.register(new RegisterCommand(userManager));
-		guildCmds.register(new LangCommand(userManager));
+		/*
+		 * The schema must be up to date before anything touches the database.
+		 * Each database user may point at a different database, so each one
+		 * which owns tables is migrated. Only primaries are migrated, as the
+		 * replicas get the schema from them. Migrating a database which has
+		 * already been migrated through another user does nothing.
+		 */
+		DBRouter dbum = dbConfig.getRouter("user-manager");
+		DBRouter dblm = dbConfig.getRouter("link-manager");
+		DiscraftSchema.migrate(dbum.getPrimary());
+		if (dblm != null) {
+			DiscraftSchema.migrate(dblm.getPrimary());
+		}
+
+		DBExecutor dbumExecutor = this.createExecutor(dbum);
+		this.userManager = new UserManager(dbum, dbumExecutor,
+				botConfig.getUserCacheMaxEntries(),
+				botConfig.getUserCacheMaxIdle(),
+				botConfig.getUnregisteredCacheTtl(),
+				botConfig.getSettingsFlushBatch());
+		this.registerCommand(new RegisterCommand(userManager));
+		this.registerCommand(new LangCommand(userManager));
+
+		/*
+		 * Guild prefixes are kept in the same database as users. Until they
+		 * are loaded, only the default prefix is accepted.
+		 */
+		this.guildPrefixes =
+				new GuildPrefixes(dbum, dbumExecutor, guildCmds.getPrefix());
+		guildPrefixes.reload();
+		guildCmds.prefixes(guildPrefixes);
+		this.registerCommand(new PrefixCommand(guildPrefixes));
+
+		/*
+		 * Linking is optional, as not every deployment has a database user
+		 * set up for it. Without one, the link command and endpoint are not
+		 * registered at all.
+		 */
+		if (dblm != null) {
+			this.linkManager = new LinkManager(dblm, this.createExecutor(dblm));
+			this.registerCommand(new LinkCommand(linkManager, outbound));
+		}
 
 		this.webserver = this.createWebserver();
 		webserver.start();
-		
-		while(true) {
+
+		this.maintenance = this.createMaintenance();
+	}
+
+	/**
+	 * Stops the Discraft bot.
+	 * <p>
+	 * Commands which are already underway are allowed to finish first. The
+	 * webserver is stopped next, so no new requests reach the database while
+	 * its work is being finished. Afterwards, maintenance is stopped, so any
+	 * data still cached by the bot gets written back before Discord is
+	 * shutdown. Any messages still waiting to be sent are handed to Discord
+	 * just before it is shutdown. The database connections are closed last.
+	 */
+	public void stop() {
+		if (cmdExecutor != null) {
 			try {
-				Thread.sleep(0, 1);
+				cmdExecutor.shutdown(10L, TimeUnit.SECONDS);
 			} catch (InterruptedException e) {
-				/* ignore */
+				Thread.currentThread().interrupt();
 			}
-			userManager.update();
+		}
+		if (webserver != null) {
+			webserver.stop();
+		}
+		for (DBExecutor executor : dbExecutors) {
+			try {
+				executor.shutdown(10L, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (maintenance != null) {
+			try {
+				maintenance.shutdown(10L, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (outbound != null) {
+			try {
+				outbound.shutdown(10L, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (discord != null) {
+			discord.shutdown();
+		}
+		if (dbConfig != null) {
+			dbConfig.close();
 		}
 	}
 
@@ -122,6 +312,8 @@ public class DiscraftBot {
 		try {
 			File configFile = new File(args.get(0));
 			DiscraftBot bot = new DiscraftBot(configFile);
+			Runtime.getRuntime().addShutdownHook(
+					new Thread(bot::stop, "discraft-shutdown"));
 			bot.start();
 		} catch (ConfigException e) {
 			/* TODO: Use Log4j2 */
@@ -12,6 +12,9 @@ import com.whirvex.config.ConfigException;
 import com.whirvex.config.ConfigManager;
 import com.whirvex.config.JsonConfigManager;
 
+import net.whirvis.mc.discraft.bot.db.BreakerSettings;
+import net.whirvis.mc.discraft.bot.rest.RestSettings;
+
 /**
  * The config for the Discraft bot.
  * 
@@ -32,6 +35,80 @@ public class DiscraftBotConfig {
 	private static final Config<Integer> WEBSERVER_PORT =
 			new Config<>(int.class, "webserver-port").fallback(8080);
 
+	private static final Config<Integer> MAINTENANCE_THREADS =
+			new Config<>(int.class, "maintenance-threads").fallback(1);
+	private static final Config<Long> MAINTENANCE_JITTER =
+			new Config<>(long.class, "maintenance-jitter").fallback(100L);
+	private static final Config<Long> USER_UPDATE_INTERVAL =
+			new Config<>(long.class, "user-update-interval").fallback(1000L);
+	private static final Config<Long> SETTINGS_FLUSH_INTERVAL =
+			new Config<>(long.class, "settings-flush-interval").fallback(1000L);
+	private static final Config<Integer> SETTINGS_FLUSH_BATCH =
+			new Config<>(int.class, "settings-flush-batch").fallback(500);
+	private static final Config<Integer> USER_CACHE_MAX_ENTRIES =
+			new Config<>(int.class, "user-cache-max-entries").fallback(10000);
+	private static final Config<Long> USER_CACHE_MAX_IDLE =
+			new Config<>(long.class, "user-cache-max-idle").fallback(10000L);
+	private static final Config<Long> UNREGISTERED_CACHE_TTL =
+			new Config<>(long.class, "unregistered-cache-ttl").fallback(5000L);
+	private static final Config<Long> LINK_EXPIRY_INTERVAL =
+			new Config<>(long.class, "link-expiry-interval").fallback(30000L);
+	private static final Config<Long> LINK_EXPIRY_AGE =
+			new Config<>(long.class, "link-expiry-age").fallback(600000L);
+	private static final Config<Long> POOL_EVICT_INTERVAL =
+			new Config<>(long.class, "pool-evict-interval").fallback(30000L);
+	private static final Config<Long> GUILD_PREFIX_RELOAD_INTERVAL =
+			new Config<>(long.class, "guild-prefix-reload-interval")
+					.fallback(60000L);
+	private static final Config<Integer> DB_QUEUE_SIZE =
+			new Config<>(int.class, "db-queue-size").fallback(1000);
+
+	private static final Config<Integer> BREAKER_WINDOW =
+			new Config<>(int.class, "breaker-window").fallback(20);
+	private static final Config<Integer> BREAKER_MIN_CALLS =
+			new Config<>(int.class, "breaker-min-calls").fallback(10);
+	private static final Config<Integer> BREAKER_FAILURE_RATE =
+			new Config<>(int.class, "breaker-failure-rate").fallback(50);
+	private static final Config<Long> BREAKER_SLOW_CALL =
+			new Config<>(long.class, "breaker-slow-call").fallback(2000L);
+	private static final Config<Integer> BREAKER_SLOW_RATE =
+			new Config<>(int.class, "breaker-slow-rate").fallback(80);
+	private static final Config<Long> BREAKER_OPEN_TIME =
+			new Config<>(long.class, "breaker-open-time").fallback(10000L);
+	private static final Config<Integer> BREAKER_PROBES =
+			new Config<>(int.class, "breaker-probes").fallback(3);
+
+	private static final Config<Integer> COMMAND_THREADS =
+			new Config<>(int.class, "command-threads").fallback(4);
+	private static final Config<Integer> COMMAND_QUEUE_SIZE =
+			new Config<>(int.class, "command-queue-size").fallback(100);
+	private static final Config<Long> COMMAND_TIMEOUT =
+			new Config<>(long.class, "command-timeout").fallback(30000L);
+	private static final Config<Integer> CHANNEL_RATE_BURST =
+			new Config<>(int.class, "channel-rate-burst").fallback(10);
+	private static final Config<Long> CHANNEL_RATE_PERIOD =
+			new Config<>(long.class, "channel-rate-period").fallback(10000L);
+	private static final Config<Integer> GUILD_RATE_BURST =
+			new Config<>(int.class, "guild-rate-burst").fallback(30);
+	private static final Config<Long> GUILD_RATE_PERIOD =
+			new Config<>(long.class, "guild-rate-period").fallback(10000L);
+	private static final Config<Long> RATE_LIMIT_SWEEP_INTERVAL =
+			new Config<>(long.class, "rate-limit-sweep-interval")
+					.fallback(60000L);
+
+	private static final Config<Integer> REST_ROUTE_BURST =
+			new Config<>(int.class, "rest-route-burst").fallback(5);
+	private static final Config<Long> REST_ROUTE_PERIOD =
+			new Config<>(long.class, "rest-route-period").fallback(5000L);
+	private static final Config<Integer> REST_GLOBAL_BURST =
+			new Config<>(int.class, "rest-global-burst").fallback(50);
+	private static final Config<Long> REST_GLOBAL_PERIOD =
+			new Config<>(long.class, "rest-global-period").fallback(1000L);
+	private static final Config<Integer> REST_MAX_QUEUED =
+			new Config<>(int.class, "rest-max-queued").fallback(1000);
+	private static final Config<Long> REST_STALE_AFTER =
+			new Config<>(long.class, "rest-stale-after").fallback(30000L);
+
 	private final File file;
 
 	private DiscraftLang lang;
@@ -39,6 +116,30 @@ public class DiscraftBotConfig {
 	private String botToken;
 	private int webserverPort;
 
+	private int maintenanceThreads;
+	private long maintenanceJitter;
+	private long userUpdateInterval;
+	private long settingsFlushInterval;
+	private int settingsFlushBatch;
+	private int userCacheMaxEntries;
+	private long userCacheMaxIdle;
+	private long unregisteredCacheTtl;
+	private long linkExpiryInterval;
+	private long linkExpiryAge;
+	private long poolEvictInterval;
+	private long guildPrefixReloadInterval;
+	private int dbQueueSize;
+	private BreakerSettings breakerSettings;
+	private int commandThreads;
+	private int commandQueueSize;
+	private long commandTimeout;
+	private int channelRateBurst;
+	private long channelRatePeriod;
+	private int guildRateBurst;
+	private long guildRatePeriod;
+	private long rateLimitSweepInterval;
+	private RestSettings restSettings;
+
 	/**
 	 * Loads a Discord bot config.
 	 * <p>
@@ -83,6 +184,49 @@ public class DiscraftBotConfig {
 
 		this.botToken = CONFIG.load(BOT_TOKEN, config);
 		this.webserverPort = CONFIG.load(WEBSERVER_PORT, config);
+
+		this.maintenanceThreads = CONFIG.load(MAINTENANCE_THREADS, config);
+		this.maintenanceJitter = CONFIG.load(MAINTENANCE_JITTER, config);
+		this.userUpdateInterval = CONFIG.load(USER_UPDATE_INTERVAL, config);
+		this.settingsFlushInterval =
+				CONFIG.load(SETTINGS_FLUSH_INTERVAL, config);
+		this.settingsFlushBatch = CONFIG.load(SETTINGS_FLUSH_BATCH, config);
+		this.userCacheMaxEntries = CONFIG.load(USER_CACHE_MAX_ENTRIES, config);
+		this.userCacheMaxIdle = CONFIG.load(USER_CACHE_MAX_IDLE, config);
+		this.unregisteredCacheTtl = CONFIG.load(UNREGISTERED_CACHE_TTL, config);
+		this.linkExpiryInterval = CONFIG.load(LINK_EXPIRY_INTERVAL, config);
+		this.linkExpiryAge = CONFIG.load(LINK_EXPIRY_AGE, config);
+		this.poolEvictInterval = CONFIG.load(POOL_EVICT_INTERVAL, config);
+		this.guildPrefixReloadInterval =
+				CONFIG.load(GUILD_PREFIX_RELOAD_INTERVAL, config);
+		this.dbQueueSize = CONFIG.load(DB_QUEUE_SIZE, config);
+
+		this.breakerSettings = new BreakerSettings();
+		breakerSettings.windowSize(CONFIG.load(BREAKER_WINDOW, config));
+		breakerSettings.minCalls(CONFIG.load(BREAKER_MIN_CALLS, config));
+		breakerSettings.failureRate(CONFIG.load(BREAKER_FAILURE_RATE, config));
+		breakerSettings.slowCall(CONFIG.load(BREAKER_SLOW_CALL, config));
+		breakerSettings.slowRate(CONFIG.load(BREAKER_SLOW_RATE, config));
+		breakerSettings.openTime(CONFIG.load(BREAKER_OPEN_TIME, config));
+		breakerSettings.probes(CONFIG.load(BREAKER_PROBES, config));
+
+		this.commandThreads = CONFIG.load(COMMAND_THREADS, config);
+		this.commandQueueSize = CONFIG.load(COMMAND_QUEUE_SIZE, config);
+		this.commandTimeout = CONFIG.load(COMMAND_TIMEOUT, config);
+		this.channelRateBurst = CONFIG.load(CHANNEL_RATE_BURST, config);
+		this.channelRatePeriod = CONFIG.load(CHANNEL_RATE_PERIOD, config);
+		this.guildRateBurst = CONFIG.load(GUILD_RATE_BURST, config);
+		this.guildRatePeriod = CONFIG.load(GUILD_RATE_PERIOD, config);
+		this.rateLimitSweepInterval =
+				CONFIG.load(RATE_LIMIT_SWEEP_INTERVAL, config);
+
+		this.restSettings = new RestSettings();
+		restSettings.routeBurst(CONFIG.load(REST_ROUTE_BURST, config));
+		restSettings.routePeriod(CONFIG.load(REST_ROUTE_PERIOD, config));
+		restSettings.globalBurst(CONFIG.load(REST_GLOBAL_BURST, config));
+		restSettings.globalPeriod(CONFIG.load(REST_GLOBAL_PERIOD, config));
+		restSettings.maxQueued(CONFIG.load(REST_MAX_QUEUED, config));
+		restSettings.staleAfter(CONFIG.load(REST_STALE_AFTER, config));
 	}
 
 	/**
@@ -134,4 +278,233 @@ public class DiscraftBotConfig {
 		return this.webserverPort;
 	}
 
+	/**
+	 * Returns how many threads the maintenance engine should use.
+	 * 
+	 * @return how many threads the maintenance engine should use.
+	 */
+	public int getMaintenanceThreads() {
+		return this.maintenanceThreads;
+	}
+
+	/**
+	 * Returns the maximum random delay added to each maintenance job.
+	 * 
+	 * @return the maximum random delay added to each maintenance job, in
+	 *         milliseconds.
+	 */
+	public long getMaintenanceJitter() {
+		return this.maintenanceJitter;
+	}
+
+	/**
+	 * Returns how often cached users are updated.
+	 * 
+	 * @return how often cached users are updated, in milliseconds.
+	 */
+	public long getUserUpdateInterval() {
+		return this.userUpdateInterval;
+	}
+
+	/**
+	 * Returns how often changed user settings are written to the database.
+	 * 
+	 * @return how often changed user settings are written to the database,
+	 *         in milliseconds.
+	 */
+	public long getSettingsFlushInterval() {
+		return this.settingsFlushInterval;
+	}
+
+	/**
+	 * Returns the maximum number of updates sent to the database in a single
+	 * batch when writing changed user settings.
+	 * 
+	 * @return the maximum number of updates sent in a single batch.
+	 */
+	public int getSettingsFlushBatch() {
+		return this.settingsFlushBatch;
+	}
+
+	/**
+	 * Returns the maximum number of users kept in memory.
+	 * 
+	 * @return the maximum number of users kept in memory.
+	 */
+	public int getUserCacheMaxEntries() {
+		return this.userCacheMaxEntries;
+	}
+
+	/**
+	 * Returns how long an unreferenced user is kept in memory.
+	 * 
+	 * @return how long an unreferenced user is kept in memory, in
+	 *         milliseconds.
+	 */
+	public long getUserCacheMaxIdle() {
+		return this.userCacheMaxIdle;
+	}
+
+	/**
+	 * Returns how long a Discord user is remembered as being unregistered.
+	 * <p>
+	 * The bot will never remember this for longer than
+	 * {@link #getUserCacheMaxIdle()}.
+	 * 
+	 * @return how long a Discord user is remembered as being unregistered,
+	 *         in milliseconds.
+	 */
+	public long getUnregisteredCacheTtl() {
+		return this.unregisteredCacheTtl;
+	}
+
+	/**
+	 * Returns how often old link processes are expired.
+	 * 
+	 * @return how often old link processes are expired, in milliseconds.
+	 */
+	public long getLinkExpiryInterval() {
+		return this.linkExpiryInterval;
+	}
+
+	/**
+	 * Returns how long a link process lives before it expires.
+	 * 
+	 * @return how long a link process lives before it expires, in
+	 *         milliseconds.
+	 */
+	public long getLinkExpiryAge() {
+		return this.linkExpiryAge;
+	}
+
+	/**
+	 * Returns how often idle database connections are closed.
+	 * 
+	 * @return how often idle database connections are closed, in
+	 *         milliseconds.
+	 */
+	public long getPoolEvictInterval() {
+		return this.poolEvictInterval;
+	}
+
+	/**
+	 * Returns how often guild prefixes are reloaded from the database, in
+	 * milliseconds. Prefixes changed with the prefix command take effect
+	 * right away, this only picks up changes made elsewhere.
+	 * 
+	 * @return how often to reload guild prefixes.
+	 */
+	public long getGuildPrefixReloadInterval() {
+		return this.guildPrefixReloadInterval;
+	}
+
+	/**
+	 * Returns how many database operations may wait to be run before new ones
+	 * are rejected.
+	 * 
+	 * @return the database queue size.
+	 */
+	public int getDBQueueSize() {
+		return this.dbQueueSize;
+	}
+
+	/**
+	 * Returns the settings for the circuit breaker of each database.
+	 * 
+	 * @return the circuit breaker settings.
+	 */
+	@NotNull
+	public BreakerSettings getBreakerSettings() {
+		return this.breakerSettings;
+	}
+
+	/**
+	 * Returns how many threads commands are executed on.
+	 * 
+	 * @return how many command threads to use.
+	 */
+	public int getCommandThreads() {
+		return this.commandThreads;
+	}
+
+	/**
+	 * Returns how many commands may wait to be executed before new ones are
+	 * rejected.
+	 * 
+	 * @return the command queue size.
+	 */
+	public int getCommandQueueSize() {
+		return this.commandQueueSize;
+	}
+
+	/**
+	 * Returns how long a command may run before it is timed out, in
+	 * milliseconds.
+	 * 
+	 * @return the command timeout.
+	 */
+	public long getCommandTimeout() {
+		return this.commandTimeout;
+	}
+
+	/**
+	 * Returns how many times each command can be executed at once in a
+	 * channel.
+	 * 
+	 * @return the channel rate limit burst.
+	 */
+	public int getChannelRateBurst() {
+		return this.channelRateBurst;
+	}
+
+	/**
+	 * Returns how long it takes for the channel rate limit of a command to
+	 * reset, in milliseconds.
+	 * 
+	 * @return the channel rate limit period.
+	 */
+	public long getChannelRatePeriod() {
+		return this.channelRatePeriod;
+	}
+
+	/**
+	 * Returns how many times each command can be executed at once in a
+	 * guild.
+	 * 
+	 * @return the guild rate limit burst.
+	 */
+	public int getGuildRateBurst() {
+		return this.guildRateBurst;
+	}
+
+	/**
+	 * Returns how long it takes for the guild rate limit of a command to
+	 * reset, in milliseconds.
+	 * 
+	 * @return the guild rate limit period.
+	 */
+	public long getGuildRatePeriod() {
+		return this.guildRatePeriod;
+	}
+
+	/**
+	 * Returns how often rate limits of users, channels and guilds which have
+	 * not used a command recently are removed, in milliseconds.
+	 * 
+	 * @return how often to sweep rate limits.
+	 */
+	public long getRateLimitSweepInterval() {
+		return this.rateLimitSweepInterval;
+	}
+
+	/**
+	 * Returns the settings for sending requests to Discord.
+	 * 
+	 * @return the outbound scheduler settings.
+	 */
+	@NotNull
+	public RestSettings getRestSettings() {
+		return this.restSettings;
+	}
+
 }
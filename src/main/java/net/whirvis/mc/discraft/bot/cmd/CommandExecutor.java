@@ -0,0 +1,474 @@
+package net.whirvis.mc.discraft.bot.cmd;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs Discord commands off of the JDA event thread.
+ * <p>
+ * JDA dispatches every event on the same handful of threads. If a command
+ * runs on one of them, a single slow command holds up every other event the
+ * bot receives until it is done. Commands are handed to this executor
+ * instead, so the event thread can move on right away.
+ * <p>
+ * The executor has a fixed number of threads, and a bounded queue for
+ * commands waiting on them. Once the queue is full, new commands are
+ * rejected rather than piling up without bound.
+ * <p>
+ * Commands can be submitted with a key, such as the ID of the user who sent
+ * them. Commands with the same key are run one at a time, in the order they
+ * were submitted, while commands with different keys run in parallel. Each
+ * key has a mailbox of the commands waiting to run. Only one of them is ever
+ * handed to the threads at a time, and the next is handed over once it has
+ * finished. There is no lock shared between keys, and no thread for each
+ * key. Mailboxes are removed as soon as they are empty.
+ * <p>
+ * Each mailbox may only hold a few commands, including the one running. A
+ * key which already has that many is turned away, even if the executor has
+ * room to spare. Otherwise, one user spamming commands could fill up the
+ * whole executor with their own mailbox.
+ * <p>
+ * A command which finishes asynchronously can hold back the next command
+ * for its key until its future completes, see
+ * {@link #defer(CompletableFuture)}.
+ *
+ * @see DiscordCommandCenter#executor(CommandExecutor)
+ */
+public class CommandExecutor {
+
+	/**
+	 * The default number of commands each key may have waiting or running.
+	 */
+	public static final int DEFAULT_PER_KEY = 2;
+
+	/*
+	 * Retired mailboxes have their pending count set far below zero, so it
+	 * stays negative no matter how many submitters increment it afterwards.
+	 */
+	private static final int RETIRED = Integer.MIN_VALUE / 2;
+
+	/*
+	 * The turn the current thread is running for a mailbox, if any. This
+	 * lets a command defer the next command for its key, without needing to
+	 * know which executor or mailbox it is running on.
+	 */
+	private static final ThreadLocal<Turn> CURRENT = new ThreadLocal<>();
+
+	private static class Turn {
+
+		private CompletableFuture<?> deferred;
+
+	}
+
+	/*
+	 * The pending count includes the command currently running. A submitter
+	 * adds its command to the queue before counting it, so a command which
+	 * has been counted is always in the queue. A mailbox is retired by
+	 * changing its count from zero to RETIRED. Anyone who then finds the
+	 * retired mailbox removes it, and creates a new one in its place.
+	 *
+	 * The depth is how many commands have been let into the mailbox and not
+	 * yet finished. It is reserved before a command is added, so the limit
+	 * for each key is never overshot.
+	 */
+	private class Mailbox implements Runnable {
+
+		private final long key;
+		private final Queue<Runnable> commands;
+		private final AtomicInteger pending;
+		private final AtomicInteger depth;
+
+		private Mailbox(long key) {
+			this.key = key;
+			this.commands = new ConcurrentLinkedQueue<>();
+			this.pending = new AtomicInteger();
+			this.depth = new AtomicInteger();
+		}
+
+		private boolean reserve() {
+			int current;
+			do {
+				current = depth.get();
+				if (current >= perKey) {
+					return false;
+				}
+			} while (!depth.compareAndSet(current, current + 1));
+			return true;
+		}
+
+		@Override
+		public void run() {
+			Runnable command = commands.poll();
+			Turn turn = new Turn();
+			CURRENT.set(turn);
+			try {
+				command.run();
+			} catch (RuntimeException e) {
+				/* TODO: Use Log4j2 */
+				e.printStackTrace();
+			} finally {
+				CURRENT.remove();
+				CompletableFuture<?> deferred = turn.deferred;
+				if (deferred == null || deferred.isDone()) {
+					this.finish();
+				} else {
+					deferred.whenComplete((result, cause) -> this.finish());
+				}
+			}
+		}
+
+		private void finish() {
+			depth.decrementAndGet();
+			done();
+			if (pending.decrementAndGet() > 0) {
+				schedule(this);
+			} else if (pending.compareAndSet(0, RETIRED)) {
+				mailboxes.remove(key, this);
+			}
+		}
+
+	}
+
+	private final String name;
+	private final int capacity;
+	private final int perKey;
+	private final ThreadPoolExecutor executor;
+	private final Map<Long, Mailbox> mailboxes;
+	private final AtomicInteger queued;
+	private final LongAdder rejected;
+	private final Object drained;
+	private volatile boolean shutdown;
+
+	/**
+	 * Constructs a new {@code CommandExecutor}.
+	 *
+	 * @param name
+	 *            the executor name, used to name its threads.
+	 * @param threads
+	 *            how many threads to run commands on.
+	 * @param queueSize
+	 *            how many commands may wait to be run.
+	 * @param perKey
+	 *            how many commands each key may have waiting or running.
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code threads}, {@code queueSize} or {@code perKey} are
+	 *             not positive.
+	 */
+	public CommandExecutor(@NotNull String name, int threads, int queueSize,
+			int perKey) {
+		this.name = Objects.requireNonNull(name, "name");
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		} else if (queueSize <= 0) {
+			throw new IllegalArgumentException("queueSize must be positive");
+		} else if (perKey <= 0) {
+			throw new IllegalArgumentException("perKey must be positive");
+		}
+		this.perKey = perKey;
+
+		AtomicInteger threadId = new AtomicInteger();
+		ThreadFactory factory = (runnable) -> {
+			Thread thread = new Thread(runnable,
+					name + "-cmd-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		/*
+		 * The queue size is enforced when commands are submitted, rather
+		 * than by the queue of the pool. Once a command for a mailbox has
+		 * been accepted, handing it to the pool must never fail.
+		 */
+		this.capacity = threads + queueSize;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60L,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+		executor.allowCoreThreadTimeOut(true);
+		this.mailboxes = new ConcurrentHashMap<>();
+		this.queued = new AtomicInteger();
+		this.rejected = new LongAdder();
+		this.drained = new Object();
+	}
+
+	/**
+	 * Constructs a new {@code CommandExecutor}, which lets each key have up
+	 * to {@value #DEFAULT_PER_KEY} commands waiting or running.
+	 *
+	 * @param name
+	 *            the executor name, used to name its threads.
+	 * @param threads
+	 *            how many threads to run commands on.
+	 * @param queueSize
+	 *            how many commands may wait to be run.
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code threads} or {@code queueSize} are not positive.
+	 */
+	public CommandExecutor(@NotNull String name, int threads, int queueSize) {
+		this(name, threads, queueSize, DEFAULT_PER_KEY);
+	}
+
+	/**
+	 * Returns the executor name.
+	 *
+	 * @return the executor name.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Runs a command on this executor.
+	 *
+	 * @param command
+	 *            the command to run.
+	 * @return {@code true} if the command was accepted, {@code false} if it
+	 *         was rejected as the queue is full or the executor was shutdown.
+	 * @throws NullPointerException
+	 *             if {@code command} is {@code null}.
+	 */
+	public boolean submit(@NotNull Runnable command) {
+		Objects.requireNonNull(command, "command");
+		if (!this.reserve()) {
+			return false;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					command.run();
+				} finally {
+					this.done();
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			this.done();
+			rejected.increment();
+			return false;
+		}
+	}
+
+	/**
+	 * Runs a command on this executor, after every command submitted before
+	 * it with the same key has finished.
+	 *
+	 * @param key
+	 *            the key, such as the ID of the user who sent the command.
+	 * @param command
+	 *            the command to run.
+	 * @return {@code true} if the command was accepted, {@code false} if it
+	 *         was rejected as the queue is full, the key already has too many
+	 *         commands waiting, or the executor was shutdown.
+	 * @throws NullPointerException
+	 *             if {@code command} is {@code null}.
+	 */
+	public boolean submit(long key, @NotNull Runnable command) {
+		Objects.requireNonNull(command, "command");
+		if (!this.reserve()) {
+			return false;
+		}
+
+		while (true) {
+			Mailbox mailbox =
+					mailboxes.computeIfAbsent(key, Mailbox::new);
+			if (mailbox.pending.get() < 0) {
+				mailboxes.remove(key, mailbox);
+				continue; /* retired, create a new one */
+			} else if (!mailbox.reserve()) {
+				this.done();
+				rejected.increment();
+				return false;
+			}
+
+			mailbox.commands.add(command);
+			int pending = mailbox.pending.getAndIncrement();
+			if (pending < 0) {
+				/*
+				 * The mailbox was retired after all. It will never run again,
+				 * so the command can be taken back out safely.
+				 */
+				mailbox.commands.remove(command);
+				mailbox.depth.decrementAndGet();
+				mailboxes.remove(key, mailbox);
+				continue;
+			} else if (pending == 0) {
+				this.schedule(mailbox);
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * The command is counted before the shutdown flag is checked, while
+	 * shutdown() sets the flag before checking the count. So either the
+	 * command is turned away here, or shutdown() waits for it to finish.
+	 */
+	private boolean reserve() {
+		int current;
+		do {
+			current = queued.get();
+			if (current >= capacity) {
+				rejected.increment();
+				return false;
+			}
+		} while (!queued.compareAndSet(current, current + 1));
+
+		if (shutdown) {
+			this.done();
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+
+	private void done() {
+		if (queued.decrementAndGet() == 0 && shutdown) {
+			synchronized (drained) {
+				drained.notifyAll();
+			}
+		}
+	}
+
+	private void schedule(Mailbox mailbox) {
+		try {
+			executor.execute(mailbox);
+		} catch (RejectedExecutionException e) {
+			/*
+			 * This only happens if shutdown() timed out waiting for every
+			 * command to finish, which is the only time commands are ever
+			 * dropped.
+			 */
+			int dropped = Math.max(0, mailbox.pending.getAndSet(RETIRED));
+			mailbox.commands.clear();
+			mailboxes.remove(mailbox.key, mailbox);
+			for (int i = 0; i < dropped; i++) {
+				this.done();
+			}
+			rejected.add(dropped);
+		}
+	}
+
+	/**
+	 * Holds back the next command for the key of the command running on the
+	 * current thread, until a future completes.
+	 * <p>
+	 * This is meant for commands which finish asynchronously. Without it, the
+	 * next command for the same key could start while the work of the last
+	 * one is still underway. If the current thread is not running a command
+	 * submitted with a key, this method does nothing.
+	 *
+	 * @param future
+	 *            the future to wait for.
+	 * @throws NullPointerException
+	 *             if {@code future} is {@code null}.
+	 */
+	public static void defer(@NotNull CompletableFuture<?> future) {
+		Objects.requireNonNull(future, "future");
+		Turn turn = CURRENT.get();
+		if (turn == null) {
+			return;
+		} else if (turn.deferred == null) {
+			turn.deferred = future;
+		} else {
+			turn.deferred = CompletableFuture.allOf(turn.deferred, future);
+		}
+	}
+
+	/**
+	 * Returns how many commands have been accepted and not yet finished.
+	 * This includes commands which are currently running.
+	 *
+	 * @return how many commands are waiting or running.
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * Returns how many keys currently have commands waiting or running.
+	 *
+	 * @return how many keys have commands waiting or running.
+	 */
+	public int getMailboxes() {
+		return mailboxes.size();
+	}
+
+	/**
+	 * Returns how many commands are currently running.
+	 *
+	 * @return how many commands are currently running.
+	 */
+	public int getRunning() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns how many commands have been rejected, as the queue was full or
+	 * the executor was shutdown.
+	 *
+	 * @return how many commands have been rejected.
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Shuts down the executor.
+	 * <p>
+	 * No new commands will be accepted, but every command which has already
+	 * been accepted is allowed to finish, up to the given timeout. This
+	 * includes commands still waiting in a mailbox, and commands held back
+	 * by {@link #defer(CompletableFuture)}.
+	 *
+	 * @param timeout
+	 *            how long to wait for commands to finish.
+	 * @param unit
+	 *            the unit of {@code timeout}.
+	 * @return {@code true} if every command finished in time, {@code false}
+	 *         otherwise.
+	 * @throws NullPointerException
+	 *             if {@code unit} is {@code null}.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	public boolean shutdown(long timeout, @NotNull TimeUnit unit)
+			throws InterruptedException {
+		Objects.requireNonNull(unit, "unit");
+		this.shutdown = true;
+
+		/*
+		 * The threads are only shut down once every mailbox is empty. Until
+		 * then, each mailbox still needs to hand its next command over.
+		 */
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (drained) {
+			long remaining;
+			while (queued.get() > 0
+					&& (remaining = deadline - System.nanoTime()) > 0L) {
+				TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+			}
+		}
+
+		executor.shutdown();
+		long remaining = Math.max(0L, deadline - System.nanoTime());
+		return executor.awaitTermination(remaining, TimeUnit.NANOSECONDS)
+				&& queued.get() == 0;
+	}
+
+}
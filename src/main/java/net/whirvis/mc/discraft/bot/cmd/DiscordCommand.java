@@ -1,5 +1,15 @@
 package net.whirvis.mc.discraft.bot.cmd;
 
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -8,8 +18,12 @@ import com.whirvex.cmd.Command;
 import com.whirvex.cmd.CommandCenter;
 import com.whirvex.cmd.CommandSender;
 
+import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.PrivateChannel;
 import net.dv8tion.jda.api.entities.TextChannel;
+import net.whirvis.mc.discraft.bot.DiscraftLang;
+import net.whirvis.mc.discraft.bot.db.DBUnavailableException;
+import net.whirvis.mc.discraft.bot.util.RateLimiter;
 
 /**
  * An executable command for Discord.
@@ -17,6 +31,24 @@ import net.dv8tion.jda.api.entities.TextChannel;
  * Discord commands are commands meant to be run within the confines of a
  * Discord. As such, they can only be sent by Discord users (who are represented
  * as {@link DiscordCommandSender} at execution time).
+ * <p>
+ * Commands which need the database should not wait on it from the thread that
+ * executes them, as there are only a few threads shared by every command. They
+ * should instead use the asynchronous API of the manager they need, and pass
+ * the resulting future to
+ * {@link #async(DiscordCommandSender, CompletableFuture)} so that any errors
+ * are still reported to the sender.
+ * <p>
+ * Every command has a timeout, see {@link #timeout(long)}. A command which is
+ * still running once it is up is interrupted, and the sender is told that it
+ * took too long. For commands which complete asynchronously, the future given
+ * to {@code async()} is completed with a {@link TimeoutException} instead.
+ * <p>
+ * Commands can also be rate limited per user, channel and guild, see
+ * {@link #rateLimit(Scope, int, long)}. The limits are checked by the
+ * {@link DiscordCommandCenter} as soon as a command is received. A command
+ * which is over its limit is turned away before it is queued, so it never
+ * takes up a command thread, the database, or Discord.
  * 
  * @see #requirePrivate()
  * @see #requireGuild()
@@ -24,8 +56,36 @@ import net.dv8tion.jda.api.entities.TextChannel;
 public abstract class DiscordCommand extends Command {
 
 	private static final int DONT_CARE = 0, IN_DM = 1, IN_GUILD = 2;
+	private static final int RUNNING = 0, DONE = 1, TIMED_OUT = 2;
+
+	/**
+	 * The default timeout of a command, in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT = 30000L;
 
+	/*
+	 * All commands share the same timer, as it only ever interrupts a thread
+	 * or completes a future. Cancelled timeouts are removed right away, since
+	 * nearly every command finishes well before its timeout is up.
+	 */
+	private static final ScheduledThreadPoolExecutor TIMEOUTS;
+
+	static {
+		TIMEOUTS = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+			Thread thread = new Thread(runnable, "discord-cmd-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		TIMEOUTS.setRemoveOnCancelPolicy(true);
+	}
+
+	private static final Scope[] SCOPES = Scope.values();
+
+	private final String name;
 	private int requireLocation;
+	private long timeout;
+	private final RateLimiter[] limits;
+	private RateLimiter notices;
 
 	/**
 	 * Constructs a new guild command.
@@ -45,6 +105,19 @@ public abstract class DiscordCommand extends Command {
 	public DiscordCommand(@NotNull String label, @Nullable String usage,
 			@Nullable String desc) {
 		super(label, usage, desc);
+		this.name = label.toLowerCase(Locale.ROOT);
+		this.timeout = DEFAULT_TIMEOUT;
+		this.limits = new RateLimiter[SCOPES.length];
+	}
+
+	/**
+	 * Returns the name of this command, in lowercase.
+	 * 
+	 * @return the name of this command.
+	 */
+	@NotNull
+	String getName() {
+		return this.name;
 	}
 
 	/**
@@ -80,6 +153,189 @@ public abstract class DiscordCommand extends Command {
 		return this;
 	}
 
+	/*
+	 * Commands sent in the wrong place are turned away when executed. They
+	 * are not counted against any rate limits, as they never do anything.
+	 */
+	boolean isAllowedIn(MessageChannel channel) {
+		if (requireLocation == IN_DM) {
+			return channel instanceof PrivateChannel;
+		} else if (requireLocation == IN_GUILD) {
+			return channel instanceof TextChannel;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets how long this command may run before it is timed out.
+	 * 
+	 * @param timeout
+	 *            the timeout in milliseconds, {@code 0} for no timeout.
+	 * @return this command.
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is negative.
+	 */
+	@NotNull
+	public DiscordCommand timeout(long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout cannot be negative");
+		}
+		this.timeout = timeout;
+		return this;
+	}
+
+	/**
+	 * Returns how long this command may run before it is timed out.
+	 * 
+	 * @return the timeout in milliseconds, {@code 0} for no timeout.
+	 */
+	public long getTimeout() {
+		return this.timeout;
+	}
+
+	/**
+	 * Limits how often this command can be executed.
+	 * <p>
+	 * Each scope has its own limit, and a command must be within the limit of
+	 * every scope to be executed. Setting the limit of a scope again replaces
+	 * the old limit.
+	 * 
+	 * @param scope
+	 *            what the limit is counted against.
+	 * @param burst
+	 *            how many times the command can be executed at once.
+	 * @param period
+	 *            how long it takes to be able to execute the command
+	 *            {@code burst} times again, in milliseconds.
+	 * @return this command.
+	 * @throws NullPointerException
+	 *             if {@code scope} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code burst} or {@code period} are not positive.
+	 */
+	@NotNull
+	public DiscordCommand rateLimit(@NotNull Scope scope, int burst,
+			long period) {
+		Objects.requireNonNull(scope, "scope");
+		limits[scope.ordinal()] = new RateLimiter(burst, period);
+
+		/*
+		 * Telling someone they're being rate limited is a message too. They
+		 * are only told once per period, otherwise spamming the command would
+		 * still spam replies.
+		 */
+		long longest = period;
+		if (notices != null) {
+			longest = Math.max(longest, notices.getInterval());
+		}
+		this.notices = new RateLimiter(1, longest);
+		return this;
+	}
+
+	/**
+	 * Removes the rate limit of a scope.
+	 * 
+	 * @param scope
+	 *            the scope.
+	 * @return this command.
+	 * @throws NullPointerException
+	 *             if {@code scope} is {@code null}.
+	 */
+	@NotNull
+	public DiscordCommand noRateLimit(@NotNull Scope scope) {
+		Objects.requireNonNull(scope, "scope");
+		limits[scope.ordinal()] = null;
+		return this;
+	}
+
+	/**
+	 * Returns the rate limit of a scope.
+	 * 
+	 * @param scope
+	 *            the scope.
+	 * @return the rate limit, {@code null} if this command is not rate
+	 *         limited for {@code scope}.
+	 * @throws NullPointerException
+	 *             if {@code scope} is {@code null}.
+	 */
+	@Nullable
+	public RateLimiter getRateLimit(@NotNull Scope scope) {
+		Objects.requireNonNull(scope, "scope");
+		return limits[scope.ordinal()];
+	}
+
+	/**
+	 * Removes the rate limit buckets of everyone who has not used this
+	 * command recently.
+	 * 
+	 * @return how many buckets were removed.
+	 * @see RateLimiter#sweep()
+	 */
+	public int sweepRateLimits() {
+		int removed = 0;
+		for (RateLimiter limit : limits) {
+			if (limit != null) {
+				removed += limit.sweep();
+			}
+		}
+		RateLimiter notices = this.notices;
+		if (notices != null) {
+			removed += notices.sweep();
+		}
+		return removed;
+	}
+
+	/*
+	 * If one scope is over its limit, the tokens already taken from the
+	 * other scopes are given back. Otherwise, a user being turned away for
+	 * their guild being busy would also use up their own limit.
+	 */
+	long acquireLimits(DiscordCommandSender sender) {
+		for (int i = 0; i < limits.length; i++) {
+			RateLimiter limit = limits[i];
+			long id = limit != null ? SCOPES[i].idOf(sender) : 0L;
+			if (id == 0L) {
+				continue;
+			}
+
+			long wait = limit.acquire(id);
+			if (wait > 0L) {
+				this.releaseLimits(sender, i);
+				return wait;
+			}
+		}
+		return 0L;
+	}
+
+	/*
+	 * This gives back the tokens taken by acquireLimits(). It is also used
+	 * when a command was within its limits, but could not be executed as
+	 * the command executor was full.
+	 */
+	void releaseLimits(DiscordCommandSender sender) {
+		this.releaseLimits(sender, limits.length);
+	}
+
+	private void releaseLimits(DiscordCommandSender sender, int acquired) {
+		for (int i = 0; i < acquired; i++) {
+			RateLimiter limit = limits[i];
+			long id = limit != null ? SCOPES[i].idOf(sender) : 0L;
+			if (id != 0L) {
+				limit.release(id);
+			}
+		}
+	}
+
+	void reportLimited(DiscordCommandSender sender, long wait) {
+		RateLimiter notices = this.notices;
+		if (notices == null
+				|| notices.acquire(sender.getUser().getIdLong()) == 0L) {
+			long seconds = Math.max(1L, (wait + 999L) / 1000L);
+			sender.sendMessage(
+					DiscraftLang.getBotLang("cmd.rate-limited", seconds));
+		}
+	}
+
 	@Override
 	public final boolean execute(CommandCenter center, CommandSender sender,
 			Command cmd, Args args) {
@@ -89,36 +345,160 @@ public abstract class DiscordCommand extends Command {
 		}
 
 		DiscordCommandSender discordSender = (DiscordCommandSender) sender;
-		if (requireLocation == IN_DM
-				&& !(discordSender.getChannel() instanceof PrivateChannel)) {
-			sender.sendMessage("This command must be sent via DM.");
-			return true;
-		} else if (requireLocation == IN_GUILD
-				&& !(discordSender.getChannel() instanceof TextChannel)) {
-			sender.sendMessage("This command must be sent in a server.");
+		if (!this.isAllowedIn(discordSender.getChannel())) {
+			if (requireLocation == IN_DM) {
+				sender.sendMessage("This command must be sent via DM.");
+			} else {
+				sender.sendMessage("This command must be sent in a server.");
+			}
 			return true;
 		}
 
+		/*
+		 * The typing indicator is only cosmetic, there's no reason to wait
+		 * for Discord to acknowledge it before executing the command. By now,
+		 * the command is known to be within its rate limits. This matters, as
+		 * the indicator counts against the rate limits of the bot as well.
+		 */
+		discordSender.getChannel().sendTyping().queue();
+
+		/*
+		 * The watchdog only interrupts the command if it is still running.
+		 * Otherwise, it could interrupt whatever this thread goes on to do
+		 * after the command has finished.
+		 */
+		Thread worker = Thread.currentThread();
+		AtomicInteger state = new AtomicInteger(RUNNING);
+		ScheduledFuture<?> watchdog = null;
+		if (timeout > 0) {
+			watchdog = TIMEOUTS.schedule(() -> {
+				if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+					worker.interrupt();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+
+		/*
+		 * Replies are buffered until the command has finished, and are then
+		 * sent as few messages as possible. If the command completes
+		 * asynchronously, async() holds the sender until it is done.
+		 */
+		discordSender.hold();
 		try {
 			return this.execute(center, discordSender, cmd, args);
 		} catch (Exception e) {
-			StringBuilder msg = new StringBuilder();
-			msg.append("A bot error has occured while trying to execute this"
-					+ " command.\nApologies for the invonenience, but your"
-					+ " command cannot be completed at this time.\n");
-			sender.sendMessage(msg.toString());
-
-			/*
-			 * TODO: Log this error to the database. Stuff like the command
-			 * text, who sent it, the time it was sent, etc. For now though,
-			 * simply sending a message to the user and printing the stack trace
-			 * will suffice.
-			 */
-			e.printStackTrace();
+			if (state.get() == TIMED_OUT) {
+				this.reportError(discordSender, new TimeoutException());
+			} else {
+				this.reportError(discordSender, e);
+			}
 			return true;
+		} finally {
+			if (!state.compareAndSet(RUNNING, DONE)) {
+				Thread.interrupted(); /* clear watchdog interrupt */
+			}
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+			discordSender.release();
 		}
 	}
 
+	/**
+	 * Tells the sender of a command that it could not be completed due to an
+	 * error.
+	 * <p>
+	 * If the error is because the database is unavailable, the sender is
+	 * asked to try again later instead. This is expected during an outage,
+	 * so it is not printed. Likewise, if the command timed out, the sender is
+	 * only told that it took too long.
+	 * 
+	 * @param sender
+	 *            the command sender.
+	 * @param cause
+	 *            the error that occurred.
+	 */
+	protected void reportError(@NotNull DiscordCommandSender sender,
+			@NotNull Throwable cause) {
+		for (Throwable next = cause; next != null; next = next.getCause()) {
+			if (next instanceof DBUnavailableException) {
+				sender.sendMessage(
+						DiscraftLang.getBotLang("cmd.db-unavailable"));
+				return;
+			} else if (next instanceof TimeoutException) {
+				sender.sendMessage(DiscraftLang.getBotLang("cmd.timeout"));
+				return;
+			}
+		}
+
+		StringBuilder msg = new StringBuilder();
+		msg.append("A bot error has occured while trying to execute this"
+				+ " command.\nApologies for the invonenience, but your"
+				+ " command cannot be completed at this time.\n");
+		sender.sendMessage(msg.toString());
+
+		/*
+		 * TODO: Log this error to the database. Stuff like the command text,
+		 * who sent it, the time it was sent, etc. For now though, simply
+		 * sending a message to the user and printing the stack trace will
+		 * suffice.
+		 */
+		cause.printStackTrace();
+	}
+
+	/**
+	 * Ensures an error from a command which completes asynchronously is still
+	 * reported to its sender, like it would be for any other command.
+	 * <p>
+	 * If {@code future} is not complete once the timeout of this command is
+	 * up, it is completed with a {@link TimeoutException}. Work which is
+	 * already underway is not cancelled, but its result is ignored.
+	 * <p>
+	 * Messages sent to {@code sender} are buffered until {@code future}
+	 * completes. The next command from the same sender is not executed until
+	 * then either, see {@link CommandExecutor#defer}.
+	 * 
+	 * @param <T>
+	 *            the result type.
+	 * @param sender
+	 *            the command sender.
+	 * @param future
+	 *            the future the command completes with.
+	 * @return {@code future}.
+	 * @see #reportError(DiscordCommandSender, Throwable)
+	 */
+	@NotNull
+	protected <T> CompletableFuture<T> async(
+			@NotNull DiscordCommandSender sender,
+			@NotNull CompletableFuture<T> future) {
+		if (timeout > 0 && !future.isDone()) {
+			ScheduledFuture<?> expiry = TIMEOUTS.schedule(
+					() -> future.completeExceptionally(new TimeoutException()),
+					timeout, TimeUnit.MILLISECONDS);
+			future.whenComplete((result, cause) -> expiry.cancel(false));
+		}
+
+		/*
+		 * The next command from the sender must wait until the replies of
+		 * this one have been sent, not just until the future completes.
+		 */
+		sender.hold();
+		CommandExecutor.defer(future.whenComplete((result, cause) -> {
+			try {
+				if (cause instanceof CompletionException
+						&& cause.getCause() != null) {
+					cause = cause.getCause();
+				}
+				if (cause != null) {
+					this.reportError(sender, cause);
+				}
+			} finally {
+				sender.release();
+			}
+		}));
+		return future;
+	}
+
 	/**
 	 * Executes a command.
 	 * 
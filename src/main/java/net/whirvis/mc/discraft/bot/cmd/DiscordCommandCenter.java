@@ -1,6 +1,9 @@
 package net.whirvis.mc.discraft.bot.cmd;
 
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -14,9 +17,13 @@ import com.whirvex.event.EventListener;
 import com.whirvex.event.EventManager;
 
 import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.SubscribeEvent;
+import net.whirvis.mc.discraft.bot.DiscraftLang;
+import net.whirvis.mc.discraft.bot.guild.GuildPrefixes;
+import net.whirvis.mc.discraft.bot.rest.RestScheduler;
 
 /**
  * A command center which can execute commands from Discord.
@@ -26,7 +33,27 @@ import net.dv8tion.jda.api.hooks.SubscribeEvent;
  * is received in Discord, a check will be performed to see if it is a command.
  * If the message is a command, it will be executed automatically via
  * {@link #execute(CommandSender, String)}.
+ * <p>
+ * If an executor is set, commands received from Discord are executed on it
+ * rather than on the thread which received the message. This thread also
+ * dispatches every other Discord event, and should not be held up by a slow
+ * command. Commands from the same user are executed one at a time, in the
+ * order they were sent, so they never see each other half done.
+ * <p>
+ * If guild prefixes are set, commands sent in a guild may also begin with the
+ * custom prefix of that guild.
+ * <p>
+ * If an outbound scheduler is set, replies to commands are sent through it,
+ * so they never hold up more important requests to Discord.
+ * <p>
+ * The rate limits of a {@link DiscordCommand} are checked as soon as the
+ * command is received, before it is handed to the executor. As such, someone
+ * who is over their limit never takes up room in the executor. This requires
+ * the command to be registered with {@link #register(DiscordCommand)}.
  * 
+ * @see #executor(CommandExecutor)
+ * @see #prefixes(GuildPrefixes)
+ * @see #outbound(RestScheduler)
  * @see DiscordCommand
  * @see DiscordCommandSender
  */
@@ -34,6 +61,10 @@ public class DiscordCommandCenter extends CommandCenter
 		implements EventListener {
 
 	private final String prefix;
+	private final Map<String, DiscordCommand> commands;
+	private volatile CommandExecutor executor;
+	private volatile GuildPrefixes prefixes;
+	private volatile RestScheduler outbound;
 
 	/**
 	 * Creates a Discord command center.
@@ -55,6 +86,7 @@ public class DiscordCommandCenter extends CommandCenter
 		super(name, events);
 
 		this.prefix = Objects.requireNonNull(prefix, "prefix");
+		this.commands = new ConcurrentHashMap<>();
 		if (prefix.isEmpty()) {
 			throw new IllegalArgumentException("prefix cannot be empty");
 		} else if (!prefix.matches("\\S+")) {
@@ -121,24 +153,168 @@ public class DiscordCommandCenter extends CommandCenter
 		this(prefix, null, null);
 	}
 
-	private boolean isDiscordCommand(String cmd) {
+	/**
+	 * Registers a Discord command.
+	 * <p>
+	 * The command is also remembered by its name, so its rate limits can be
+	 * checked before it is handed to the executor.
+	 * 
+	 * @param command
+	 *            the command to register.
+	 * @throws NullPointerException
+	 *             if {@code command} is {@code null}.
+	 */
+	public void register(@NotNull DiscordCommand command) {
+		Objects.requireNonNull(command, "command");
+		super.register(command);
+		commands.put(command.getName(), command);
+	}
+
+	/**
+	 * Sets the executor to execute commands received from Discord on.
+	 * 
+	 * @param executor
+	 *            the command executor, may be {@code null} to execute commands
+	 *            on the thread which received them.
+	 * @return this command center.
+	 */
+	@NotNull
+	public DiscordCommandCenter executor(@Nullable CommandExecutor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Returns the executor commands received from Discord are executed on.
+	 * 
+	 * @return the command executor, {@code null} if commands are executed on
+	 *         the thread which received them.
+	 */
+	@Nullable
+	public CommandExecutor getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Returns the default command prefix.
+	 * 
+	 * @return the default command prefix.
+	 */
+	@NotNull
+	public String getPrefix() {
+		return this.prefix;
+	}
+
+	/**
+	 * Sets the custom prefixes of each guild. Commands sent in a guild may
+	 * begin with either the default prefix or the custom prefix of the guild.
+	 * 
+	 * @param prefixes
+	 *            the guild prefixes, may be {@code null} to only accept the
+	 *            default prefix.
+	 * @return this command center.
+	 * @throws IllegalArgumentException
+	 *             if the default prefix of {@code prefixes} is not the prefix
+	 *             of this command center.
+	 */
+	@NotNull
+	public DiscordCommandCenter prefixes(@Nullable GuildPrefixes prefixes) {
+		if (prefixes != null && !prefix.equals(prefixes.getDefaultPrefix())) {
+			throw new IllegalArgumentException("default prefix mismatch");
+		}
+		this.prefixes = prefixes;
+		return this;
+	}
+
+	/**
+	 * Returns the custom prefixes of each guild.
+	 * 
+	 * @return the guild prefixes, {@code null} if only the default prefix is
+	 *         accepted.
+	 */
+	@Nullable
+	public GuildPrefixes getPrefixes() {
+		return this.prefixes;
+	}
+
+	/**
+	 * Sets the scheduler replies to commands are sent through.
+	 * 
+	 * @param outbound
+	 *            the outbound scheduler, may be {@code null} to send replies
+	 *            straight to JDA.
+	 * @return this command center.
+	 */
+	@NotNull
+	public DiscordCommandCenter outbound(@Nullable RestScheduler outbound) {
+		this.outbound = outbound;
+		return this;
+	}
+
+	/**
+	 * Returns the scheduler replies to commands are sent through.
+	 * 
+	 * @return the outbound scheduler, {@code null} if replies are sent
+	 *         straight to JDA.
+	 */
+	@Nullable
+	public RestScheduler getOutbound() {
+		return this.outbound;
+	}
+
+	static long guildOf(MessageChannel channel) {
+		if (channel instanceof TextChannel) {
+			return ((TextChannel) channel).getGuild().getIdLong();
+		}
+		return 0L;
+	}
+
+	/*
+	 * This is checked for every message the bot can see, nearly all of which
+	 * are not commands. As such, it must not allocate anything. The prefix is
+	 * matched in place, ignoring case, rather than lowercasing both strings.
+	 */
+	private int prefixLength(long guildId, String cmd) {
 		if (cmd == null) {
-			return false; /* no command */
+			return -1; /* no command */
+		}
+
+		GuildPrefixes prefixes = this.prefixes;
+		if (prefixes != null) {
+			return prefixes.match(guildId, cmd);
 		} else if (cmd.length() <= prefix.length()) {
-			return false; /* no prefix */
+			return -1; /* no prefix */
+		} else if (!cmd.regionMatches(true, 0, prefix, 0, prefix.length())) {
+			return -1; /* prefix absent */
 		}
 
 		char separator = cmd.charAt(prefix.length());
 		if (!Character.isWhitespace(separator)) {
-			return false; /* no separator */
+			return -1; /* no separator */
 		}
+		return prefix.length();
+	}
 
-		String cmd_lc = cmd.toLowerCase();
-		String prefix_lc = prefix.toLowerCase();
-		if (!cmd_lc.startsWith(prefix_lc)) {
-			return false; /* prefix absent */
+	private DiscordCommand commandOf(String cmd, int prefixLength) {
+		int start = prefixLength;
+		while (start < cmd.length()
+				&& Character.isWhitespace(cmd.charAt(start))) {
+			start++;
+		}
+		int end = start;
+		while (end < cmd.length() && !Character.isWhitespace(cmd.charAt(end))) {
+			end++;
 		}
-		return true;
+		String label = cmd.substring(start, end).toLowerCase(Locale.ROOT);
+		return commands.get(label);
+	}
+
+	private boolean isPrefixOnly(long guildId, String cmd) {
+		GuildPrefixes prefixes = this.prefixes;
+		if (prefixes != null) {
+			return prefixes.isPrefix(guildId, cmd);
+		}
+		return cmd.equalsIgnoreCase(prefix);
 	}
 
 	@SubscribeEvent
@@ -148,13 +324,50 @@ public class DiscordCommandCenter extends CommandCenter
 			return;
 		}
 
-		MessageChannel channel = e.getChannel();
-		DiscordCommandSender sender = new DiscordCommandSender(author, channel);
+		/*
+		 * Most messages are not commands, so they are turned away before the
+		 * sender is created for them.
+		 */
 		String cmd = e.getMessage().getContentRaw();
-		if (this.isDiscordCommand(cmd)) {
-			channel.sendTyping().complete();
-			this.execute(sender, cmd);
-		} else if (cmd.equalsIgnoreCase(prefix)) {
+		long guildId = e.isFromGuild() ? e.getGuild().getIdLong() : 0L;
+		int prefixLength = this.prefixLength(guildId, cmd);
+		boolean isCommand = prefixLength >= 0;
+		if (!isCommand && !this.isPrefixOnly(guildId, cmd)) {
+			return;
+		}
+
+		MessageChannel channel = e.getChannel();
+		DiscordCommandSender sender =
+				new DiscordCommandSender(author, channel, e.getMember())
+						.outbound(this.outbound);
+		if (isCommand) {
+			/*
+			 * The rate limits are checked here, rather than when the command
+			 * is executed. Otherwise, someone spamming a command would fill
+			 * up the executor before any of their commands were turned away.
+			 */
+			DiscordCommand command = this.commandOf(cmd, prefixLength);
+			if (command != null && !command.isAllowedIn(channel)) {
+				command = null; /* turned away once executed */
+			} else if (command != null) {
+				long wait = command.acquireLimits(sender);
+				if (wait > 0L) {
+					command.reportLimited(sender, wait);
+					return;
+				}
+			}
+
+			CommandExecutor executor = this.executor;
+			if (executor == null) {
+				this.execute(sender, cmd);
+			} else if (!executor.submit(author.getIdLong(),
+					() -> this.execute(sender, cmd))) {
+				if (command != null) {
+					command.releaseLimits(sender);
+				}
+				sender.sendMessage(DiscraftLang.getBotLang("cmd.busy"));
+			}
+		} else {
 			sender.sendMessage("Please specify a command.");
 		}
 	}
@@ -170,8 +383,9 @@ public class DiscordCommandCenter extends CommandCenter
 	 * <p>
 	 * The {@code sender} must be from Discord (that being, it must be an
 	 * instance of {@link DiscordCommandSender}). The command must also begin
-	 * with the prefix specified in the constructor of this command center.
-	 * Otherwise, this method will not execute the command.
+	 * with the prefix specified in the constructor of this command center, or
+	 * the custom prefix of the guild it was sent in. Otherwise, this method
+	 * will not execute the command.
 	 */
 	@Override
 	public boolean execute(CommandSender sender, String cmd) {
@@ -181,12 +395,16 @@ public class DiscordCommandCenter extends CommandCenter
 		if (!(sender instanceof DiscordCommandSender)) {
 			sender.sendMessage("Sender must be from Discord.");
 			return false;
-		} else if (!this.isDiscordCommand(cmd)) {
+		}
+
+		MessageChannel channel = ((DiscordCommandSender) sender).getChannel();
+		int prefixLength = this.prefixLength(guildOf(channel), cmd);
+		if (prefixLength < 0) {
 			sender.sendMessage("Not a Discord command.");
 			return false;
 		}
 
-		cmd = cmd.substring(prefix.length() + 1);
+		cmd = cmd.substring(prefixLength + 1);
 		return super.execute(sender, cmd);
 	}
 
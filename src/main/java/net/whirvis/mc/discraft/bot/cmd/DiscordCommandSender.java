@@ -1,25 +1,56 @@
 package net.whirvis.mc.discraft.bot.cmd;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.whirvex.cmd.CommandSender;
 
+import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.entities.User;
+import net.whirvis.mc.discraft.bot.rest.RestPriority;
+import net.whirvis.mc.discraft.bot.rest.RestScheduler;
 
 /**
  * A sender of a Discord command.
+ * <p>
+ * While a {@link DiscordCommand} is executing, messages sent to its sender
+ * are buffered rather than sent right away. Once the command has finished,
+ * including any work it completes asynchronously, the buffered messages are
+ * merged into as few Discord messages as possible. This way, a command which
+ * replies in several lines only uses up one request from the rate limit of
+ * the bot. Messages are always sent in the order they were given.
+ * <p>
+ * If the sender has an outbound scheduler, messages are sent through it as
+ * low priority requests. Otherwise, they are given straight to JDA.
  * 
  * @see DiscordCommand
  */
 public class DiscordCommandSender implements CommandSender {
 
+	/**
+	 * The most characters Discord allows in a single message.
+	 */
+	public static final int MAX_LENGTH = 2000;
+
 	private final User user;
 	private final MessageChannel channel;
+	private final Member member;
 	private boolean mention;
+	private RestScheduler outbound;
+
+	/*
+	 * Messages are buffered for as long as anything holds the sender. Both
+	 * the buffer and the messages sent from it are guarded by this sender,
+	 * so messages from different threads are never sent out of order.
+	 */
+	private final List<String> buffered;
+	private int holds;
 
 	/**
 	 * Constructs a new {@code DiscordCommandSender}.
@@ -30,22 +61,46 @@ public class DiscordCommandSender implements CommandSender {
 	 *            the channel the command was sent in
 	 *            ({@link #sendMessage(String)} will send messages to this
 	 *            channel).
+	 * @param member
+	 *            the guild member of the user, may be {@code null} if the
+	 *            command was not sent in a guild.
 	 * @throws NullPointerException
 	 *             if {@coder user} or {@code channel} are {@code null}.
 	 * @throws IllegalArgumentException
 	 *             if {@code user} is a Discord bot.
 	 */
 	public DiscordCommandSender(@NotNull User user,
-			@NotNull MessageChannel channel) {
+			@NotNull MessageChannel channel, @Nullable Member member) {
 		this.user = Objects.requireNonNull(user, "user");
 		this.channel = Objects.requireNonNull(channel, "channel");
+		this.member = member;
 		this.mention = true;
+		this.buffered = new ArrayList<>();
 		if (user.isBot()) {
 			throw new IllegalArgumentException(
 					"bots cannot send Discord commands");
 		}
 	}
 
+	/**
+	 * Constructs a new {@code DiscordCommandSender}.
+	 * 
+	 * @param user
+	 *            the Discord user.
+	 * @param channel
+	 *            the channel the command was sent in
+	 *            ({@link #sendMessage(String)} will send messages to this
+	 *            channel).
+	 * @throws NullPointerException
+	 *             if {@coder user} or {@code channel} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code user} is a Discord bot.
+	 */
+	public DiscordCommandSender(@NotNull User user,
+			@NotNull MessageChannel channel) {
+		this(user, channel, null);
+	}
+
 	/**
 	 * Returns the Discord user.
 	 * 
@@ -73,6 +128,18 @@ public class DiscordCommandSender implements CommandSender {
 		return this.channel;
 	}
 
+	/**
+	 * Returns the guild member of the user, for checking their permissions in
+	 * the guild the command was sent in.
+	 * 
+	 * @return the guild member, {@code null} if the command was not sent in
+	 *         a guild.
+	 */
+	@Nullable
+	public Member getMember() {
+		return this.member;
+	}
+
 	/**
 	 * Sets whether or not the user should be automatically mentioned at the
 	 * beginning of message, assuming the message will be sent to a public text
@@ -92,6 +159,21 @@ public class DiscordCommandSender implements CommandSender {
 		return this;
 	}
 
+	/**
+	 * Sets the scheduler messages to this sender are sent through.
+	 * 
+	 * @param outbound
+	 *            the outbound scheduler, may be {@code null} to send messages
+	 *            straight to JDA.
+	 * @return this sender.
+	 */
+	@NotNull
+	public synchronized DiscordCommandSender outbound(
+			@Nullable RestScheduler outbound) {
+		this.outbound = outbound;
+		return this;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * <p>
@@ -99,11 +181,106 @@ public class DiscordCommandSender implements CommandSender {
 	 * will be mentioned at the beginning of the message automatically.
 	 */
 	@Override
-	public void sendMessage(String msg) {
+	public synchronized void sendMessage(String msg) {
+		buffered.add(msg != null ? msg : "null");
+		if (holds <= 0) {
+			this.flush();
+		}
+	}
+
+	/**
+	 * Starts buffering messages, until {@link #release()} is called as many
+	 * times as this method was.
+	 */
+	synchronized void hold() {
+		this.holds++;
+	}
+
+	/**
+	 * Stops buffering messages for one holder. Once nothing holds the sender
+	 * anymore, every buffered message is sent.
+	 */
+	synchronized void release() {
+		if (holds > 0 && --holds == 0) {
+			this.flush();
+		}
+	}
+
+	private synchronized void flush() {
+		if (buffered.isEmpty()) {
+			return;
+		}
+
+		String prefix = "";
 		if (channel instanceof TextChannel && mention) {
-			msg = user.getAsMention() + " " + msg;
+			prefix = user.getAsMention() + " ";
+		}
+
+		for (String chunk : merge(buffered, MAX_LENGTH - prefix.length())) {
+			if (outbound != null) {
+				outbound.send(channel, prefix + chunk, RestPriority.LOW);
+			} else {
+				channel.sendMessage(prefix + chunk).queue();
+			}
+		}
+		buffered.clear();
+	}
+
+	/**
+	 * Merges messages into as few messages as possible, with each message on
+	 * its own line. Messages which are too long on their own are split up,
+	 * preferably at a line break or space.
+	 * 
+	 * @param messages
+	 *            the messages to merge, in order.
+	 * @param limit
+	 *            the most characters allowed in a merged message.
+	 * @return the merged messages, in order.
+	 */
+	static List<String> merge(List<String> messages, int limit) {
+		List<String> merged = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		for (String msg : messages) {
+			for (String piece : split(msg, limit)) {
+				if (current.length() > 0
+						&& current.length() + 1 + piece.length() > limit) {
+					merged.add(current.toString());
+					current.setLength(0);
+				}
+				if (current.length() > 0) {
+					current.append('\n');
+				}
+				current.append(piece);
+			}
+		}
+		if (current.length() > 0 || merged.isEmpty()) {
+			merged.add(current.toString());
+		}
+		return merged;
+	}
+
+	private static List<String> split(String msg, int limit) {
+		List<String> pieces = new ArrayList<>();
+		while (msg.length() > limit) {
+			int cut = msg.lastIndexOf('\n', limit);
+			if (cut <= 0) {
+				cut = msg.lastIndexOf(' ', limit);
+			}
+
+			if (cut > 0) {
+				pieces.add(msg.substring(0, cut));
+				msg = msg.substring(cut + 1); /* drop the separator */
+			} else {
+				cut = limit;
+				if (Character.isHighSurrogate(msg.charAt(cut - 1))) {
+					cut--; /* don't split a surrogate pair */
+				}
+				pieces.add(msg.substring(0, cut));
+				msg = msg.substring(cut);
+			}
 		}
-		channel.sendMessage(msg != null ? msg : "null").queue();
+		pieces.add(msg);
+		return pieces;
 	}
 
 }
@@ -1,8 +1,7 @@
 package net.whirvis.mc.discraft.bot.cmd;
 
-import java.io.IOException;
-import java.sql.SQLException;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -12,7 +11,6 @@ import com.whirvex.cmd.CommandCenter;
 
 import net.whirvis.mc.discraft.bot.user.DiscraftUser;
 import net.whirvis.mc.discraft.bot.user.UserManager;
-import net.whirvis.mc.discraft.bot.user.UserSettings;
 
 /**
  * The {@code "lang"} command, which allows for a Discord user to update their
@@ -33,30 +31,38 @@ public class LangCommand extends DiscordCommand {
 	public LangCommand(@NotNull UserManager userManager) {
 		super("lang", null, "Updates a user's language");
 		this.userManager = Objects.requireNonNull(userManager, "userManager");
+		this.rateLimit(Scope.USER, 5, 10000L);
 	}
 
-	@Override
-	public boolean execute(CommandCenter center, DiscordCommandSender sender,
-			Command cmd, Args args) throws IOException, SQLException {
-		DiscraftUser user = userManager.getUser(sender.getUser());
+	private CompletableFuture<Void> updateLang(DiscordCommandSender sender,
+			DiscraftUser user, Args args) {
 		if (user == null) {
 			sender.sendMessage("You are not registered");
-			return true;
+			return CompletableFuture.completedFuture(null);
 		}
 
-		UserSettings settings = user.getSettings();
-
-		user.close();
-		if (args.indexc() < 1) {
-			sender.sendMessage(
-					"Your language is: `" + settings.getLang() + "`");
-			return true;
-		} else {
-			settings.setLang(args.get(0));
-			sender.sendMessage(
-					"Updated your languge to: `" + settings.getLang() + "`");
-			return true;
-		}
+		/*
+		 * Hold onto the user until we're done with their settings, otherwise
+		 * they could be evicted from the cache in the middle of an update.
+		 */
+		return user.getSettingsAsync().thenAccept(settings -> {
+			if (args.indexc() < 1) {
+				sender.sendMessage(
+						"Your language is: `" + settings.getLang() + "`");
+			} else {
+				settings.setLang(args.get(0));
+				sender.sendMessage("Updated your languge to: `"
+						+ settings.getLang() + "`");
+			}
+		}).whenComplete((result, cause) -> user.close());
+	}
+
+	@Override
+	public boolean execute(CommandCenter center, DiscordCommandSender sender,
+			Command cmd, Args args) {
+		this.async(sender, userManager.getUserAsync(sender.getUser())
+				.thenCompose(user -> this.updateLang(sender, user, args)));
+		return true;
 	}
 
 }
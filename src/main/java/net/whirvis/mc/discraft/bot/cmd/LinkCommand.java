@@ -3,18 +3,20 @@ package net.whirvis.mc.discraft.bot.cmd;
 import java.util.Objects;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import com.whirvex.args.Args;
 import com.whirvex.cmd.Command;
 import com.whirvex.cmd.CommandCenter;
 
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.PrivateChannel;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
-import net.dv8tion.jda.api.requests.RestAction;
 import net.whirvis.mc.discraft.bot.DiscraftLang;
 import net.whirvis.mc.discraft.bot.link.LinkManager;
 import net.whirvis.mc.discraft.bot.link.LinkProcess;
+import net.whirvis.mc.discraft.bot.rest.RestPriority;
+import net.whirvis.mc.discraft.bot.rest.RestScheduler;
 
 /**
  * The {@code "link"} command, which initiates the linking process for a Discord
@@ -25,18 +27,41 @@ import net.whirvis.mc.discraft.bot.link.LinkProcess;
 public class LinkCommand extends DiscordCommand {
 
 	private final LinkManager linkManager;
+	private final RestScheduler outbound;
 
 	/**
 	 * Creates a {@code "link"} command.
 	 * 
 	 * @param linkManager
 	 *            the link manager.
+	 * @param outbound
+	 *            the scheduler to send the link code through, may be
+	 *            {@code null} to send it straight to JDA.
 	 * @throws NullPointerException
 	 *             if {@code linkManager} is {@code null}.
 	 */
-	public LinkCommand(@NotNull LinkManager linkManager) {
+	public LinkCommand(@NotNull LinkManager linkManager,
+			@Nullable RestScheduler outbound) {
 		super("link", null, "Links together a Discord and a Minecraft account");
 		this.linkManager = Objects.requireNonNull(linkManager, "linkManager");
+		this.outbound = outbound;
+
+		/*
+		 * Each link sends a DM with a new code, so this is kept tight.
+		 */
+		this.rateLimit(Scope.USER, 1, 30000L);
+	}
+
+	/**
+	 * Creates a {@code "link"} command.
+	 * 
+	 * @param linkManager
+	 *            the link manager.
+	 * @throws NullPointerException
+	 *             if {@code linkManager} is {@code null}.
+	 */
+	public LinkCommand(@NotNull LinkManager linkManager) {
+		this(linkManager, null);
 	}
 
 	@Override
@@ -60,10 +85,15 @@ public class LinkCommand extends DiscordCommand {
 				user.getName(), link.getSecret());
 		msg.setDescription(linkIntro);
 
-		RestAction<PrivateChannel> action = user.openPrivateChannel();
-		action.queue(channel -> {
-			channel.sendMessage(msg.build()).queue();
-		});
+		MessageEmbed embed = msg.build();
+		if (outbound != null) {
+			outbound.sendPrivate(user, RestPriority.NORMAL,
+					channel -> channel.sendMessage(embed));
+		} else {
+			user.openPrivateChannel().queue(channel -> {
+				channel.sendMessage(embed).queue();
+			});
+		}
 		return true;
 	}
 
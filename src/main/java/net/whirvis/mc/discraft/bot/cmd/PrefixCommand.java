@@ -0,0 +1,97 @@
+package net.whirvis.mc.discraft.bot.cmd;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.whirvex.args.Args;
+import com.whirvex.cmd.Command;
+import com.whirvex.cmd.CommandCenter;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.whirvis.mc.discraft.bot.guild.GuildPrefixes;
+
+/**
+ * The {@code "prefix"} command, which allows for a guild to use a command
+ * prefix of its own.
+ * <p>
+ * Anyone can see the prefix of a guild, but only members who can manage the
+ * guild can change it. The default prefix always works as well, so a guild
+ * can always use it to change its prefix back.
+ */
+public class PrefixCommand extends DiscordCommand {
+
+	private static final String RESET = "reset";
+
+	private final GuildPrefixes prefixes;
+
+	/**
+	 * Creates a {@code "prefix"} command.
+	 *
+	 * @param prefixes
+	 *            the guild prefixes.
+	 * @throws NullPointerException
+	 *             if {@code prefixes} is {@code null}.
+	 */
+	public PrefixCommand(@NotNull GuildPrefixes prefixes) {
+		super("prefix", "[prefix|" + RESET + "]",
+				"Updates the command prefix of a server");
+		this.prefixes = Objects.requireNonNull(prefixes, "prefixes");
+		this.requireGuild();
+		this.rateLimit(Scope.USER, 3, 10000L);
+	}
+
+	private void showPrefix(DiscordCommandSender sender, long guildId) {
+		String prefix = prefixes.getPrefix(guildId);
+		if (prefix == null) {
+			sender.sendMessage("This server uses the default prefix: `"
+					+ prefixes.getDefaultPrefix() + "`");
+		} else {
+			sender.sendMessage("This server's prefix is: `" + prefix + "`");
+		}
+	}
+
+	@Override
+	public boolean execute(CommandCenter center, DiscordCommandSender sender,
+			Command cmd, Args args) {
+		TextChannel channel = (TextChannel) sender.getChannel();
+		long guildId = channel.getGuild().getIdLong();
+		if (args.indexc() < 1) {
+			this.showPrefix(sender, guildId);
+			return true;
+		}
+
+		Member member = sender.getMember();
+		if (member == null || !member.hasPermission(Permission.MANAGE_SERVER)) {
+			sender.sendMessage("You need the Manage Server permission to"
+					+ " change this server's prefix.");
+			return true;
+		}
+
+		String prefix = args.get(0);
+		if (RESET.equalsIgnoreCase(prefix)
+				|| prefix.equals(prefixes.getDefaultPrefix())) {
+			prefix = null;
+		} else if (prefix.length() > GuildPrefixes.MAX_LENGTH) {
+			sender.sendMessage("Prefixes cannot be longer than "
+					+ GuildPrefixes.MAX_LENGTH + " characters.");
+			return true;
+		}
+
+		String updated = prefix;
+		this.async(sender, prefixes.setPrefixAsync(guildId, updated)
+				.thenRun(() -> {
+					if (updated == null) {
+						sender.sendMessage("Reset this server's prefix to: `"
+								+ prefixes.getDefaultPrefix() + "`");
+					} else {
+						sender.sendMessage("Updated this server's prefix to: `"
+								+ updated + "`");
+					}
+				}));
+		return true;
+	}
+
+}
@@ -1,7 +1,7 @@
 package net.whirvis.mc.discraft.bot.cmd;
 
-import java.sql.SQLException;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -32,19 +32,32 @@ public class RegisterCommand extends DiscordCommand {
 	public RegisterCommand(@NotNull UserManager userManager) {
 		super("register", null, "Registers a user to Discraft");
 		this.userManager = Objects.requireNonNull(userManager, "userManager");
+
+		/*
+		 * Registering only ever needs to be done once, anything more often
+		 * than this is someone spamming the command.
+		 */
+		this.rateLimit(Scope.USER, 1, 10000L);
 	}
 
-	@Override
-	public boolean execute(CommandCenter center, DiscordCommandSender sender,
-			Command cmd, Args args) throws SQLException {
-		User user = sender.getUser();
-		if (userManager.isRegistered(user)) {
+	private CompletableFuture<Void> register(DiscordCommandSender sender,
+			boolean registered) {
+		if (registered) {
 			sender.sendMessage("You are already registered!");
-			return true;
+			return CompletableFuture.completedFuture(null);
 		}
+		return userManager.createUserAsync(sender.getUser()).thenAccept(
+				user -> sender.sendMessage(user != null
+						? "You have been registered!"
+						: "You are already registered!"));
+	}
 
-		userManager.createUser(user);
-		sender.sendMessage("You have been registered!");
+	@Override
+	public boolean execute(CommandCenter center, DiscordCommandSender sender,
+			Command cmd, Args args) {
+		User user = sender.getUser();
+		this.async(sender, userManager.isRegisteredAsync(user)
+				.thenCompose(registered -> this.register(sender, registered)));
 		return true;
 	}
 
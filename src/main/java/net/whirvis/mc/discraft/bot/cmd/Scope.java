@@ -0,0 +1,52 @@
+package net.whirvis.mc.discraft.bot.cmd;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * What the rate limit of a command is counted against.
+ *
+ * @see DiscordCommand#rateLimit(Scope, int, long)
+ */
+public enum Scope {
+
+	/**
+	 * Each Discord user.
+	 */
+	USER,
+
+	/**
+	 * Each channel, including private channels.
+	 */
+	CHANNEL,
+
+	/**
+	 * Each guild. Commands not sent in a guild are not limited.
+	 */
+	GUILD;
+
+	/**
+	 * Returns the ID this scope is counted against for a command sender.
+	 *
+	 * @param sender
+	 *            the command sender.
+	 * @return the ID, {@code 0} if the sender has none for this scope.
+	 * @throws NullPointerException
+	 *             if {@code sender} is {@code null}.
+	 */
+	long idOf(@NotNull DiscordCommandSender sender) {
+		Objects.requireNonNull(sender, "sender");
+		switch (this) {
+			case USER:
+				return sender.getUser().getIdLong();
+			case CHANNEL:
+				return sender.getChannel().getIdLong();
+			case GUILD:
+				return DiscordCommandCenter.guildOf(sender.getChannel());
+			default:
+				throw new IllegalArgumentException("unknown scope");
+		}
+	}
+
+}
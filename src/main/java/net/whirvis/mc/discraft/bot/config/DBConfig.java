@@ -2,7 +2,10 @@ package net.whirvis.mc.discraft.bot.config;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -17,9 +20,19 @@ import com.whirvex.config.ConfigManager;
 import com.whirvex.config.JsonConfigManager;
 
 import net.whirvis.mc.discraft.bot.DiscraftUtils;
+import net.whirvis.mc.discraft.bot.db.ConnectionPool;
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.db.PoolSettings;
+import net.whirvis.mc.discraft.bot.db.SQLDialect;
+import net.whirvis.mc.discraft.bot.db.SQLiteSettings;
 
 /**
  * The database config for the Discraft bot.
+ * <p>
+ * Each database user has a role, either {@code primary} (the default) or
+ * {@code replica}. A replica names the primary it replicates with
+ * {@code replica-of}, and usually its own {@code db-url}. Reads for a primary
+ * are spread across its replicas, see {@link #getRouter(String)}.
  * 
  * @see #load(File)
  */
@@ -36,9 +49,51 @@ public class DBConfig {
 	private static final Config<String> DB_PASS =
 			new Config<>(String.class, "db-pass");
 
+	private static final Config<String> DB_ROLE =
+			new Config<>(String.class, "role").fallback("primary");
+	private static final Config<String> DB_REPLICA_OF =
+			new Config<>(String.class, "replica-of");
+	private static final Config<Long> REPLICA_LAG =
+			new Config<>(long.class, "replica-lag").fallback(5000L);
+
+	private static final Config<Integer> POOL_MIN =
+			new Config<>(int.class, "pool-min").fallback(1);
+	private static final Config<Integer> POOL_MAX =
+			new Config<>(int.class, "pool-max").fallback(10);
+	private static final Config<Long> POOL_TIMEOUT =
+			new Config<>(long.class, "pool-timeout").fallback(5000L);
+	private static final Config<Long> POOL_IDLE =
+			new Config<>(long.class, "pool-idle").fallback(600000L);
+	private static final Config<Integer> POOL_VALIDATION =
+			new Config<>(int.class, "pool-validation").fallback(2);
+	private static final Config<Integer> POOL_STATEMENTS =
+			new Config<>(int.class, "pool-statements").fallback(64);
+	private static final Config<Long> POOL_LEAK_THRESHOLD =
+			new Config<>(long.class, "pool-leak-threshold").fallback(0L);
+
+	private static final Config<Boolean> SQLITE_WAL =
+			new Config<>(boolean.class, "sqlite-wal").fallback(true);
+	private static final Config<String> SQLITE_SYNCHRONOUS =
+			new Config<>(String.class, "sqlite-synchronous").fallback("NORMAL");
+	private static final Config<Integer> SQLITE_CACHE_SIZE =
+			new Config<>(int.class, "sqlite-cache-size").fallback(-16000);
+	private static final Config<Long> SQLITE_MMAP_SIZE =
+			new Config<>(long.class, "sqlite-mmap-size").fallback(268435456L);
+	private static final Config<Integer> SQLITE_BUSY_TIMEOUT =
+			new Config<>(int.class, "sqlite-busy-timeout").fallback(5000);
+	private static final Config<Integer> SQLITE_GROUP_COMMIT =
+			new Config<>(int.class, "sqlite-group-commit").fallback(64);
+
 	private final File file;
 	private Map<String, DBUser> dbUsers;
+	private Map<String, PoolSettings> poolSettings;
+	private Map<String, ConnectionPool> pools;
+	private Map<String, List<String>> replicas;
+	private Map<String, DBRouter> routers;
+	private long replicaLag;
 	private String dbUrl;
+	private SQLDialect dialect;
+	private SQLiteSettings sqlite;
 
 	/**
 	 * Loads a database config.
@@ -49,6 +104,8 @@ public class DBConfig {
 	 *             if {@code file} is {@code null}.
 	 * @throws ConfigException
 	 *             if a config error occurs.
+	 * @throws IllegalArgumentException
+	 *             if the database URL is not for a supported database.
 	 * @throws IOException
 	 *             if an I/O error occurs.
 	 */
@@ -62,13 +119,42 @@ public class DBConfig {
 	private DBConfig(File file) {
 		this.file = Objects.requireNonNull(file, "file");
 		this.dbUsers = new HashMap<>();
+		this.poolSettings = new HashMap<>();
+		this.pools = new HashMap<>();
+		this.replicas = new HashMap<>();
+		this.routers = new HashMap<>();
 	}
 
 	private void load() throws IOException {
 		JsonElement yaml = DiscraftUtils.loadYaml(file);
 		JsonObject config = yaml.getAsJsonObject();
 		this.dbUrl = CONFIG.load(DB_URL, config);
+		this.dialect = SQLDialect.forUrl(dbUrl);
 
+		/*
+		 * SQLite only allows one writer at a time, and syncs every commit to
+		 * disk. Each database file gets a single writer thread, shared by
+		 * every pool for it, which commits writes in groups. Every connection
+		 * is tuned for many small writes.
+		 */
+		int groupCommit = 0;
+		if (dialect == SQLDialect.SQLITE) {
+			this.sqlite = new SQLiteSettings();
+			sqlite.wal(CONFIG.load(SQLITE_WAL, config));
+			sqlite.synchronous(CONFIG.load(SQLITE_SYNCHRONOUS, config));
+			sqlite.cacheSize(CONFIG.load(SQLITE_CACHE_SIZE, config));
+			sqlite.mmapSize(CONFIG.load(SQLITE_MMAP_SIZE, config));
+			sqlite.busyTimeout(CONFIG.load(SQLITE_BUSY_TIMEOUT, config));
+			groupCommit = CONFIG.load(SQLITE_GROUP_COMMIT, config);
+		}
+
+		this.replicaLag = CONFIG.load(REPLICA_LAG, config);
+
+		/*
+		 * Replicas are separate databases, so they can override the URL. The
+		 * user they replicate is checked once every user has been loaded.
+		 */
+		Map<String, String> replicaOf = new HashMap<>();
 		JsonObject usersJson = CONFIG.load(DB_USERS, config);
 		for (String name : usersJson.keySet()) {
 			Config<JsonObject> userConfig =
@@ -76,8 +162,48 @@ public class DBConfig {
 			JsonObject userJson = CONFIG.load(userConfig, usersJson);
 			String dbUser = CONFIG.load(DB_USER, userJson);
 			String dbPass = CONFIG.load(DB_PASS, userJson);
-			DBUser user = new DBUser(dbUrl, dbUser, dbPass);
+			String userUrl = userJson.has("db-url")
+					? CONFIG.load(DB_URL, userJson) : dbUrl;
+			if (SQLDialect.forUrl(userUrl) != dialect) {
+				throw new IllegalArgumentException("db-user " + name
+						+ " does not use the same database as db-url");
+			}
+			DBUser user = new DBUser(userUrl, dbUser, dbPass);
 			dbUsers.put(name, user);
+
+			String role = CONFIG.load(DB_ROLE, userJson);
+			if (role.equalsIgnoreCase("replica")) {
+				replicaOf.put(name, CONFIG.load(DB_REPLICA_OF, userJson));
+			} else if (!role.equalsIgnoreCase("primary")) {
+				throw new IllegalArgumentException("db-user " + name
+						+ " has unknown role \"" + role + "\"");
+			}
+
+			PoolSettings settings = new PoolSettings();
+			settings.minSize(CONFIG.load(POOL_MIN, userJson));
+			settings.maxSize(CONFIG.load(POOL_MAX, userJson));
+			settings.acquireTimeout(CONFIG.load(POOL_TIMEOUT, userJson));
+			settings.idleTimeout(CONFIG.load(POOL_IDLE, userJson));
+			settings.validationTimeout(CONFIG.load(POOL_VALIDATION, userJson));
+			settings.statementCacheSize(CONFIG.load(POOL_STATEMENTS, userJson));
+			settings.leakThreshold(CONFIG.load(POOL_LEAK_THRESHOLD, userJson));
+			settings.groupCommit(groupCommit);
+			poolSettings.put(name, settings);
+		}
+
+		for (Map.Entry<String, String> entry : replicaOf.entrySet()) {
+			String primary = entry.getValue();
+			if (!dbUsers.containsKey(primary)
+					|| replicaOf.containsKey(primary)) {
+				throw new IllegalArgumentException("db-user " + entry.getKey()
+						+ " is a replica of unknown primary " + primary);
+			}
+			List<String> names = replicas.get(primary);
+			if (names == null) {
+				names = new ArrayList<>();
+				replicas.put(primary, names);
+			}
+			names.add(entry.getKey());
 		}
 	}
 
@@ -91,6 +217,27 @@ public class DBConfig {
 		return this.file;
 	}
 
+	/**
+	 * Returns the SQL dialect of the database, as determined by its URL.
+	 * 
+	 * @return the SQL dialect of the database.
+	 */
+	@NotNull
+	public SQLDialect getDialect() {
+		return this.dialect;
+	}
+
+	/**
+	 * Returns the settings applied to every SQLite connection.
+	 * 
+	 * @return the SQLite settings, {@code null} if the database is not
+	 *         SQLite.
+	 */
+	@Nullable
+	public SQLiteSettings getSQLiteSettings() {
+		return this.sqlite;
+	}
+
 	/**
 	 * Returns a database user by their name.
 	 * 
@@ -103,4 +250,99 @@ public class DBConfig {
 		return dbUsers.get(name);
 	}
 
+	/**
+	 * Returns the connection pool for a database user.
+	 * <p>
+	 * The pool is created the first time it is requested, using the pool
+	 * settings specified for the user in the config. Afterwards, the same pool
+	 * is returned every time.
+	 * 
+	 * @param name
+	 *            the user name, as specified in the config.
+	 * @return the connection pool, {@code null} if no user exists by that
+	 *         name.
+	 * @throws SQLException
+	 *             if the user has already been connected to directly via
+	 *             {@link DBUser#conn()}.
+	 */
+	@Nullable
+	public synchronized ConnectionPool getPool(String name)
+			throws SQLException {
+		ConnectionPool pool = pools.get(name);
+		if (pool == null) {
+			DBUser user = dbUsers.get(name);
+			if (user == null) {
+				return null;
+			}
+			pool = user.pool(name, poolSettings.get(name), sqlite);
+			pools.put(name, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns the router for a database user and its read replicas.
+	 * <p>
+	 * The router is created the first time it is requested, along with the
+	 * connection pool for the user and each of its replicas. Afterwards, the
+	 * same router is returned every time.
+	 * 
+	 * @param name
+	 *            the user name, as specified in the config.
+	 * @return the router, {@code null} if no user exists by that name.
+	 * @throws IllegalArgumentException
+	 *             if the user is a replica.
+	 * @throws SQLException
+	 *             if the user or one of its replicas has already been
+	 *             connected to directly via {@link DBUser#conn()}.
+	 * @see #getPool(String)
+	 */
+	@Nullable
+	public synchronized DBRouter getRouter(String name) throws SQLException {
+		DBRouter router = routers.get(name);
+		if (router == null) {
+			if (!dbUsers.containsKey(name)) {
+				return null;
+			}
+			for (List<String> names : replicas.values()) {
+				if (names.contains(name)) {
+					throw new IllegalArgumentException(
+							"db-user " + name + " is a replica");
+				}
+			}
+
+			ConnectionPool primary = this.getPool(name);
+			List<ConnectionPool> replicaPools = new ArrayList<>();
+			List<String> names = replicas.get(name);
+			if (names != null) {
+				for (String replica : names) {
+					replicaPools.add(this.getPool(replica));
+				}
+			}
+			router = new DBRouter(primary, replicaPools, replicaLag);
+			routers.put(name, router);
+		}
+		return router;
+	}
+
+	/**
+	 * Returns every connection pool which has been created so far.
+	 * 
+	 * @return every connection pool created so far.
+	 * @see #getPool(String)
+	 */
+	@NotNull
+	public synchronized List<ConnectionPool> getPools() {
+		return new ArrayList<>(pools.values());
+	}
+
+	/**
+	 * Closes every connection pool which has been created so far.
+	 */
+	public synchronized void close() {
+		for (ConnectionPool pool : pools.values()) {
+			pool.close();
+		}
+	}
+
 }
@@ -8,6 +8,12 @@ import java.util.Objects;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import net.whirvis.mc.discraft.bot.db.ConnectionFactory;
+import net.whirvis.mc.discraft.bot.db.ConnectionPool;
+import net.whirvis.mc.discraft.bot.db.PoolSettings;
+import net.whirvis.mc.discraft.bot.db.SQLDialect;
+import net.whirvis.mc.discraft.bot.db.SQLiteSettings;
+
 /**
  * Represents a database user in the Discraft config.
  */
@@ -77,4 +83,97 @@ public class DBUser {
 		return conn;
 	}
 
+	/**
+	 * Creates a connection pool for this user and returns it.
+	 * <p>
+	 * Like {@link #conn()}, this can only be done once. The credentials are
+	 * kept by the pool so it can open new connections, but can no longer be
+	 * retrieved via this user. It is up to the new owner of the pool to close
+	 * it once they are done with it.
+	 * <p>
+	 * The SQL dialect of the pool is determined by the database URL. If the
+	 * database is SQLite, the given SQLite settings are applied to every
+	 * connection the pool opens.
+	 *
+	 * @param name
+	 *            the pool name.
+	 * @param settings
+	 *            the pool settings.
+	 * @param sqlite
+	 *            the SQLite settings, may be {@code null} to leave SQLite
+	 *            connections as they are.
+	 * @return the connection pool.
+	 * @throws NullPointerException
+	 *             if {@code name} or {@code settings} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the database URL is not for a supported database.
+	 * @throws SQLException
+	 *             if already connected.
+	 */
+	@NotNull
+	public ConnectionPool pool(@NotNull String name,
+			@NotNull PoolSettings settings, @Nullable SQLiteSettings sqlite)
+			throws SQLException {
+		if (open) {
+			throw new SQLException("already connected");
+		}
+
+		String db = this.db;
+		String user = this.user;
+		String pass = this.pass;
+		SQLDialect dialect = SQLDialect.forUrl(db);
+
+		ConnectionFactory factory =
+				() -> DriverManager.getConnection(db, user, pass);
+		if (dialect == SQLDialect.SQLITE && sqlite != null) {
+			ConnectionFactory opener = factory;
+			factory = () -> {
+				Connection conn = opener.open();
+				try {
+					sqlite.apply(conn);
+				} catch (SQLException e) {
+					conn.close();
+					throw e;
+				}
+				return conn;
+			};
+		}
+
+		/*
+		 * Pools for the same database share their writer thread, even if
+		 * they are for different users.
+		 */
+		ConnectionPool pool = new ConnectionPool(name, dialect, factory,
+				settings, dialect.databaseOf(db));
+		this.db = null;
+		this.user = null;
+		this.pass = null;
+		this.open = true;
+		return pool;
+	}
+
+	/**
+	 * Creates a connection pool for this user and returns it.
+	 * <p>
+	 * This is the same as {@link #pool(String, PoolSettings, SQLiteSettings)},
+	 * without any SQLite settings.
+	 *
+	 * @param name
+	 *            the pool name.
+	 * @param settings
+	 *            the pool settings.
+	 * @return the connection pool.
+	 * @throws NullPointerException
+	 *             if {@code name} or {@code settings} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the database URL is not for a supported database.
+	 * @throws SQLException
+	 *             if already connected.
+	 */
+	@NotNull
+	public ConnectionPool pool(@NotNull String name,
+			@NotNull PoolSettings settings) throws SQLException {
+		return this.pool(name, settings, null);
+	}
+
 }
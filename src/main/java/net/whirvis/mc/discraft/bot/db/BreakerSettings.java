@@ -0,0 +1,230 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The settings for a {@link CircuitBreaker}.
+ * <p>
+ * Each setting starts out with a sensible default, and can be changed via its
+ * respective setter before the breaker is created.
+ */
+public class BreakerSettings {
+
+	private int windowSize;
+	private int minCalls;
+	private int failureRate;
+	private long slowCall;
+	private int slowRate;
+	private long openTime;
+	private int probes;
+
+	/**
+	 * Constructs a new {@code BreakerSettings} with the default settings.
+	 */
+	public BreakerSettings() {
+		this.windowSize = 20;
+		this.minCalls = 10;
+		this.failureRate = 50;
+		this.slowCall = 2000L;
+		this.slowRate = 80;
+		this.openTime = 10000L;
+		this.probes = 3;
+	}
+
+	private static int checkRate(String name, int rate) {
+		if (rate <= 0 || rate > 100) {
+			throw new IllegalArgumentException(
+					name + " must be between 1 and 100");
+		}
+		return rate;
+	}
+
+	/**
+	 * Sets how many of the most recent calls the failure and slow call rates
+	 * are measured over.
+	 *
+	 * @param windowSize
+	 *            the window size, in calls.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code windowSize} is not positive.
+	 */
+	@NotNull
+	public BreakerSettings windowSize(int windowSize) {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("windowSize must be positive");
+		}
+		this.windowSize = windowSize;
+		return this;
+	}
+
+	/**
+	 * Sets how many calls must be made before the breaker can open. This
+	 * keeps a single failure right after startup from opening it.
+	 *
+	 * @param minCalls
+	 *            the minimum number of calls.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code minCalls} is not positive.
+	 */
+	@NotNull
+	public BreakerSettings minCalls(int minCalls) {
+		if (minCalls <= 0) {
+			throw new IllegalArgumentException("minCalls must be positive");
+		}
+		this.minCalls = minCalls;
+		return this;
+	}
+
+	/**
+	 * Sets the percentage of calls which must fail for the breaker to open.
+	 *
+	 * @param failureRate
+	 *            the failure rate threshold, as a percentage.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code failureRate} is not between 1 and 100.
+	 */
+	@NotNull
+	public BreakerSettings failureRate(int failureRate) {
+		this.failureRate = checkRate("failureRate", failureRate);
+		return this;
+	}
+
+	/**
+	 * Sets how long a call may take before it is counted as slow.
+	 *
+	 * @param slowCall
+	 *            the slow call threshold, in milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code slowCall} is not positive.
+	 */
+	@NotNull
+	public BreakerSettings slowCall(long slowCall) {
+		if (slowCall <= 0) {
+			throw new IllegalArgumentException("slowCall must be positive");
+		}
+		this.slowCall = slowCall;
+		return this;
+	}
+
+	/**
+	 * Sets the percentage of calls which must be slow for the breaker to
+	 * open.
+	 *
+	 * @param slowRate
+	 *            the slow call rate threshold, as a percentage.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code slowRate} is not between 1 and 100.
+	 */
+	@NotNull
+	public BreakerSettings slowRate(int slowRate) {
+		this.slowRate = checkRate("slowRate", slowRate);
+		return this;
+	}
+
+	/**
+	 * Sets how long the breaker stays open before letting probe calls
+	 * through.
+	 *
+	 * @param openTime
+	 *            the open time, in milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code openTime} is negative.
+	 */
+	@NotNull
+	public BreakerSettings openTime(long openTime) {
+		if (openTime < 0) {
+			throw new IllegalArgumentException("openTime cannot be negative");
+		}
+		this.openTime = openTime;
+		return this;
+	}
+
+	/**
+	 * Sets how many probe calls must succeed for a half-open breaker to
+	 * close again.
+	 *
+	 * @param probes
+	 *            the number of probe calls.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code probes} is not positive.
+	 */
+	@NotNull
+	public BreakerSettings probes(int probes) {
+		if (probes <= 0) {
+			throw new IllegalArgumentException("probes must be positive");
+		}
+		this.probes = probes;
+		return this;
+	}
+
+	/**
+	 * Returns the window size.
+	 *
+	 * @return the window size, in calls.
+	 */
+	public int getWindowSize() {
+		return this.windowSize;
+	}
+
+	/**
+	 * Returns the minimum number of calls before the breaker can open.
+	 *
+	 * @return the minimum number of calls.
+	 */
+	public int getMinCalls() {
+		return this.minCalls;
+	}
+
+	/**
+	 * Returns the failure rate threshold.
+	 *
+	 * @return the failure rate threshold, as a percentage.
+	 */
+	public int getFailureRate() {
+		return this.failureRate;
+	}
+
+	/**
+	 * Returns the slow call threshold.
+	 *
+	 * @return the slow call threshold, in milliseconds.
+	 */
+	public long getSlowCall() {
+		return this.slowCall;
+	}
+
+	/**
+	 * Returns the slow call rate threshold.
+	 *
+	 * @return the slow call rate threshold, as a percentage.
+	 */
+	public int getSlowRate() {
+		return this.slowRate;
+	}
+
+	/**
+	 * Returns the open time.
+	 *
+	 * @return the open time, in milliseconds.
+	 */
+	public long getOpenTime() {
+		return this.openTime;
+	}
+
+	/**
+	 * Returns how many probe calls must succeed to close the breaker.
+	 *
+	 * @return the number of probe calls.
+	 */
+	public int getProbes() {
+		return this.probes;
+	}
+
+}
@@ -0,0 +1,355 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Stops database work from being attempted while the database is down.
+ * <p>
+ * Without this, every operation during an outage waits out the full driver
+ * or pool timeout before failing, tying up a thread the whole time. The
+ * breaker watches the outcome of recent calls instead. Once too many of them
+ * fail or are too slow, it <i>opens</i>, and calls are refused immediately
+ * with a {@link DBUnavailableException}.
+ * <p>
+ * After staying open for a while, the breaker goes <i>half-open</i> and lets
+ * a few probe calls through. If they all succeed, the breaker closes and
+ * calls go through as normal. If any of them fail, it opens again.
+ * <p>
+ * Only errors which point to a problem with the database itself are counted
+ * as failures. Constraint violations, bad SQL, and bad data are the fault of
+ * the caller, and would fail just the same on a healthy database.
+ *
+ * @see BreakerSettings
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The state of a circuit breaker.
+	 */
+	public enum State {
+		/**
+		 * Calls go through as normal.
+		 */
+		CLOSED,
+
+		/**
+		 * Calls are refused.
+		 */
+		OPEN,
+
+		/**
+		 * Only a few probe calls go through, to test if the database is
+		 * back.
+		 */
+		HALF_OPEN
+	}
+
+	private final String name;
+	private final BreakerSettings settings;
+	private final long slowCallNanos;
+
+	/*
+	 * The outcome of each call in the window is kept in a ring, along with
+	 * running totals. All of these are guarded by this breaker. The state is
+	 * volatile so closed breakers, by far the common case, are never locked
+	 * when checking if a call may go through.
+	 */
+	private final boolean[] failed;
+	private final boolean[] slow;
+	private int next;
+	private int count;
+	private int failures;
+	private int slows;
+	private long openedAt;
+	private int probesIssued;
+	private int probesPassed;
+	private volatile State state;
+
+	private final LongAdder calls;
+	private final LongAdder rejected;
+	private final LongAdder opens;
+
+	/**
+	 * Constructs a new {@code CircuitBreaker}.
+	 *
+	 * @param name
+	 *            the name of the database this breaker protects.
+	 * @param settings
+	 *            the breaker settings.
+	 * @throws NullPointerException
+	 *             if {@code name} or {@code settings} are {@code null}.
+	 */
+	public CircuitBreaker(@NotNull String name,
+			@NotNull BreakerSettings settings) {
+		this.name = Objects.requireNonNull(name, "name");
+		this.settings = Objects.requireNonNull(settings, "settings");
+		this.slowCallNanos = settings.getSlowCall() * 1000000L;
+
+		this.failed = new boolean[settings.getWindowSize()];
+		this.slow = new boolean[settings.getWindowSize()];
+		this.state = State.CLOSED;
+
+		this.calls = new LongAdder();
+		this.rejected = new LongAdder();
+		this.opens = new LongAdder();
+	}
+
+	/**
+	 * Returns if an error is a sign of a problem with the database.
+	 * <p>
+	 * The cause of each error is checked as well, as database errors are
+	 * often wrapped by the time they reach the breaker.
+	 *
+	 * @param error
+	 *            the error.
+	 * @return {@code true} if {@code error} counts as a failure,
+	 *         {@code false} otherwise.
+	 */
+	public static boolean isFailure(Throwable error) {
+		for (Throwable cause = error; cause != null; cause =
+				cause.getCause()) {
+			if (!(cause instanceof SQLException)) {
+				continue;
+			}
+			return !(cause instanceof SQLIntegrityConstraintViolationException
+					|| cause instanceof SQLSyntaxErrorException
+					|| cause instanceof SQLDataException
+					|| cause instanceof DBUnavailableException);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the name of the database this breaker protects.
+	 *
+	 * @return the name of the database.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the breaker settings.
+	 *
+	 * @return the breaker settings.
+	 */
+	@NotNull
+	public BreakerSettings getSettings() {
+		return this.settings;
+	}
+
+	/**
+	 * Returns if a call would currently be let through, without claiming a
+	 * probe if the breaker is half-open. This is meant for refusing work
+	 * before it is queued, see {@link DBExecutor#supply(DBTask)}.
+	 *
+	 * @return {@code true} if a call would be let through, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isCallPermitted() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		synchronized (this) {
+			this.checkOpenTime();
+			return state == State.HALF_OPEN
+					&& probesIssued < settings.getProbes();
+		}
+	}
+
+	private boolean tryAcquire() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		synchronized (this) {
+			this.checkOpenTime();
+			if (state == State.CLOSED) {
+				return true;
+			} else if (state == State.HALF_OPEN
+					&& probesIssued < settings.getProbes()) {
+				probesIssued++;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private void checkOpenTime() {
+		if (state == State.OPEN && System.currentTimeMillis()
+				- openedAt >= settings.getOpenTime()) {
+			this.probesIssued = 0;
+			this.probesPassed = 0;
+			this.state = State.HALF_OPEN;
+		}
+	}
+
+	private synchronized void record(long nanos, Throwable error) {
+		boolean isFailure = error != null && isFailure(error);
+		boolean isSlow = nanos >= slowCallNanos;
+
+		if (state == State.HALF_OPEN) {
+			if (isFailure || isSlow) {
+				this.open();
+			} else if (++probesPassed >= settings.getProbes()) {
+				this.reset(State.CLOSED);
+			}
+			return;
+		} else if (state == State.OPEN) {
+			/* a call that started before the breaker opened */
+			return;
+		}
+
+		if (count == failed.length) {
+			failures -= failed[next] ? 1 : 0;
+			slows -= slow[next] ? 1 : 0;
+		} else {
+			count++;
+		}
+		failed[next] = isFailure;
+		slow[next] = isSlow;
+		failures += isFailure ? 1 : 0;
+		slows += isSlow ? 1 : 0;
+		next = (next + 1) % failed.length;
+
+		if (count >= settings.getMinCalls()
+				&& (failures * 100 >= settings.getFailureRate() * count
+						|| slows * 100 >= settings.getSlowRate() * count)) {
+			this.open();
+		}
+	}
+
+	private void open() {
+		this.reset(State.OPEN);
+		this.openedAt = System.currentTimeMillis();
+		opens.increment();
+	}
+
+	private void reset(State state) {
+		for (int i = 0; i < failed.length; i++) {
+			failed[i] = false;
+			slow[i] = false;
+		}
+		this.next = 0;
+		this.count = 0;
+		this.failures = 0;
+		this.slows = 0;
+		this.state = state;
+	}
+
+	/**
+	 * Runs a database operation through this breaker.
+	 * <p>
+	 * If the breaker is open, the operation is not run at all. Otherwise, it
+	 * is run on the calling thread, and its outcome and how long it took are
+	 * recorded.
+	 *
+	 * @param <T>
+	 *            the result type.
+	 * @param task
+	 *            the operation to run.
+	 * @return the result of the operation.
+	 * @throws NullPointerException
+	 *             if {@code task} is {@code null}.
+	 * @throws DBUnavailableException
+	 *             if the breaker is open.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public <T> T call(@NotNull DBTask<T> task) throws SQLException {
+		Objects.requireNonNull(task, "task");
+		if (!this.tryAcquire()) {
+			rejected.increment();
+			throw new DBUnavailableException(name);
+		}
+
+		calls.increment();
+		long start = System.nanoTime();
+		Throwable error = null;
+		try {
+			return task.run();
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			this.record(System.nanoTime() - start, error);
+		}
+	}
+
+	/**
+	 * Counts a call which was refused before it reached this breaker, as the
+	 * breaker was open.
+	 */
+	void reject() {
+		rejected.increment();
+	}
+
+	/**
+	 * Returns the state of this breaker.
+	 *
+	 * @return the state of this breaker.
+	 */
+	@NotNull
+	public State getState() {
+		if (state == State.CLOSED) {
+			return State.CLOSED;
+		}
+		synchronized (this) {
+			this.checkOpenTime();
+			return this.state;
+		}
+	}
+
+	/**
+	 * Returns the percentage of calls in the current window which failed.
+	 *
+	 * @return the failure rate, as a percentage.
+	 */
+	public synchronized int getFailureRate() {
+		return count > 0 ? failures * 100 / count : 0;
+	}
+
+	/**
+	 * Returns the percentage of calls in the current window which were slow.
+	 *
+	 * @return the slow call rate, as a percentage.
+	 */
+	public synchronized int getSlowRate() {
+		return count > 0 ? slows * 100 / count : 0;
+	}
+
+	/**
+	 * Returns how many calls have been let through.
+	 *
+	 * @return how many calls have been let through.
+	 */
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	/**
+	 * Returns how many calls have been refused.
+	 *
+	 * @return how many calls have been refused.
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Returns how many times this breaker has opened.
+	 *
+	 * @return how many times this breaker has opened.
+	 */
+	public long getOpens() {
+		return opens.sum();
+	}
+
+}
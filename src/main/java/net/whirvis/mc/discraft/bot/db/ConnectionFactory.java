@@ -0,0 +1,26 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Opens new physical connections to a database.
+ *
+ * @see ConnectionPool
+ */
+@FunctionalInterface
+public interface ConnectionFactory {
+
+	/**
+	 * Opens a new connection to the database.
+	 *
+	 * @return the newly opened connection.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	@NotNull
+	public Connection open() throws SQLException;
+
+}
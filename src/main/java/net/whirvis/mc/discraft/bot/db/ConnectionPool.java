@@ -0,0 +1,913 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A bounded pool of database connections.
+ * <p>
+ * A JDBC connection is not safe to share between threads. Rather than having
+ * every thread share one connection, each operation borrows a connection from
+ * this pool with {@link #getConnection()} and gives it back by closing it. This
+ * lets database work from different threads run in parallel, up to the maximum
+ * size of the pool.
+ * <p>
+ * Connections are handed out most recently used first. This keeps the busiest
+ * connections warm, and lets the rest sit idle long enough to be closed by
+ * {@link #evictIdle()}.
+ * <p>
+ * Each connection keeps its own {@link StatementCache}. Preparing the same SQL
+ * twice on a borrowed connection reuses the statement prepared before, and
+ * closing a statement gives it back to the cache. Any statement or result set
+ * still open when a connection is returned is closed by the pool and counted
+ * as a leak.
+ * <p>
+ * Writes should go through {@link #write(DBWrite)}, which runs each write in
+ * a transaction. For databases which only allow one writer at a time, the
+ * pool can instead send every write to a single thread which commits them in
+ * groups, see {@link PoolSettings#groupCommit(int)}. Pools for the same
+ * database share this thread.
+ *
+ * @see PoolSettings
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	/*
+	 * Connections which have only been idle for a moment are assumed to still
+	 * be valid. Checking them every time would cost a round trip to the
+	 * database on every borrow.
+	 */
+	private static final long VALIDATE_AFTER_MS = 1000L;
+
+	private static final long WRITER_CLOSE_MS = 10000L;
+
+	private static class Physical {
+
+		private final Connection conn;
+		private final StatementCache statements;
+		private volatile long idleSince;
+
+		private Physical(Connection conn, int cacheSize) {
+			this.conn = conn;
+			this.statements = new StatementCache(conn, cacheSize);
+		}
+
+	}
+
+	private final String name;
+	private final SQLDialect dialect;
+	private final ConnectionFactory factory;
+	private final PoolSettings settings;
+	private final Semaphore permits;
+	private final Deque<Physical> idle;
+	private final Set<PooledConnection> borrowed;
+	private final AtomicInteger total;
+	private final AtomicInteger active;
+	private final LongAdder acquired;
+	private final LongAdder timeouts;
+	private final LongAdder acquireNanos;
+	private final LongAdder statementHits;
+	private final LongAdder statementMisses;
+	private final LongAdder leakedStatements;
+	private final LongAdder leakedConnections;
+	private final GroupCommitWriter writer;
+	private final AtomicBoolean writerClosed;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a new {@code ConnectionPool}.
+	 * <p>
+	 * No connections are opened until the first one is requested, or until
+	 * {@link #evictIdle()} fills the pool to its minimum size.
+	 * <p>
+	 * If group commit is enabled, every pool constructed with the same
+	 * database shares one writer thread. This keeps two pools for the same
+	 * SQLite file from fighting over its write lock.
+	 *
+	 * @param name
+	 *            the pool name.
+	 * @param dialect
+	 *            the SQL dialect of the database.
+	 * @param factory
+	 *            the factory to open connections with.
+	 * @param settings
+	 *            the pool settings.
+	 * @param database
+	 *            the database the pool connects to, as returned by
+	 *            {@link SQLDialect#databaseOf(String)}. If {@code null},
+	 *            the pool does not share its writer thread with any other.
+	 * @throws NullPointerException
+	 *             if {@code name}, {@code dialect}, {@code factory} or
+	 *             {@code settings} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the minimum size of the pool is greater than its maximum
+	 *             size.
+	 */
+	public ConnectionPool(@NotNull String name, @NotNull SQLDialect dialect,
+			@NotNull ConnectionFactory factory, @NotNull PoolSettings settings,
+			@Nullable String database) {
+		this.name = Objects.requireNonNull(name, "name");
+		this.dialect = Objects.requireNonNull(dialect, "dialect");
+		this.factory = Objects.requireNonNull(factory, "factory");
+		this.settings = Objects.requireNonNull(settings, "settings");
+		if (settings.getMinSize() > settings.getMaxSize()) {
+			throw new IllegalArgumentException(
+					"minSize cannot be greater than maxSize");
+		}
+
+		/*
+		 * The semaphore is fair so threads waiting on a saturated pool are
+		 * served in the order they arrived, rather than starving.
+		 */
+		this.permits = new Semaphore(settings.getMaxSize(), true);
+		this.idle = new ConcurrentLinkedDeque<>();
+		this.borrowed = ConcurrentHashMap.newKeySet();
+		this.total = new AtomicInteger();
+		this.active = new AtomicInteger();
+		this.acquired = new LongAdder();
+		this.timeouts = new LongAdder();
+		this.acquireNanos = new LongAdder();
+		this.statementHits = new LongAdder();
+		this.statementMisses = new LongAdder();
+		this.leakedStatements = new LongAdder();
+		this.leakedConnections = new LongAdder();
+		this.writerClosed = new AtomicBoolean();
+
+		/*
+		 * This must come last, as the writer starts a thread which uses this
+		 * pool once writes are submitted.
+		 */
+		int groupCommit = settings.getGroupCommit();
+		this.writer = groupCommit > 0
+				? GroupCommitWriter.open(database, this, groupCommit) : null;
+	}
+
+	/**
+	 * Constructs a new {@code ConnectionPool}, which does not share its
+	 * writer thread with any other.
+	 *
+	 * @param name
+	 *            the pool name.
+	 * @param dialect
+	 *            the SQL dialect of the database.
+	 * @param factory
+	 *            the factory to open connections with.
+	 * @param settings
+	 *            the pool settings.
+	 * @throws NullPointerException
+	 *             if {@code name}, {@code dialect}, {@code factory} or
+	 *             {@code settings} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the minimum size of the pool is greater than its maximum
+	 *             size.
+	 * @see #ConnectionPool(String, SQLDialect, ConnectionFactory,
+	 *      PoolSettings, String)
+	 */
+	public ConnectionPool(@NotNull String name, @NotNull SQLDialect dialect,
+			@NotNull ConnectionFactory factory,
+			@NotNull PoolSettings settings) {
+		this(name, dialect, factory, settings, null);
+	}
+
+	/**
+	 * Returns the pool name.
+	 *
+	 * @return the pool name.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the SQL dialect of the database.
+	 *
+	 * @return the SQL dialect of the database.
+	 */
+	@NotNull
+	public SQLDialect getDialect() {
+		return this.dialect;
+	}
+
+	/**
+	 * Returns the pool settings.
+	 *
+	 * @return the pool settings.
+	 */
+	@NotNull
+	public PoolSettings getSettings() {
+		return this.settings;
+	}
+
+	/**
+	 * Borrows a connection from the pool.
+	 * <p>
+	 * If every connection is in use, this waits for one to be returned, up to
+	 * the acquire timeout of the pool. The connection is returned to the pool
+	 * when it is closed, so it should always be used in a try-with-resources
+	 * statement.
+	 *
+	 * @return the borrowed connection.
+	 * @throws SQLTimeoutException
+	 *             if no connection became available in time.
+	 * @throws SQLException
+	 *             if the pool is closed, or an SQL error occurs.
+	 */
+	@NotNull
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("pool " + name + " is closed");
+		}
+
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(settings.getAcquireTimeout(),
+					TimeUnit.MILLISECONDS)) {
+				timeouts.increment();
+				throw new SQLTimeoutException("timed out waiting for a "
+						+ "connection from pool " + name);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted waiting for a connection", e);
+		} finally {
+			acquireNanos.add(System.nanoTime() - start);
+		}
+
+		try {
+			Physical physical = this.borrow();
+			active.incrementAndGet();
+			acquired.increment();
+			return this.wrap(physical);
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs a write on a connection from the pool, inside of a transaction.
+	 * <p>
+	 * If group commit is enabled, the write is handed to the writer thread of
+	 * the pool and may be committed along with other writes. Otherwise, it is
+	 * run on the calling thread in a transaction of its own. Either way, this
+	 * only returns once the write has been committed. A write must never call
+	 * this method itself, as it would wait on its own group to be committed.
+	 *
+	 * @param <T>
+	 *            the result type.
+	 * @param write
+	 *            the write to run.
+	 * @return the result of the write.
+	 * @throws NullPointerException
+	 *             if {@code write} is {@code null}.
+	 * @throws SQLException
+	 *             if the pool is closed, or an SQL error occurs.
+	 * @see PoolSettings#groupCommit(int)
+	 */
+	public <T> T write(@NotNull DBWrite<T> write) throws SQLException {
+		Objects.requireNonNull(write, "write");
+		if (writer != null) {
+			return join(writer.submit(this, write));
+		}
+
+		try (Connection conn = this.getConnection()) {
+			boolean autoCommit = conn.getAutoCommit();
+			try {
+				conn.setAutoCommit(false);
+				T result = write.run(conn);
+				conn.commit();
+				return result;
+			} catch (SQLException | RuntimeException e) {
+				try {
+					conn.rollback();
+				} catch (SQLException rollback) {
+					e.addSuppressed(rollback);
+				}
+				throw e;
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	private static <T> T join(CompletableFuture<T> future)
+			throws SQLException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SQLException(cause);
+		}
+	}
+
+	private Physical borrow() throws SQLException {
+		Physical polled;
+		while ((polled = idle.pollFirst()) != null) {
+			long idleFor = System.currentTimeMillis() - polled.idleSince;
+			if (idleFor < VALIDATE_AFTER_MS || this.isValid(polled.conn)) {
+				return polled;
+			}
+			this.discard(polled);
+		}
+		return this.open();
+	}
+
+	private Physical open() throws SQLException {
+		Connection conn = factory.open();
+		total.incrementAndGet();
+		return new Physical(conn, settings.getStatementCacheSize());
+	}
+
+	private boolean isValid(Connection conn) {
+		try {
+			return conn.isValid(settings.getValidationTimeout());
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void discard(Physical physical) {
+		total.decrementAndGet();
+		physical.statements.close();
+		try {
+			physical.conn.close();
+		} catch (SQLException e) {
+			/* TODO: Use Log4j2 */
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Called when a borrowed connection is closed by its user.
+	 */
+	private void release(PooledConnection borrower) {
+		borrowed.remove(borrower);
+		active.decrementAndGet();
+		Physical physical = borrower.physical;
+		Connection conn = physical.conn;
+		try {
+			int leaked = borrower.closeStatements();
+			if (leaked > 0) {
+				leakedStatements.add(leaked);
+			}
+
+			boolean reusable = !closed && !conn.isClosed();
+			if (reusable && !conn.getAutoCommit()) {
+				/*
+				 * The next user of this connection must not inherit a
+				 * transaction that was left open.
+				 */
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+			if (reusable) {
+				physical.idleSince = System.currentTimeMillis();
+				idle.offerFirst(physical);
+				if (closed) {
+					/* the pool was closed while this was being returned */
+					this.close();
+				}
+			} else {
+				this.discard(physical);
+			}
+		} catch (SQLException e) {
+			this.discard(physical);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private Connection wrap(Physical physical) {
+		PooledConnection borrower = new PooledConnection(physical);
+		Connection proxy = (Connection) Proxy.newProxyInstance(
+				ConnectionPool.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, borrower);
+		borrower.proxy = proxy;
+		borrowed.add(borrower);
+		return proxy;
+	}
+
+	private static Object invokeOn(Object target, Method method,
+			Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private class PooledConnection implements InvocationHandler {
+
+		private final Physical physical;
+		private final long borrowedAt;
+		private final Throwable borrowedFrom;
+		private final List<PooledStatement> cached;
+		private final List<Statement> uncached;
+		private Connection proxy;
+		private boolean released;
+		private boolean reported;
+
+		private PooledConnection(Physical physical) {
+			this.physical = physical;
+			this.borrowedAt = System.currentTimeMillis();
+			this.cached = new ArrayList<>();
+			this.uncached = new ArrayList<>();
+
+			/*
+			 * Capturing a stack trace is not free, so it's only done when
+			 * leak detection is actually enabled.
+			 */
+			this.borrowedFrom = settings.getLeakThreshold() > 0
+					? new Throwable("connection borrowed here") : null;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					synchronized (this) {
+						if (released) {
+							return null;
+						}
+						this.released = true;
+					}
+					release(this);
+					return null;
+				case "isClosed":
+					synchronized (this) {
+						if (released) {
+							return true;
+						}
+					}
+					break;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "PooledConnection[" + name + "]";
+				default:
+					synchronized (this) {
+						if (released) {
+							throw new SQLException("connection closed");
+						}
+					}
+					break;
+			}
+
+			if (method.getName().equals("prepareStatement")
+					&& args.length == 1) {
+				return this.prepare((String) args[0]);
+			}
+
+			Object result = invokeOn(physical.conn, method, args);
+			if (result instanceof Statement) {
+				synchronized (this) {
+					uncached.add((Statement) result);
+				}
+			}
+			return result;
+		}
+
+		private PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement stmt = physical.statements.take(sql);
+			if (stmt != null) {
+				statementHits.increment();
+			} else {
+				statementMisses.increment();
+				stmt = physical.statements.prepare(sql);
+			}
+
+			PooledStatement pooled = new PooledStatement(this, sql, stmt);
+			synchronized (this) {
+				cached.add(pooled);
+			}
+			return (PreparedStatement) Proxy.newProxyInstance(
+					ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, pooled);
+		}
+
+		private synchronized void forget(PooledStatement pooled) {
+			cached.remove(pooled);
+		}
+
+		/**
+		 * Closes every statement still open on this connection.
+		 *
+		 * @return how many statements or result sets had been leaked.
+		 */
+		private int closeStatements() {
+			List<PooledStatement> open;
+			List<Statement> raw;
+			synchronized (this) {
+				open = new ArrayList<>(cached);
+				raw = new ArrayList<>(uncached);
+				cached.clear();
+				uncached.clear();
+			}
+
+			int leaked = 0;
+			for (PooledStatement pooled : open) {
+				/* the statement was leaked, and maybe its results too */
+				leaked++;
+				if (pooled.giveBack()) {
+					leaked++;
+				}
+			}
+			for (Statement stmt : raw) {
+				try {
+					if (!stmt.isClosed()) {
+						stmt.close();
+						leaked++;
+					}
+				} catch (SQLException e) {
+					/* TODO: Use Log4j2 */
+					e.printStackTrace();
+				}
+			}
+			return leaked;
+		}
+
+	}
+
+	private class PooledStatement implements InvocationHandler {
+
+		private final PooledConnection owner;
+		private final String sql;
+		private final PreparedStatement stmt;
+		private ResultSet results;
+		private boolean closed;
+
+		private PooledStatement(PooledConnection owner, String sql,
+				PreparedStatement stmt) {
+			this.owner = owner;
+			this.sql = sql;
+			this.stmt = stmt;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (!closed) {
+						owner.forget(this);
+						if (this.giveBack()) {
+							leakedStatements.increment();
+						}
+					}
+					return null;
+				case "isClosed":
+					if (closed) {
+						return true;
+					}
+					break;
+				case "getConnection":
+					return owner.proxy;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "PooledStatement[" + sql + "]";
+				default:
+					if (closed) {
+						throw new SQLException("statement closed");
+					}
+					break;
+			}
+
+			Object result = invokeOn(stmt, method, args);
+			if (result instanceof ResultSet) {
+				this.results = (ResultSet) result;
+			}
+			return result;
+		}
+
+		/**
+		 * Resets the statement and gives it back to the statement cache.
+		 *
+		 * @return {@code true} if a result set had been left open,
+		 *         {@code false} otherwise.
+		 */
+		private boolean giveBack() {
+			this.closed = true;
+			boolean leaked = false;
+			try {
+				if (results != null && !results.isClosed()) {
+					results.close();
+					leaked = true;
+				}
+				this.results = null;
+				stmt.clearParameters();
+				stmt.clearBatch();
+				owner.physical.statements.offer(sql, stmt);
+			} catch (SQLException e) {
+				/* a statement that can't be reset can't be reused */
+				try {
+					stmt.close();
+				} catch (SQLException close) {
+					e.addSuppressed(close);
+				}
+			}
+			return leaked;
+		}
+
+	}
+
+	/**
+	 * Reports every connection which has been borrowed for longer than the
+	 * leak threshold. Each connection is only reported once.
+	 * <p>
+	 * This is done automatically by {@link #evictIdle()}. If the leak
+	 * threshold is zero, this method does nothing.
+	 *
+	 * @return how many connections were newly reported.
+	 */
+	public int detectLeaks() {
+		long threshold = settings.getLeakThreshold();
+		if (threshold <= 0) {
+			return 0;
+		}
+
+		int reported = 0;
+		long now = System.currentTimeMillis();
+		for (PooledConnection borrower : borrowed) {
+			synchronized (borrower) {
+				if (borrower.released || borrower.reported
+						|| now - borrower.borrowedAt < threshold) {
+					continue;
+				}
+				borrower.reported = true;
+			}
+			leakedConnections.increment();
+			reported++;
+
+			/* TODO: Use Log4j2 */
+			System.err.println("Connection from pool " + name
+					+ " has been borrowed for " + (now - borrower.borrowedAt)
+					+ "ms, it may have been leaked");
+			borrower.borrowedFrom.printStackTrace();
+		}
+		return reported;
+	}
+
+	/**
+	 * Closes every connection which has been idle for longer than the idle
+	 * timeout, without shrinking the pool below its minimum size. Afterwards,
+	 * new connections are opened until the pool is at its minimum size.
+	 * <p>
+	 * This should be called periodically, such as by a maintenance job.
+	 *
+	 * @throws SQLException
+	 *             if an SQL error occurs while filling the pool.
+	 */
+	public void evictIdle() throws SQLException {
+		if (closed) {
+			return;
+		}
+		this.detectLeaks();
+
+		/*
+		 * Idle connections are pushed to the front of the deque, so the ones
+		 * that have been idle the longest are at the back.
+		 */
+		long now = System.currentTimeMillis();
+		Iterator<Physical> iterator = idle.descendingIterator();
+		while (iterator.hasNext()) {
+			Physical next = iterator.next();
+			if (total.get() <= settings.getMinSize()) {
+				break;
+			} else if (now - next.idleSince < settings.getIdleTimeout()) {
+				break;
+			} else if (idle.removeLastOccurrence(next)) {
+				this.discard(next);
+			}
+		}
+
+		while (!closed && total.get() < settings.getMinSize()) {
+			if (!permits.tryAcquire()) {
+				break;
+			}
+			try {
+				Physical physical = this.open();
+				physical.idleSince = System.currentTimeMillis();
+				idle.offerLast(physical);
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Returns how many connections are currently borrowed.
+	 *
+	 * @return how many connections are currently borrowed.
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * Returns how many connections are open but not borrowed.
+	 *
+	 * @return how many connections are open but not borrowed.
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * Returns how many connections are open, borrowed or not.
+	 *
+	 * @return how many connections are open.
+	 */
+	public int getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * Returns roughly how many threads are waiting for a connection. When this
+	 * stays above zero, the pool is saturated.
+	 *
+	 * @return how many threads are waiting for a connection.
+	 */
+	public int getWaiting() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * Returns how many connections have been borrowed.
+	 *
+	 * @return how many connections have been borrowed.
+	 */
+	public long getAcquired() {
+		return acquired.sum();
+	}
+
+	/**
+	 * Returns how many times a thread gave up waiting for a connection.
+	 *
+	 * @return how many times a thread gave up waiting for a connection.
+	 */
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * Returns the total time threads have spent waiting for a connection.
+	 *
+	 * @return the total time spent waiting for a connection, in nanoseconds.
+	 */
+	public long getAcquireNanos() {
+		return acquireNanos.sum();
+	}
+
+	/**
+	 * Returns how many times a statement was reused from a statement cache,
+	 * rather than being prepared again.
+	 *
+	 * @return how many times a cached statement was reused.
+	 */
+	public long getStatementHits() {
+		return statementHits.sum();
+	}
+
+	/**
+	 * Returns how many times a statement had to be prepared, as it was not in
+	 * a statement cache.
+	 *
+	 * @return how many times a statement had to be prepared.
+	 */
+	public long getStatementMisses() {
+		return statementMisses.sum();
+	}
+
+	/**
+	 * Returns how many statements and result sets were left open by their
+	 * user, and had to be closed by the pool.
+	 *
+	 * @return how many statements and result sets were leaked.
+	 */
+	public long getLeakedStatements() {
+		return leakedStatements.sum();
+	}
+
+	/**
+	 * Returns how many connections have been reported as possibly leaked.
+	 *
+	 * @return how many connections have been reported as possibly leaked.
+	 * @see #detectLeaks()
+	 */
+	public long getLeakedConnections() {
+		return leakedConnections.sum();
+	}
+
+	/**
+	 * Returns how many writes are waiting for the writer thread.
+	 *
+	 * @return how many writes are waiting, zero if group commit is disabled.
+	 */
+	public int getQueuedWrites() {
+		return writer != null ? writer.getQueued() : 0;
+	}
+
+	/**
+	 * Returns how many groups of writes the writer thread has committed. The
+	 * number of writes divided by this is the average group size.
+	 *
+	 * @return how many groups of writes have been committed, zero if group
+	 *         commit is disabled.
+	 */
+	public long getWriteGroups() {
+		return writer != null ? writer.getGroups() : 0L;
+	}
+
+	/**
+	 * Returns how many writes the writer thread has run.
+	 *
+	 * @return how many writes have been run, zero if group commit is
+	 *         disabled.
+	 */
+	public long getGroupedWrites() {
+		return writer != null ? writer.getWrites() : 0L;
+	}
+
+	/**
+	 * Returns if the pool has been closed.
+	 *
+	 * @return {@code true} if the pool has been closed, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Closes the pool, and every idle connection in it.
+	 * <p>
+	 * Connections which are still borrowed are closed once they are returned.
+	 * After the pool is closed, no more connections can be borrowed.
+	 * <p>
+	 * If group commit is enabled, writes which were already queued are
+	 * committed before the pool is closed.
+	 */
+	@Override
+	public void close() {
+		/*
+		 * The writer may be shared, so it must only be closed once for this
+		 * pool. A connection returned after the pool was closed closes the
+		 * pool again, possibly from the writer thread itself.
+		 */
+		if (writer != null && writerClosed.compareAndSet(false, true)) {
+			try {
+				if (!writer.close(this, WRITER_CLOSE_MS)) {
+					/* TODO: Use Log4j2 */
+					System.err.println("timed out committing queued writes "
+							+ "for pool " + name);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.closed = true;
+		Physical polled;
+		while ((polled = idle.pollFirst()) != null) {
+			this.discard(polled);
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs database operations off of the calling thread.
+ * <p>
+ * Discord events and HTTP requests are dispatched on a handful of threads
+ * which must never wait on the database. Instead, their database work is
+ * handed to this executor, and they are given a {@code CompletableFuture} to
+ * continue from once it is done.
+ * <p>
+ * The executor has one thread per connection in its pool, so no thread ever
+ * sits waiting on the pool for a connection. Work which cannot be started
+ * right away is queued, up to a limit. Once the queue is full, new work is
+ * rejected rather than piling up without bound.
+ * <p>
+ * An executor can also be given a {@link CircuitBreaker}. While the breaker
+ * is open, work is refused before it is even queued, so callers find out the
+ * database is down right away rather than after a timeout. The executor does
+ * not record the outcome of the work it runs. That is done by the data layer
+ * itself, see {@link DBRouter#setBreaker(CircuitBreaker)}, so work done on
+ * other threads is covered as well.
+ *
+ * @see #supply(DBTask)
+ */
+public class DBExecutor {
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private final CircuitBreaker breaker;
+	private final LongAdder rejected;
+
+	/**
+	 * Constructs a new {@code DBExecutor}.
+	 *
+	 * @param name
+	 *            the executor name, used to name its threads.
+	 * @param threads
+	 *            how many threads to run operations on.
+	 * @param queueSize
+	 *            how many operations may wait to be run.
+	 * @param breaker
+	 *            the circuit breaker to check before queueing operations,
+	 *            may be {@code null}.
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code threads} or {@code queueSize} are not positive.
+	 */
+	public DBExecutor(@NotNull String name, int threads, int queueSize,
+			@Nullable CircuitBreaker breaker) {
+		this.name = Objects.requireNonNull(name, "name");
+		this.breaker = breaker;
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		} else if (queueSize <= 0) {
+			throw new IllegalArgumentException("queueSize must be positive");
+		}
+
+		AtomicInteger threadId = new AtomicInteger();
+		ThreadFactory factory = (runnable) -> {
+			Thread thread = new Thread(runnable,
+					name + "-db-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		this.executor = new ThreadPoolExecutor(threads, threads, 60L,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), factory);
+		executor.allowCoreThreadTimeOut(true);
+		this.rejected = new LongAdder();
+	}
+
+	/**
+	 * Constructs a new {@code DBExecutor} without a circuit breaker.
+	 *
+	 * @param name
+	 *            the executor name, used to name its threads.
+	 * @param threads
+	 *            how many threads to run operations on.
+	 * @param queueSize
+	 *            how many operations may wait to be run.
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code threads} or {@code queueSize} are not positive.
+	 */
+	public DBExecutor(@NotNull String name, int threads, int queueSize) {
+		this(name, threads, queueSize, null);
+	}
+
+	/**
+	 * Constructs a new {@code DBExecutor} with one thread for each connection
+	 * the given pool can have open at once.
+	 *
+	 * @param pool
+	 *            the connection pool the operations will use.
+	 * @param queueSize
+	 *            how many operations may wait to be run.
+	 * @throws NullPointerException
+	 *             if {@code pool} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code queueSize} is not positive.
+	 */
+	public DBExecutor(@NotNull ConnectionPool pool, int queueSize) {
+		this(Objects.requireNonNull(pool, "pool").getName(),
+				pool.getSettings().getMaxSize(), queueSize);
+	}
+
+	/**
+	 * Constructs a new {@code DBExecutor} with one thread for each connection
+	 * the pools of the given router can have open at once, primary and
+	 * replicas combined.
+	 *
+	 * @param router
+	 *            the router the operations will use.
+	 * @param queueSize
+	 *            how many operations may wait to be run.
+	 * @param breaker
+	 *            the circuit breaker to check before queueing operations,
+	 *            may be {@code null}.
+	 * @throws NullPointerException
+	 *             if {@code router} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code queueSize} is not positive.
+	 */
+	public DBExecutor(@NotNull DBRouter router, int queueSize,
+			@Nullable CircuitBreaker breaker) {
+		this(Objects.requireNonNull(router, "router").getPrimary().getName(),
+				threadsFor(router), queueSize, breaker);
+	}
+
+	private static int threadsFor(DBRouter router) {
+		int threads = router.getPrimary().getSettings().getMaxSize();
+		for (ConnectionPool replica : router.getReplicas()) {
+			threads += replica.getSettings().getMaxSize();
+		}
+		return threads;
+	}
+
+	/**
+	 * Returns the executor name.
+	 *
+	 * @return the executor name.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the circuit breaker checked before queueing operations.
+	 *
+	 * @return the circuit breaker, {@code null} if there is none.
+	 */
+	@Nullable
+	public CircuitBreaker getBreaker() {
+		return this.breaker;
+	}
+
+	/**
+	 * Runs a database operation on this executor.
+	 * <p>
+	 * If the operation fails, the returned future is completed exceptionally
+	 * with the error. This includes the operation being rejected, in which
+	 * case the error is a {@code RejectedExecutionException}, and the circuit
+	 * breaker being open, in which case it is a
+	 * {@link DBUnavailableException}.
+	 *
+	 * @param <T>
+	 *            the result type.
+	 * @param task
+	 *            the operation to run.
+	 * @return a future for the result of the operation.
+	 * @throws NullPointerException
+	 *             if {@code task} is {@code null}.
+	 */
+	@NotNull
+	public <T> CompletableFuture<T> supply(@NotNull DBTask<T> task) {
+		Objects.requireNonNull(task, "task");
+		CompletableFuture<T> future = new CompletableFuture<>();
+		if (breaker != null && !breaker.isCallPermitted()) {
+			breaker.reject();
+			future.completeExceptionally(
+					new DBUnavailableException(breaker.getName()));
+			return future;
+		}
+
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.run());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Returns how many operations are waiting to be run.
+	 *
+	 * @return how many operations are waiting to be run.
+	 */
+	public int getQueued() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Returns how many operations are currently running.
+	 *
+	 * @return how many operations are currently running.
+	 */
+	public int getRunning() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns how many operations have been rejected, as the queue was full
+	 * or the executor was shutdown.
+	 *
+	 * @return how many operations have been rejected.
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Shuts down the executor.
+	 * <p>
+	 * No new operations will be accepted, but every operation which has
+	 * already been accepted is allowed to finish, up to the given timeout.
+	 *
+	 * @param timeout
+	 *            how long to wait for operations to finish.
+	 * @param unit
+	 *            the unit of {@code timeout}.
+	 * @return {@code true} if every operation finished in time, {@code false}
+	 *         otherwise.
+	 * @throws NullPointerException
+	 *             if {@code unit} is {@code null}.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	public boolean shutdown(long timeout, @NotNull TimeUnit unit)
+			throws InterruptedException {
+		Objects.requireNonNull(unit, "unit");
+		executor.shutdown();
+		return executor.awaitTermination(timeout, unit);
+	}
+
+}
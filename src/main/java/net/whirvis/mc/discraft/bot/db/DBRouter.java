@@ -0,0 +1,379 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Routes database work between a primary database and its read replicas.
+ * <p>
+ * Every write goes to the primary. Reads are spread across the replicas, so
+ * read-heavy load can be scaled out by adding more of them. When there are no
+ * replicas, everything goes to the primary.
+ * <p>
+ * Replicas lag behind the primary. So a session always sees its own writes,
+ * each write pins the keys it wrote (usually a Discord ID) to the primary for
+ * the lag window. Pins are direct-mapped, like the unregistered user cache.
+ * When two keys map to the same slot, both are pinned. This can only send
+ * extra reads to the primary, never a read that should be pinned to a
+ * replica.
+ * <p>
+ * Replicas are never migrated. They must receive the schema, along with
+ * everything else, from the primary.
+ * <p>
+ * A router can be given a {@link CircuitBreaker} for its primary. Every write,
+ * and every connection borrowed from the primary, then goes through the
+ * breaker. This covers work done on any thread, not just the work handed to
+ * a {@link DBExecutor}.
+ *
+ * @see #write(long, DBWrite)
+ * @see #getReadConnection(long)
+ */
+public class DBRouter {
+
+	private static final int PIN_SLOTS = 4096;
+
+	private final ConnectionPool primary;
+	private final List<ConnectionPool> replicas;
+	private final long lagWindow;
+	private final AtomicLongArray pinnedUntil;
+	private final int slotMask;
+	private final AtomicInteger nextReplica;
+	private volatile CircuitBreaker breaker;
+
+	private final LongAdder primaryReads;
+	private final LongAdder replicaReads;
+	private final LongAdder pinnedReads;
+	private final LongAdder replicaFailures;
+
+	/**
+	 * Constructs a new {@code DBRouter}.
+	 *
+	 * @param primary
+	 *            the connection pool to the primary database.
+	 * @param replicas
+	 *            the connection pools to the read replicas, may be empty.
+	 * @param lagWindow
+	 *            how long a key stays pinned to the primary after it is
+	 *            written, in milliseconds. This should be longer than the
+	 *            replicas usually lag behind.
+	 * @throws NullPointerException
+	 *             if {@code primary} or {@code replicas} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if a replica uses a different SQL dialect than the primary,
+	 *             or if {@code lagWindow} is negative.
+	 */
+	public DBRouter(@NotNull ConnectionPool primary,
+			@NotNull List<ConnectionPool> replicas, long lagWindow) {
+		this.primary = Objects.requireNonNull(primary, "primary");
+		Objects.requireNonNull(replicas, "replicas");
+		if (lagWindow < 0) {
+			throw new IllegalArgumentException(
+					"lagWindow cannot be negative");
+		}
+		for (ConnectionPool replica : replicas) {
+			Objects.requireNonNull(replica, "replica");
+			if (replica.getDialect() != primary.getDialect()) {
+				throw new IllegalArgumentException("replica " + replica.getName()
+						+ " does not use the same dialect as its primary");
+			}
+		}
+		this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+		this.lagWindow = lagWindow;
+		this.pinnedUntil = new AtomicLongArray(PIN_SLOTS);
+		this.slotMask = PIN_SLOTS - 1;
+		this.nextReplica = new AtomicInteger();
+
+		this.primaryReads = new LongAdder();
+		this.replicaReads = new LongAdder();
+		this.pinnedReads = new LongAdder();
+		this.replicaFailures = new LongAdder();
+	}
+
+	/**
+	 * Constructs a new {@code DBRouter} with no read replicas. Everything is
+	 * sent to the primary.
+	 *
+	 * @param primary
+	 *            the connection pool to the primary database.
+	 * @throws NullPointerException
+	 *             if {@code primary} is {@code null}.
+	 */
+	public DBRouter(@NotNull ConnectionPool primary) {
+		this(primary, Collections.emptyList(), 0L);
+	}
+
+	/**
+	 * Returns the key a Minecraft ID is pinned by.
+	 *
+	 * @param minecraftId
+	 *            the Minecraft ID.
+	 * @return the key for {@code minecraftId}.
+	 * @throws NullPointerException
+	 *             if {@code minecraftId} is {@code null}.
+	 */
+	public static long keyOf(@NotNull UUID minecraftId) {
+		Objects.requireNonNull(minecraftId, "minecraftId");
+		return minecraftId.getMostSignificantBits()
+				^ minecraftId.getLeastSignificantBits();
+	}
+
+	private int slotFor(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32) & slotMask;
+	}
+
+	/**
+	 * Returns the connection pool to the primary database.
+	 *
+	 * @return the connection pool to the primary database.
+	 */
+	@NotNull
+	public ConnectionPool getPrimary() {
+		return this.primary;
+	}
+
+	/**
+	 * Returns the connection pools to the read replicas.
+	 *
+	 * @return the connection pools to the read replicas, empty if there are
+	 *         none.
+	 */
+	@NotNull
+	public List<ConnectionPool> getReplicas() {
+		return this.replicas;
+	}
+
+	/**
+	 * Returns the circuit breaker for the primary.
+	 *
+	 * @return the circuit breaker, {@code null} if there is none.
+	 */
+	@Nullable
+	public CircuitBreaker getBreaker() {
+		return this.breaker;
+	}
+
+	/**
+	 * Sets the circuit breaker for the primary.
+	 *
+	 * @param breaker
+	 *            the circuit breaker, may be {@code null}.
+	 */
+	public void setBreaker(@Nullable CircuitBreaker breaker) {
+		this.breaker = breaker;
+	}
+
+	/**
+	 * Returns the SQL dialect of the database.
+	 *
+	 * @return the SQL dialect of the database.
+	 */
+	@NotNull
+	public SQLDialect getDialect() {
+		return primary.getDialect();
+	}
+
+	/**
+	 * Returns how long a key stays pinned to the primary after it is
+	 * written.
+	 *
+	 * @return the lag window, in milliseconds.
+	 */
+	public long getLagWindow() {
+		return this.lagWindow;
+	}
+
+	/**
+	 * Pins a key to the primary for the lag window. Reads for the key will go
+	 * to the primary until then.
+	 * <p>
+	 * This is done automatically by {@link #write(long, DBWrite)}. It only
+	 * needs to be called for writes that are made to the primary some other
+	 * way, or that touch more than one key.
+	 *
+	 * @param key
+	 *            the key, usually a Discord ID.
+	 */
+	public void pin(long key) {
+		if (replicas.isEmpty() || lagWindow <= 0) {
+			return;
+		}
+		int slot = this.slotFor(key);
+		long until = System.currentTimeMillis() + lagWindow;
+		long current;
+		do {
+			current = pinnedUntil.get(slot);
+			if (current >= until) {
+				return;
+			}
+		} while (!pinnedUntil.compareAndSet(slot, current, until));
+	}
+
+	/**
+	 * Returns if a key is pinned to the primary.
+	 *
+	 * @param key
+	 *            the key, usually a Discord ID.
+	 * @return {@code true} if reads for {@code key} must go to the primary,
+	 *         {@code false} otherwise.
+	 */
+	public boolean isPinned(long key) {
+		long until = pinnedUntil.get(this.slotFor(key));
+		return until != 0L && System.currentTimeMillis() < until;
+	}
+
+	/**
+	 * Runs a write on the primary, then pins its key.
+	 *
+	 * @param <T>
+	 *            the result type.
+	 * @param key
+	 *            the key being written, usually a Discord ID.
+	 * @param write
+	 *            the write to run.
+	 * @return the result of the write.
+	 * @throws NullPointerException
+	 *             if {@code write} is {@code null}.
+	 * @throws DBUnavailableException
+	 *             if the circuit breaker is open.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 * @see ConnectionPool#write(DBWrite)
+	 */
+	public <T> T write(long key, @NotNull DBWrite<T> write)
+			throws SQLException {
+		T result = this.write(write);
+		this.pin(key);
+		return result;
+	}
+
+	/**
+	 * Runs a write on the primary, without pinning any keys. The keys it
+	 * touches should be pinned with {@link #pin(long)} afterwards.
+	 *
+	 * @param <T>
+	 *            the result type.
+	 * @param write
+	 *            the write to run.
+	 * @return the result of the write.
+	 * @throws NullPointerException
+	 *             if {@code write} is {@code null}.
+	 * @throws DBUnavailableException
+	 *             if the circuit breaker is open.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 * @see ConnectionPool#write(DBWrite)
+	 */
+	public <T> T write(@NotNull DBWrite<T> write) throws SQLException {
+		Objects.requireNonNull(write, "write");
+		CircuitBreaker breaker = this.breaker;
+		return breaker != null ? breaker.call(() -> primary.write(write))
+				: primary.write(write);
+	}
+
+	/**
+	 * Borrows a connection to the primary.
+	 * <p>
+	 * This is for reads which must see every write made so far, no matter
+	 * which key it was for.
+	 *
+	 * @return the borrowed connection, which must be closed.
+	 * @throws DBUnavailableException
+	 *             if the circuit breaker is open.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	@NotNull
+	public Connection getPrimaryConnection() throws SQLException {
+		primaryReads.increment();
+		CircuitBreaker breaker = this.breaker;
+		return breaker != null ? breaker.call(primary::getConnection)
+				: primary.getConnection();
+	}
+
+	/**
+	 * Borrows a connection to read data for a key.
+	 * <p>
+	 * If the key is pinned or there are no replicas, the connection is to the
+	 * primary. Otherwise, it is to the next replica in turn. If that replica
+	 * cannot be reached, the primary is used instead.
+	 *
+	 * @param key
+	 *            the key being read, usually a Discord ID.
+	 * @return the borrowed connection, which must be closed.
+	 * @throws DBUnavailableException
+	 *             if the primary is needed, and its circuit breaker is open.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	@NotNull
+	public Connection getReadConnection(long key) throws SQLException {
+		if (replicas.isEmpty()) {
+			return this.getPrimaryConnection();
+		} else if (this.isPinned(key)) {
+			pinnedReads.increment();
+			return this.getPrimaryConnection();
+		}
+
+		int index = nextReplica.getAndIncrement() & Integer.MAX_VALUE;
+		ConnectionPool replica = replicas.get(index % replicas.size());
+		try {
+			Connection conn = replica.getConnection();
+			replicaReads.increment();
+			return conn;
+		} catch (SQLException e) {
+			replicaFailures.increment();
+			return this.getPrimaryConnection();
+		}
+	}
+
+	/**
+	 * Returns how many reads went to the primary.
+	 *
+	 * @return how many reads went to the primary.
+	 */
+	public long getPrimaryReads() {
+		return primaryReads.sum();
+	}
+
+	/**
+	 * Returns how many reads went to a replica.
+	 *
+	 * @return how many reads went to a replica.
+	 */
+	public long getReplicaReads() {
+		return replicaReads.sum();
+	}
+
+	/**
+	 * Returns how many reads went to the primary because their key was
+	 * pinned.
+	 *
+	 * @return how many reads were pinned to the primary.
+	 */
+	public long getPinnedReads() {
+		return pinnedReads.sum();
+	}
+
+	/**
+	 * Returns how many times a replica could not be reached, and the primary
+	 * was read instead.
+	 *
+	 * @return how many times a replica could not be reached.
+	 */
+	public long getReplicaFailures() {
+		return replicaFailures.sum();
+	}
+
+}
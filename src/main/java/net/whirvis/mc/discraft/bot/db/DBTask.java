@@ -0,0 +1,24 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.SQLException;
+
+/**
+ * A database operation run by a {@link DBExecutor}.
+ *
+ * @param <T>
+ *            the result type.
+ * @see DBExecutor#supply(DBTask)
+ */
+@FunctionalInterface
+public interface DBTask<T> {
+
+	/**
+	 * Runs the operation.
+	 *
+	 * @return the result of the operation.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public T run() throws SQLException;
+
+}
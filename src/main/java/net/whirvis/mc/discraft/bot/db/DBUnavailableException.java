@@ -0,0 +1,25 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.SQLTransientException;
+
+/**
+ * Thrown when database work is refused because the database is believed to
+ * be unavailable, rather than being attempted and waited on.
+ *
+ * @see CircuitBreaker
+ */
+public class DBUnavailableException extends SQLTransientException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a new {@code DBUnavailableException}.
+	 *
+	 * @param name
+	 *            the name of the unavailable database.
+	 */
+	public DBUnavailableException(String name) {
+		super("database " + name + " is unavailable");
+	}
+
+}
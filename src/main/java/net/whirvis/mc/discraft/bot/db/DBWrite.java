@@ -0,0 +1,33 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A write to the database, run by a {@link ConnectionPool}.
+ * <p>
+ * The write is given a connection which is already inside of a transaction.
+ * The pool commits the transaction once the write returns, or rolls it back
+ * if the write fails. As such, a write must never commit, roll back, or
+ * change the auto-commit mode of the connection itself. Depending on the
+ * pool, other writes may be committed in the same transaction.
+ *
+ * @param <T>
+ *            the result type.
+ * @see ConnectionPool#write(DBWrite)
+ */
+@FunctionalInterface
+public interface DBWrite<T> {
+
+	/**
+	 * Runs the write.
+	 *
+	 * @param conn
+	 *            the database connection, which must not be closed.
+	 * @return the result of the write.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public T run(Connection conn) throws SQLException;
+
+}
@@ -0,0 +1,99 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.SQLException;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The database schema of the Discraft bot.
+ * <p>
+ * Every table the bot uses is created here, along with the indexes its
+ * lookups depend on. To change the schema, add a new migration to the end of
+ * {@link #createMigrator()}. Never change a migration which has already been
+ * released, as it will not be run again on existing databases.
+ *
+ * @see SchemaMigrator
+ */
+public class DiscraftSchema {
+
+	/**
+	 * Creates a migrator for the Discraft schema.
+	 *
+	 * @return the migrator.
+	 */
+	@NotNull
+	public static SchemaMigrator createMigrator() {
+		SchemaMigrator migrator = new SchemaMigrator();
+
+		/*
+		 * Older deployments created these tables by hand, so they may already
+		 * exist. The Discord ID is the primary key of each table, as every
+		 * lookup the bot does starts from one.
+		 */
+		migrator.add(1, "create user tables",
+				"CREATE TABLE IF NOT EXISTS user ("
+						+ "discord_id BIGINT NOT NULL PRIMARY KEY, "
+						+ "created TIMESTAMP NOT NULL)",
+				"CREATE TABLE IF NOT EXISTS user_settings ("
+						+ "discord_id BIGINT NOT NULL PRIMARY KEY, "
+						+ "lang VARCHAR(16) DEFAULT 'en_us')",
+				"CREATE TABLE IF NOT EXISTS minecraft_links ("
+						+ "discord_id BIGINT NOT NULL PRIMARY KEY, "
+						+ "uuid VARCHAR(36) NOT NULL)");
+
+		/*
+		 * Links are also looked up from the Minecraft side. A Minecraft
+		 * account can only be linked to one Discord account, so the index is
+		 * unique as well. The index is only created if it does not already
+		 * exist, as MySQL commits it even if the migration later fails.
+		 */
+		migrator.add(2, "index minecraft links by uuid",
+				SchemaMigrator.createIndex(true, "minecraft_links_uuid",
+						"minecraft_links", "uuid"));
+
+		/*
+		 * Guilds may use their own command prefix. A guild without a row, or
+		 * with no prefix, uses the default prefix.
+		 */
+		migrator.add(3, "create guild settings table",
+				"CREATE TABLE IF NOT EXISTS guild_settings ("
+						+ "guild_id BIGINT NOT NULL PRIMARY KEY, "
+						+ "prefix VARCHAR(32))");
+
+		/*
+		 * The tables created by hand for older deployments may not have a
+		 * key, as migration 1 leaves them as they are. Every upsert depends on
+		 * the Discord ID being unique, so it is made unique here. Tables which
+		 * already have it as their primary key are left alone. Duplicate rows
+		 * must be removed by hand before this migration can succeed.
+		 */
+		migrator.add(4, "key user tables by discord id",
+				SchemaMigrator.createIndex(true, "user_discord_id", "user",
+						"discord_id"),
+				SchemaMigrator.createIndex(true, "user_settings_discord_id",
+						"user_settings", "discord_id"),
+				SchemaMigrator.createIndex(true, "minecraft_links_discord_id",
+						"minecraft_links", "discord_id"));
+
+		return migrator;
+	}
+
+	/**
+	 * Brings the schema of a database up to date.
+	 *
+	 * @param pool
+	 *            the connection pool to the database.
+	 * @return how many migrations were applied.
+	 * @throws NullPointerException
+	 *             if {@code pool} is {@code null}.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public static int migrate(@NotNull ConnectionPool pool)
+			throws SQLException {
+		Objects.requireNonNull(pool, "pool");
+		return createMigrator().migrate(pool);
+	}
+
+}
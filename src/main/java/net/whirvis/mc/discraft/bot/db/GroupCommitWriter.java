@@ -0,0 +1,312 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs every write to a database on a single thread, committing writes which
+ * queue up together in one transaction.
+ * <p>
+ * This is meant for databases which only allow one writer at a time, such as
+ * SQLite. Rather than each thread fighting over the write lock, writes wait in
+ * a queue. Whenever the writer is free, it takes every write that is waiting
+ * (up to the maximum group size) and commits them all at once. Under load,
+ * this turns many small commits into a few large ones, each of which only
+ * needs to be synced to disk once.
+ * <p>
+ * Each write runs inside of its own savepoint. A failed write is rolled back
+ * on its own, without failing the others in its group.
+ * <p>
+ * Pools for the same database share one writer, as they would otherwise
+ * fight over the same write lock. Each group is committed on a connection
+ * borrowed from the pool of its first write.
+ *
+ * @see ConnectionPool#write(DBWrite)
+ */
+class GroupCommitWriter {
+
+	private static final long POLL_MS = 1000L;
+
+	/*
+	 * Keyed by the database each writer commits to. Access to this map must
+	 * be synchronized on it.
+	 */
+	private static final Map<String, GroupCommitWriter> SHARED =
+			new HashMap<>();
+
+	private static class Pending<T> {
+
+		private final ConnectionPool pool;
+		private final DBWrite<T> write;
+		private final CompletableFuture<T> future;
+		private T result;
+		private Throwable failure;
+
+		private Pending(ConnectionPool pool, DBWrite<T> write) {
+			this.pool = pool;
+			this.write = write;
+			this.future = new CompletableFuture<>();
+		}
+
+		private void run(Connection conn) throws SQLException {
+			Savepoint savepoint = conn.setSavepoint();
+			try {
+				this.result = write.run(conn);
+				conn.releaseSavepoint(savepoint);
+			} catch (SQLException | RuntimeException e) {
+				conn.rollback(savepoint);
+				this.failure = e;
+			}
+		}
+
+		private void complete() {
+			if (failure != null) {
+				future.completeExceptionally(failure);
+			} else {
+				future.complete(result);
+			}
+		}
+
+	}
+
+	private final String database;
+	private final String name;
+	private final int maxGroup;
+	private final BlockingQueue<Pending<?>> queue;
+	private final Thread thread;
+	private final LongAdder groups;
+	private final LongAdder writes;
+	private int pools;
+	private boolean closed;
+
+	private GroupCommitWriter(String database, String name, int maxGroup) {
+		this.database = database;
+		this.name = name;
+		this.maxGroup = maxGroup;
+		this.queue = new LinkedBlockingQueue<>();
+		this.groups = new LongAdder();
+		this.writes = new LongAdder();
+		this.pools = 1;
+
+		this.thread = new Thread(this::run, name + "-db-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the writer for a database, creating it if need be.
+	 * <p>
+	 * Every pool which opens a writer must close it with
+	 * {@link #close(ConnectionPool, long)} once it is done with it. The
+	 * writer thread only stops once every pool sharing it has done so.
+	 *
+	 * @param database
+	 *            the database, as returned by
+	 *            {@link SQLDialect#databaseOf(String)}. If {@code null}, the
+	 *            writer is not shared.
+	 * @param pool
+	 *            the pool opening the writer.
+	 * @param maxGroup
+	 *            the maximum number of writes in one commit. This is ignored
+	 *            if the writer already exists.
+	 * @return the writer.
+	 */
+	static GroupCommitWriter open(@Nullable String database,
+			ConnectionPool pool, int maxGroup) {
+		if (database == null) {
+			return new GroupCommitWriter(null, pool.getName(), maxGroup);
+		}
+		synchronized (SHARED) {
+			GroupCommitWriter writer = SHARED.get(database);
+			if (writer != null) {
+				synchronized (writer) {
+					writer.pools++;
+				}
+				return writer;
+			}
+			writer = new GroupCommitWriter(database, pool.getName(), maxGroup);
+			SHARED.put(database, writer);
+			return writer;
+		}
+	}
+
+	/*
+	 * Submitting and closing are synchronized with each other. Once the
+	 * writer thread sees the writer is closed, every write submitted before
+	 * then is guaranteed to already be in the queue.
+	 */
+	synchronized <T> CompletableFuture<T> submit(ConnectionPool pool,
+			DBWrite<T> write) {
+		Pending<T> pending = new Pending<>(pool, write);
+		if (closed) {
+			pending.future.completeExceptionally(
+					new SQLException("writer " + name + " is closed"));
+		} else {
+			queue.add(pending);
+		}
+		return pending.future;
+	}
+
+	private synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	private void run() {
+		List<Pending<?>> group = new ArrayList<>(maxGroup);
+		while (true) {
+			Pending<?> first;
+			try {
+				first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				first = null;
+			}
+			if (first == null) {
+				if (this.isClosed() && queue.isEmpty()) {
+					return;
+				}
+				continue;
+			}
+
+			group.add(first);
+			queue.drainTo(group, maxGroup - 1);
+			this.commit(group);
+			group.clear();
+		}
+	}
+
+	private void commit(List<Pending<?>> group) {
+		ConnectionPool pool = group.get(0).pool;
+		try (Connection conn = pool.getConnection()) {
+			boolean autoCommit = conn.getAutoCommit();
+			try {
+				conn.setAutoCommit(false);
+				for (Pending<?> pending : group) {
+					pending.run(conn);
+				}
+				conn.commit();
+			} catch (SQLException | RuntimeException e) {
+				try {
+					conn.rollback();
+				} catch (SQLException rollback) {
+					e.addSuppressed(rollback);
+				}
+				throw e;
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException | RuntimeException e) {
+			/*
+			 * Nothing in the group was committed, so writes which succeeded
+			 * on their own must fail as well.
+			 */
+			for (Pending<?> pending : group) {
+				pending.failure = e;
+			}
+		}
+
+		groups.increment();
+		writes.add(group.size());
+		for (Pending<?> pending : group) {
+			pending.complete();
+		}
+	}
+
+	/**
+	 * Returns how many groups of writes have been committed.
+	 *
+	 * @return how many groups of writes have been committed.
+	 */
+	long getGroups() {
+		return groups.sum();
+	}
+
+	/**
+	 * Returns how many writes have been run.
+	 *
+	 * @return how many writes have been run.
+	 */
+	long getWrites() {
+		return writes.sum();
+	}
+
+	/**
+	 * Returns how many writes are waiting to be run.
+	 *
+	 * @return how many writes are waiting to be run.
+	 */
+	int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * Closes the writer for a pool, waiting for the writes already queued to
+	 * be committed.
+	 * <p>
+	 * If other pools still share the writer, it keeps running for them. In
+	 * that case, this only waits for the writes queued before it was called.
+	 * Otherwise, the writer stops accepting writes. When called from the
+	 * writer thread itself (for example, by a connection being returned to a
+	 * pool that was closed meanwhile), this does not wait, as the writer
+	 * would be waiting on itself.
+	 *
+	 * @param pool
+	 *            the pool closing the writer.
+	 * @param timeout
+	 *            how long to wait, in milliseconds.
+	 * @return {@code true} if every queued write was committed in time,
+	 *         {@code false} otherwise.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	boolean close(ConnectionPool pool, long timeout)
+			throws InterruptedException {
+		boolean shared;
+		synchronized (SHARED) {
+			synchronized (this) {
+				shared = --this.pools > 0;
+				if (!shared) {
+					this.closed = true;
+					if (database != null) {
+						SHARED.remove(database);
+					}
+				}
+			}
+		}
+
+		if (Thread.currentThread() == thread) {
+			return true;
+		} else if (!shared) {
+			thread.join(timeout);
+			return !thread.isAlive();
+		}
+
+		/*
+		 * The queue is first in, first out. Once a write submitted now has
+		 * run, so has every write the pool submitted before it.
+		 */
+		try {
+			this.submit(pool, conn -> null).get(timeout,
+					TimeUnit.MILLISECONDS);
+			return true;
+		} catch (ExecutionException e) {
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		}
+	}
+
+}
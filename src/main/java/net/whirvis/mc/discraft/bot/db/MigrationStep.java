@@ -0,0 +1,31 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A step of a schema migration, run by a {@link SchemaMigrator}.
+ * <p>
+ * Some databases commit schema changes as soon as they are made, regardless
+ * of the transaction they were made in. If a later step of the migration
+ * fails, the earlier steps are not undone, and will be run again when the
+ * migration is retried. As such, a step must check whether its change has
+ * already been made before making it.
+ *
+ * @see SchemaMigrator#add(int, String, MigrationStep...)
+ * @see SchemaMigrator#createIndex(boolean, String, String, String...)
+ */
+@FunctionalInterface
+public interface MigrationStep {
+
+	/**
+	 * Runs the step.
+	 *
+	 * @param conn
+	 *            the database connection, which must not be closed.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public void run(Connection conn) throws SQLException;
+
+}
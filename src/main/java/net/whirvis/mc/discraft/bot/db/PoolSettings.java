@@ -0,0 +1,273 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The settings for a {@link ConnectionPool}.
+ * <p>
+ * Each setting starts out with a sensible default, and can be changed via its
+ * respective setter before the pool is created.
+ */
+public class PoolSettings {
+
+	private int minSize;
+	private int maxSize;
+	private long acquireTimeout;
+	private long idleTimeout;
+	private int validationTimeout;
+	private int statementCacheSize;
+	private long leakThreshold;
+	private int groupCommit;
+
+	/**
+	 * Constructs a new {@code PoolSettings} with the default settings.
+	 */
+	public PoolSettings() {
+		this.minSize = 1;
+		this.maxSize = 10;
+		this.acquireTimeout = 5000L;
+		this.idleTimeout = 600000L;
+		this.validationTimeout = 2;
+		this.statementCacheSize = 64;
+		this.leakThreshold = 0L;
+		this.groupCommit = 0;
+	}
+
+	/**
+	 * Sets the number of connections the pool keeps open, even when they are
+	 * not being used.
+	 *
+	 * @param minSize
+	 *            the minimum pool size.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code minSize} is negative.
+	 */
+	@NotNull
+	public PoolSettings minSize(int minSize) {
+		if (minSize < 0) {
+			throw new IllegalArgumentException("minSize cannot be negative");
+		}
+		this.minSize = minSize;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of connections the pool will have open at one
+	 * time.
+	 *
+	 * @param maxSize
+	 *            the maximum pool size.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxSize} is not positive.
+	 */
+	@NotNull
+	public PoolSettings maxSize(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * Sets how long to wait for a connection when every connection in the pool
+	 * is in use.
+	 *
+	 * @param acquireTimeout
+	 *            the acquire timeout, in milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code acquireTimeout} is negative.
+	 */
+	@NotNull
+	public PoolSettings acquireTimeout(long acquireTimeout) {
+		if (acquireTimeout < 0) {
+			throw new IllegalArgumentException(
+					"acquireTimeout cannot be negative");
+		}
+		this.acquireTimeout = acquireTimeout;
+		return this;
+	}
+
+	/**
+	 * Sets how long a connection may sit unused before it is closed. Idle
+	 * connections are never closed if it would shrink the pool below its
+	 * minimum size.
+	 *
+	 * @param idleTimeout
+	 *            the idle timeout, in milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code idleTimeout} is negative.
+	 */
+	@NotNull
+	public PoolSettings idleTimeout(long idleTimeout) {
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException(
+					"idleTimeout cannot be negative");
+		}
+		this.idleTimeout = idleTimeout;
+		return this;
+	}
+
+	/**
+	 * Sets how long to wait for the database when checking if a connection is
+	 * still valid.
+	 *
+	 * @param validationTimeout
+	 *            the validation timeout, in seconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code validationTimeout} is negative.
+	 */
+	@NotNull
+	public PoolSettings validationTimeout(int validationTimeout) {
+		if (validationTimeout < 0) {
+			throw new IllegalArgumentException(
+					"validationTimeout cannot be negative");
+		}
+		this.validationTimeout = validationTimeout;
+		return this;
+	}
+
+	/**
+	 * Sets how many prepared statements each connection keeps cached.
+	 *
+	 * @param statementCacheSize
+	 *            the statement cache size, zero to disable caching.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code statementCacheSize} is negative.
+	 */
+	@NotNull
+	public PoolSettings statementCacheSize(int statementCacheSize) {
+		if (statementCacheSize < 0) {
+			throw new IllegalArgumentException(
+					"statementCacheSize cannot be negative");
+		}
+		this.statementCacheSize = statementCacheSize;
+		return this;
+	}
+
+	/**
+	 * Sets how long a connection may be borrowed before it is reported as
+	 * possibly leaked.
+	 *
+	 * @param leakThreshold
+	 *            the leak threshold, in milliseconds. Zero disables leak
+	 *            detection.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code leakThreshold} is negative.
+	 */
+	@NotNull
+	public PoolSettings leakThreshold(long leakThreshold) {
+		if (leakThreshold < 0) {
+			throw new IllegalArgumentException(
+					"leakThreshold cannot be negative");
+		}
+		this.leakThreshold = leakThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets how many writes may be committed together in one transaction.
+	 * <p>
+	 * When enabled, every write made through {@link ConnectionPool#write(DBWrite)}
+	 * is run by a single writer thread, which commits the writes that queue up
+	 * while it is busy all at once. This is meant for databases which only
+	 * allow one writer at a time, such as SQLite.
+	 *
+	 * @param groupCommit
+	 *            the maximum number of writes in one commit, zero to commit
+	 *            each write on the calling thread instead.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code groupCommit} is negative.
+	 */
+	@NotNull
+	public PoolSettings groupCommit(int groupCommit) {
+		if (groupCommit < 0) {
+			throw new IllegalArgumentException(
+					"groupCommit cannot be negative");
+		}
+		this.groupCommit = groupCommit;
+		return this;
+	}
+
+	/**
+	 * Returns the minimum pool size.
+	 *
+	 * @return the minimum pool size.
+	 */
+	public int getMinSize() {
+		return this.minSize;
+	}
+
+	/**
+	 * Returns the maximum pool size.
+	 *
+	 * @return the maximum pool size.
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Returns the acquire timeout.
+	 *
+	 * @return the acquire timeout, in milliseconds.
+	 */
+	public long getAcquireTimeout() {
+		return this.acquireTimeout;
+	}
+
+	/**
+	 * Returns the idle timeout.
+	 *
+	 * @return the idle timeout, in milliseconds.
+	 */
+	public long getIdleTimeout() {
+		return this.idleTimeout;
+	}
+
+	/**
+	 * Returns the validation timeout.
+	 *
+	 * @return the validation timeout, in seconds.
+	 */
+	public int getValidationTimeout() {
+		return this.validationTimeout;
+	}
+
+	/**
+	 * Returns how many prepared statements each connection keeps cached.
+	 *
+	 * @return the statement cache size.
+	 */
+	public int getStatementCacheSize() {
+		return this.statementCacheSize;
+	}
+
+	/**
+	 * Returns the leak threshold.
+	 *
+	 * @return the leak threshold, in milliseconds.
+	 */
+	public long getLeakThreshold() {
+		return this.leakThreshold;
+	}
+
+	/**
+	 * Returns how many writes may be committed together.
+	 *
+	 * @return the maximum number of writes in one commit, zero if group
+	 *         commit is disabled.
+	 */
+	public int getGroupCommit() {
+		return this.groupCommit;
+	}
+
+}
@@ -0,0 +1,379 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The flavors of SQL spoken by the databases Discraft supports.
+ * <p>
+ * Most of the SQL used by the bot is the same for every database. The
+ * exception is upserts, which each database spells differently. Rather than
+ * checking if a row exists and then inserting it, which takes two round trips
+ * and can race with another thread doing the same, the bot asks its dialect
+ * for the native upsert syntax.
+ *
+ * @see #forUrl(String)
+ */
+public enum SQLDialect {
+
+	/**
+	 * The SQLite dialect, for {@code jdbc:sqlite:} URLs.
+	 * <p>
+	 * Upserts use {@code ON CONFLICT}, which requires SQLite 3.24 or later.
+	 */
+	SQLITE("jdbc:sqlite:") {
+		@Override
+		protected void appendIgnore(StringBuilder sql, String key) {
+			sql.append(" ON CONFLICT (").append(key).append(") DO NOTHING");
+		}
+
+		@Override
+		protected void appendUpdate(StringBuilder sql, String key,
+				String[] columns) {
+			sql.append(" ON CONFLICT (").append(key).append(") DO UPDATE SET ");
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					sql.append(", ");
+				}
+				sql.append(columns[i]).append(" = excluded.")
+						.append(columns[i]);
+			}
+		}
+
+		@Override
+		public boolean isConstraintViolation(@NotNull SQLException error) {
+			/*
+			 * The SQLite driver does not set an SQL state, only the result
+			 * code. Extended result codes keep the primary code in their
+			 * lowest byte.
+			 */
+			return super.isConstraintViolation(error)
+					|| (error.getErrorCode() & 0xFF) == SQLITE_CONSTRAINT;
+		}
+
+		@Override
+		public boolean isDataError(@NotNull SQLException error) {
+			if (super.isDataError(error)) {
+				return true;
+			}
+			int code = error.getErrorCode() & 0xFF;
+			return code == SQLITE_TOOBIG || code == SQLITE_MISMATCH;
+		}
+
+		@Override
+		@Nullable
+		public String databaseOf(@NotNull String url) {
+			String path = super.databaseOf(url);
+			if (path.startsWith("file:")) {
+				path = path.substring("file:".length());
+			}
+
+			/*
+			 * Each connection to an in-memory database gets a database of
+			 * its own, so there is nothing to share.
+			 */
+			if (path.isEmpty() || path.startsWith(":memory:")) {
+				return null;
+			}
+			File file = new File(path);
+			try {
+				return file.getCanonicalPath();
+			} catch (IOException e) {
+				return file.getAbsolutePath();
+			}
+		}
+	},
+
+	/**
+	 * The MySQL dialect, for {@code jdbc:mysql:} URLs.
+	 */
+	MYSQL("jdbc:mysql:") {
+		@Override
+		protected void appendIgnore(StringBuilder sql, String key) {
+			/*
+			 * INSERT IGNORE would also hide unrelated errors, such as bad
+			 * values. Updating the key to itself only skips the conflict.
+			 */
+			sql.append(" ON DUPLICATE KEY UPDATE ").append(key).append(" = ")
+					.append(key);
+		}
+
+		@Override
+		protected void appendUpdate(StringBuilder sql, String key,
+				String[] columns) {
+			sql.append(" ON DUPLICATE KEY UPDATE ");
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					sql.append(", ");
+				}
+				sql.append(columns[i]).append(" = VALUES(").append(columns[i])
+						.append(")");
+			}
+		}
+	};
+
+	private static final int SQLITE_TOOBIG = 18;
+	private static final int SQLITE_CONSTRAINT = 19;
+	private static final int SQLITE_MISMATCH = 20;
+
+	private final String urlPrefix;
+
+	private SQLDialect(String urlPrefix) {
+		this.urlPrefix = urlPrefix;
+	}
+
+	/**
+	 * Returns the dialect for a JDBC URL.
+	 *
+	 * @param url
+	 *            the JDBC URL.
+	 * @return the dialect for {@code url}.
+	 * @throws NullPointerException
+	 *             if {@code url} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code url} is not for a supported database.
+	 */
+	@NotNull
+	public static SQLDialect forUrl(@NotNull String url) {
+		Objects.requireNonNull(url, "url");
+		for (SQLDialect dialect : values()) {
+			if (url.regionMatches(true, 0, dialect.urlPrefix, 0,
+					dialect.urlPrefix.length())) {
+				return dialect;
+			}
+		}
+		throw new IllegalArgumentException("unsupported database: " + url);
+	}
+
+	/**
+	 * Returns if an error was caused by a constraint violation, such as a
+	 * duplicate key.
+	 * <p>
+	 * Not every driver throws an
+	 * {@link SQLIntegrityConstraintViolationException} for these, so the SQL
+	 * state and vendor error code are checked as well.
+	 *
+	 * @param error
+	 *            the error to check.
+	 * @return {@code true} if {@code error} was caused by a constraint
+	 *         violation, {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if {@code error} is {@code null}.
+	 */
+	public boolean isConstraintViolation(@NotNull SQLException error) {
+		Objects.requireNonNull(error, "error");
+		String state = error.getSQLState();
+		return error instanceof SQLIntegrityConstraintViolationException
+				|| (state != null && state.startsWith("23"));
+	}
+
+	/**
+	 * Returns if an error was caused by the values being written, rather than
+	 * by the statement or the connection. This includes constraint violations,
+	 * values which are too large, and values of the wrong type.
+	 * <p>
+	 * Writing the same values again will fail the same way, no matter how many
+	 * times it is retried.
+	 *
+	 * @param error
+	 *            the error to check.
+	 * @return {@code true} if {@code error} was caused by the values being
+	 *         written, {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if {@code error} is {@code null}.
+	 * @see #isConstraintViolation(SQLException)
+	 */
+	public boolean isDataError(@NotNull SQLException error) {
+		Objects.requireNonNull(error, "error");
+		String state = error.getSQLState();
+		return this.isConstraintViolation(error)
+				|| error instanceof SQLDataException
+				|| (state != null && state.startsWith("22"));
+	}
+
+	/**
+	 * Returns the database a JDBC URL points to.
+	 * <p>
+	 * Two URLs which point to the same database return the same value, even
+	 * if they are written differently. For SQLite, this is the canonical path
+	 * of the database file. For other databases, this is the URL without its
+	 * prefix or parameters.
+	 *
+	 * @param url
+	 *            the JDBC URL, which must be for this dialect.
+	 * @return the database {@code url} points to, {@code null} if it is not
+	 *         a database that can be shared (such as an in-memory one).
+	 * @throws NullPointerException
+	 *             if {@code url} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code url} is not for this dialect.
+	 */
+	@Nullable
+	public String databaseOf(@NotNull String url) {
+		Objects.requireNonNull(url, "url");
+		if (forUrl(url) != this) {
+			throw new IllegalArgumentException("not a " + this.name()
+					+ " URL: " + url);
+		}
+		String database = url.substring(urlPrefix.length());
+		int params = database.indexOf('?');
+		return params >= 0 ? database.substring(0, params) : database;
+	}
+
+	protected abstract void appendIgnore(StringBuilder sql, String key);
+
+	protected abstract void appendUpdate(StringBuilder sql, String key,
+			String[] columns);
+
+	private static void appendInsert(StringBuilder sql, String table,
+			String key, String[] columns, int rows) {
+		if (rows <= 0) {
+			throw new IllegalArgumentException("rows must be positive");
+		}
+
+		sql.append("INSERT INTO ").append(table).append(" (").append(key);
+		for (String column : columns) {
+			sql.append(", ").append(column);
+		}
+		sql.append(") VALUES ");
+
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append("(?");
+			for (int j = 0; j < columns.length; j++) {
+				sql.append(", ?");
+			}
+			sql.append(")");
+		}
+	}
+
+	/**
+	 * Returns the SQL to insert rows, skipping any row whose key already
+	 * exists.
+	 * <p>
+	 * The parameters are bound row by row, with the key first and then the
+	 * columns in the order given. Any column not given takes its default
+	 * value. Inserting many rows with one statement saves a round trip for
+	 * each row after the first.
+	 *
+	 * @param table
+	 *            the table name.
+	 * @param rows
+	 *            how many rows to insert.
+	 * @param key
+	 *            the key column.
+	 * @param columns
+	 *            the other columns to insert.
+	 * @return the SQL text.
+	 * @throws NullPointerException
+	 *             if {@code table}, {@code key} or {@code columns} are
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code rows} is not positive.
+	 */
+	@NotNull
+	public String insertIgnore(@NotNull String table, int rows,
+			@NotNull String key, @NotNull String... columns) {
+		Objects.requireNonNull(table, "table");
+		Objects.requireNonNull(key, "key");
+		Objects.requireNonNull(columns, "columns");
+
+		StringBuilder sql = new StringBuilder();
+		appendInsert(sql, table, key, columns, rows);
+		this.appendIgnore(sql, key);
+		return sql.toString();
+	}
+
+	/**
+	 * Returns the SQL to insert a row, skipping it if its key already exists.
+	 *
+	 * @param table
+	 *            the table name.
+	 * @param key
+	 *            the key column.
+	 * @param columns
+	 *            the other columns to insert.
+	 * @return the SQL text.
+	 * @throws NullPointerException
+	 *             if {@code table}, {@code key} or {@code columns} are
+	 *             {@code null}.
+	 * @see #insertIgnore(String, int, String, String...)
+	 */
+	@NotNull
+	public String insertIgnore(@NotNull String table, @NotNull String key,
+			@NotNull String... columns) {
+		return this.insertIgnore(table, 1, key, columns);
+	}
+
+	/**
+	 * Returns the SQL to insert rows, updating the given columns of any row
+	 * whose key already exists instead.
+	 * <p>
+	 * The parameters are bound row by row, with the key first and then the
+	 * columns in the order given.
+	 *
+	 * @param table
+	 *            the table name.
+	 * @param rows
+	 *            how many rows to upsert.
+	 * @param key
+	 *            the key column.
+	 * @param columns
+	 *            the columns to insert or update.
+	 * @return the SQL text.
+	 * @throws NullPointerException
+	 *             if {@code table}, {@code key} or {@code columns} are
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code rows} is not positive, or no columns are given.
+	 */
+	@NotNull
+	public String upsert(@NotNull String table, int rows, @NotNull String key,
+			@NotNull String... columns) {
+		Objects.requireNonNull(table, "table");
+		Objects.requireNonNull(key, "key");
+		Objects.requireNonNull(columns, "columns");
+		if (columns.length <= 0) {
+			throw new IllegalArgumentException("no columns to update");
+		}
+
+		StringBuilder sql = new StringBuilder();
+		appendInsert(sql, table, key, columns, rows);
+		this.appendUpdate(sql, key, columns);
+		return sql.toString();
+	}
+
+	/**
+	 * Returns the SQL to insert a row, updating the given columns if its key
+	 * already exists instead.
+	 *
+	 * @param table
+	 *            the table name.
+	 * @param key
+	 *            the key column.
+	 * @param columns
+	 *            the columns to insert or update.
+	 * @return the SQL text.
+	 * @throws NullPointerException
+	 *             if {@code table}, {@code key} or {@code columns} are
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no columns are given.
+	 * @see #upsert(String, int, String, String...)
+	 */
+	@NotNull
+	public String upsert(@NotNull String table, @NotNull String key,
+			@NotNull String... columns) {
+		return this.upsert(table, 1, key, columns);
+	}
+
+}
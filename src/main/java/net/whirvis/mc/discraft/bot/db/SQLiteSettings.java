@@ -0,0 +1,215 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The settings applied to every connection to an SQLite database.
+ * <p>
+ * By default, SQLite locks the whole database for every write, and syncs
+ * every commit to disk before returning. Both of these are very slow when
+ * many small writes are made, which is exactly what the bot does. These
+ * settings turn on write-ahead logging, so reads no longer block on writes,
+ * and tune the pragmas which matter most for throughput.
+ * <p>
+ * Each setting starts out with a sensible default, and can be changed via its
+ * respective setter before the pool is created.
+ *
+ * @see #apply(Connection)
+ */
+public class SQLiteSettings {
+
+	private static final String[] SYNCHRONOUS_MODES =
+			{ "OFF", "NORMAL", "FULL", "EXTRA" };
+
+	private boolean wal;
+	private String synchronous;
+	private int cacheSize;
+	private long mmapSize;
+	private int busyTimeout;
+
+	/**
+	 * Constructs a new {@code SQLiteSettings} with the default settings.
+	 */
+	public SQLiteSettings() {
+		this.wal = true;
+		this.synchronous = "NORMAL";
+		this.cacheSize = -16000;
+		this.mmapSize = 268435456L;
+		this.busyTimeout = 5000;
+	}
+
+	/**
+	 * Sets if write-ahead logging is used. With it, readers do not block the
+	 * writer, and the writer does not block readers.
+	 *
+	 * @param wal
+	 *            {@code true} to use write-ahead logging, {@code false} to
+	 *            use a rollback journal.
+	 * @return these settings.
+	 */
+	@NotNull
+	public SQLiteSettings wal(boolean wal) {
+		this.wal = wal;
+		return this;
+	}
+
+	/**
+	 * Sets how often SQLite syncs to disk. In WAL mode, {@code NORMAL} is
+	 * still safe from corruption, but the last commits may be rolled back
+	 * after a power loss.
+	 *
+	 * @param synchronous
+	 *            the synchronous mode, one of {@code OFF}, {@code NORMAL},
+	 *            {@code FULL} or {@code EXTRA}.
+	 * @return these settings.
+	 * @throws NullPointerException
+	 *             if {@code synchronous} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code synchronous} is not a supported mode.
+	 */
+	@NotNull
+	public SQLiteSettings synchronous(@NotNull String synchronous) {
+		Objects.requireNonNull(synchronous, "synchronous");
+		for (String mode : SYNCHRONOUS_MODES) {
+			if (mode.equalsIgnoreCase(synchronous)) {
+				this.synchronous = mode;
+				return this;
+			}
+		}
+		throw new IllegalArgumentException("unsupported synchronous mode");
+	}
+
+	/**
+	 * Sets the size of the page cache of each connection.
+	 *
+	 * @param cacheSize
+	 *            the cache size. A positive size is in pages, while a
+	 *            negative size is in kibibytes.
+	 * @return these settings.
+	 */
+	@NotNull
+	public SQLiteSettings cacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+		return this;
+	}
+
+	/**
+	 * Sets how much of the database is read through memory-mapped I/O.
+	 *
+	 * @param mmapSize
+	 *            the memory map size, in bytes. Zero disables memory-mapped
+	 *            I/O.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code mmapSize} is negative.
+	 */
+	@NotNull
+	public SQLiteSettings mmapSize(long mmapSize) {
+		if (mmapSize < 0) {
+			throw new IllegalArgumentException("mmapSize cannot be negative");
+		}
+		this.mmapSize = mmapSize;
+		return this;
+	}
+
+	/**
+	 * Sets how long to wait for a lock on the database, before failing with
+	 * {@code SQLITE_BUSY}.
+	 *
+	 * @param busyTimeout
+	 *            the busy timeout, in milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code busyTimeout} is negative.
+	 */
+	@NotNull
+	public SQLiteSettings busyTimeout(int busyTimeout) {
+		if (busyTimeout < 0) {
+			throw new IllegalArgumentException(
+					"busyTimeout cannot be negative");
+		}
+		this.busyTimeout = busyTimeout;
+		return this;
+	}
+
+	/**
+	 * Returns if write-ahead logging is used.
+	 *
+	 * @return {@code true} if write-ahead logging is used, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isWal() {
+		return this.wal;
+	}
+
+	/**
+	 * Returns the synchronous mode.
+	 *
+	 * @return the synchronous mode.
+	 */
+	@NotNull
+	public String getSynchronous() {
+		return this.synchronous;
+	}
+
+	/**
+	 * Returns the size of the page cache.
+	 *
+	 * @return the cache size, in pages if positive or in kibibytes if
+	 *         negative.
+	 */
+	public int getCacheSize() {
+		return this.cacheSize;
+	}
+
+	/**
+	 * Returns the memory map size.
+	 *
+	 * @return the memory map size, in bytes.
+	 */
+	public long getMmapSize() {
+		return this.mmapSize;
+	}
+
+	/**
+	 * Returns the busy timeout.
+	 *
+	 * @return the busy timeout, in milliseconds.
+	 */
+	public int getBusyTimeout() {
+		return this.busyTimeout;
+	}
+
+	/**
+	 * Applies these settings to a newly opened connection.
+	 * <p>
+	 * The busy timeout is set first, so the rest of the pragmas wait for any
+	 * lock held by another connection rather than failing.
+	 *
+	 * @param conn
+	 *            the connection.
+	 * @throws NullPointerException
+	 *             if {@code conn} is {@code null}.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public void apply(@NotNull Connection conn) throws SQLException {
+		Objects.requireNonNull(conn, "conn");
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("PRAGMA busy_timeout = " + busyTimeout);
+			if (wal) {
+				/* this is persistent, but is cheap to set again */
+				stmt.execute("PRAGMA journal_mode = WAL");
+			}
+			stmt.execute("PRAGMA synchronous = " + synchronous);
+			stmt.execute("PRAGMA cache_size = " + cacheSize);
+			stmt.execute("PRAGMA mmap_size = " + mmapSize);
+		}
+	}
+
+}
@@ -0,0 +1,340 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Brings a database schema up to date.
+ * <p>
+ * The schema is described as a series of numbered migrations. The version of
+ * the schema is stored in the database itself, in the
+ * {@value #VERSION_TABLE} table. When {@link #migrate(ConnectionPool)} is
+ * called, every migration newer than the stored version is applied in order.
+ * Migrations which have already been applied are never run again, so a
+ * migration must never be changed once it has been released. Any change to
+ * the schema must be made by adding a new migration.
+ *
+ * @see #add(int, String, String...)
+ */
+public class SchemaMigrator {
+
+	/**
+	 * The table the schema version is stored in.
+	 */
+	public static final String VERSION_TABLE = "schema_version";
+
+	private static class Migration {
+
+		private final int version;
+		private final String description;
+		private final MigrationStep[] steps;
+
+		private Migration(int version, String description,
+				MigrationStep[] steps) {
+			this.version = version;
+			this.description = description;
+			this.steps = steps;
+		}
+
+	}
+
+	private final Map<Integer, Migration> migrations;
+
+	/**
+	 * Constructs a new {@code SchemaMigrator}.
+	 */
+	public SchemaMigrator() {
+		this.migrations = new TreeMap<>();
+	}
+
+	/**
+	 * Adds a migration.
+	 * <p>
+	 * The steps of a migration are run in order, inside of a single
+	 * transaction. However, some databases (such as MySQL) commit every schema
+	 * change as soon as it is made. On these, a migration which fails partway
+	 * through is <i>not</i> undone, and the steps which succeeded will be run
+	 * again when the migration is retried. As such, each step must be safe to
+	 * run more than once, see {@link MigrationStep}.
+	 *
+	 * @param version
+	 *            the schema version this migration brings the database to.
+	 * @param description
+	 *            what this migration does.
+	 * @param steps
+	 *            the steps to run.
+	 * @return this migrator.
+	 * @throws NullPointerException
+	 *             if {@code description}, {@code steps} or any of the steps
+	 *             are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code version} is not positive, or a migration with the
+	 *             same version has already been added.
+	 */
+	@NotNull
+	public SchemaMigrator add(int version, @NotNull String description,
+			@NotNull MigrationStep... steps) {
+		Objects.requireNonNull(description, "description");
+		Objects.requireNonNull(steps, "steps");
+		for (MigrationStep step : steps) {
+			Objects.requireNonNull(step, "step");
+		}
+		if (version <= 0) {
+			throw new IllegalArgumentException("version must be positive");
+		} else if (migrations.containsKey(version)) {
+			throw new IllegalArgumentException(
+					"duplicate migration for version " + version);
+		}
+		migrations.put(version,
+				new Migration(version, description, steps.clone()));
+		return this;
+	}
+
+	/**
+	 * Adds a migration made up of SQL statements.
+	 * <p>
+	 * The SQL should be written so that it works with every supported
+	 * {@link SQLDialect}, and so that it can be run more than once (for
+	 * example, using {@code CREATE TABLE IF NOT EXISTS}).
+	 *
+	 * @param version
+	 *            the schema version this migration brings the database to.
+	 * @param description
+	 *            what this migration does.
+	 * @param statements
+	 *            the SQL statements to run.
+	 * @return this migrator.
+	 * @throws NullPointerException
+	 *             if {@code description}, {@code statements} or any of the
+	 *             statements are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code version} is not positive, or a migration with the
+	 *             same version has already been added.
+	 * @see #add(int, String, MigrationStep...)
+	 */
+	@NotNull
+	public SchemaMigrator add(int version, @NotNull String description,
+			@NotNull String... statements) {
+		Objects.requireNonNull(statements, "statements");
+		MigrationStep[] steps = new MigrationStep[statements.length];
+		for (int i = 0; i < statements.length; i++) {
+			String sql =
+					Objects.requireNonNull(statements[i], "statement");
+			steps[i] = conn -> {
+				try (Statement stmt = conn.createStatement()) {
+					stmt.execute(sql);
+				}
+			};
+		}
+		return this.add(version, description, steps);
+	}
+
+	/**
+	 * Returns a step which creates an index, if it does not already exist.
+	 * <p>
+	 * Not every supported database has {@code CREATE INDEX IF NOT EXISTS}, so
+	 * the database metadata is checked for the index first. A unique index is
+	 * also not created if the same columns are already unique, such as when
+	 * they are the primary key of the table.
+	 *
+	 * @param unique
+	 *            {@code true} if the index is unique, {@code false}
+	 *            otherwise.
+	 * @param name
+	 *            the index name.
+	 * @param table
+	 *            the table to index.
+	 * @param columns
+	 *            the columns to index, in order.
+	 * @return the step.
+	 * @throws NullPointerException
+	 *             if {@code name}, {@code table} or {@code columns} are
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no columns are given.
+	 */
+	@NotNull
+	public static MigrationStep createIndex(boolean unique,
+			@NotNull String name, @NotNull String table,
+			@NotNull String... columns) {
+		Objects.requireNonNull(name, "name");
+		Objects.requireNonNull(table, "table");
+		Objects.requireNonNull(columns, "columns");
+		if (columns.length <= 0) {
+			throw new IllegalArgumentException("no columns to index");
+		}
+
+		String sql = (unique ? "CREATE UNIQUE INDEX " : "CREATE INDEX ")
+				+ name + " ON " + table + " (" + String.join(", ", columns)
+				+ ")";
+		return conn -> {
+			if (!hasIndex(conn, table, name, unique, columns)) {
+				try (Statement stmt = conn.createStatement()) {
+					stmt.execute(sql);
+				}
+			}
+		};
+	}
+
+	private static boolean hasIndex(Connection conn, String table,
+			String name, boolean unique, String[] columns)
+			throws SQLException {
+		/*
+		 * Each row is one column of an index, in order. The columns of every
+		 * unique index are gathered, to check if any of them already cover
+		 * exactly the columns being indexed.
+		 */
+		Map<String, List<String>> uniques = new HashMap<>();
+		DatabaseMetaData meta = conn.getMetaData();
+		try (ResultSet set = meta.getIndexInfo(conn.getCatalog(), null, table,
+				false, true)) {
+			while (set.next()) {
+				String index = set.getString("INDEX_NAME");
+				if (index == null) {
+					continue; /* table statistics */
+				} else if (name.equalsIgnoreCase(index)) {
+					return true;
+				} else if (unique && !set.getBoolean("NON_UNIQUE")) {
+					uniques.computeIfAbsent(index, key -> new ArrayList<>())
+							.add(set.getString("COLUMN_NAME"));
+				}
+			}
+		}
+
+		for (List<String> indexed : uniques.values()) {
+			if (indexed.size() != columns.length) {
+				continue;
+			}
+			boolean same = true;
+			for (int i = 0; i < columns.length && same; i++) {
+				same = columns[i].equalsIgnoreCase(indexed.get(i));
+			}
+			if (same) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the latest schema version known to this migrator.
+	 *
+	 * @return the latest schema version, zero if there are no migrations.
+	 */
+	public int getLatestVersion() {
+		int latest = 0;
+		for (int version : migrations.keySet()) {
+			latest = Math.max(latest, version);
+		}
+		return latest;
+	}
+
+	/**
+	 * Returns the version of a database schema.
+	 *
+	 * @param conn
+	 *            the database connection.
+	 * @return the schema version, zero if no migrations have been applied.
+	 * @throws NullPointerException
+	 *             if {@code conn} is {@code null}.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public static int getVersion(@NotNull Connection conn)
+			throws SQLException {
+		Objects.requireNonNull(conn, "conn");
+		createVersionTable(conn);
+		try (Statement stmt = conn.createStatement();
+				ResultSet set = stmt.executeQuery(
+						"SELECT MAX(version) FROM " + VERSION_TABLE)) {
+			return set.next() ? set.getInt(1) : 0;
+		}
+	}
+
+	private static void createVersionTable(Connection conn)
+			throws SQLException {
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE
+					+ " (version INT NOT NULL PRIMARY KEY,"
+					+ " description VARCHAR(255) NOT NULL,"
+					+ " applied TIMESTAMP NOT NULL)");
+		}
+	}
+
+	/**
+	 * Applies every migration newer than the current version of the schema.
+	 *
+	 * @param pool
+	 *            the connection pool to the database.
+	 * @return how many migrations were applied.
+	 * @throws NullPointerException
+	 *             if {@code pool} is {@code null}.
+	 * @throws SQLException
+	 *             if an SQL error occurs, or the schema is newer than this
+	 *             migrator knows about.
+	 */
+	public int migrate(@NotNull ConnectionPool pool) throws SQLException {
+		Objects.requireNonNull(pool, "pool");
+		try (Connection conn = pool.getConnection()) {
+			int current = getVersion(conn);
+			if (current > this.getLatestVersion()) {
+				throw new SQLException("schema version " + current
+						+ " is newer than the latest known version "
+						+ this.getLatestVersion());
+			}
+
+			int applied = 0;
+			for (Migration migration : migrations.values()) {
+				if (migration.version > current) {
+					this.apply(conn, migration);
+					applied++;
+				}
+			}
+			return applied;
+		}
+	}
+
+	private void apply(Connection conn, Migration migration)
+			throws SQLException {
+		boolean autoCommit = conn.getAutoCommit();
+		try {
+			conn.setAutoCommit(false);
+			for (MigrationStep step : migration.steps) {
+				step.run(conn);
+			}
+			try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO "
+					+ VERSION_TABLE + " (version, description, applied)"
+					+ " VALUES (?, ?, ?)")) {
+				stmt.setInt(1, migration.version);
+				stmt.setString(2, migration.description);
+				stmt.setTimestamp(3,
+						new Timestamp(System.currentTimeMillis()));
+				stmt.execute();
+			}
+			conn.commit();
+		} catch (SQLException | RuntimeException e) {
+			try {
+				conn.rollback();
+			} catch (SQLException rollback) {
+				e.addSuppressed(rollback);
+			}
+			throw e;
+		} finally {
+			conn.setAutoCommit(autoCommit);
+		}
+	}
+
+}
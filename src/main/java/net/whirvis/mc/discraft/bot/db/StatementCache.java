@@ -0,0 +1,130 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of prepared statements for a single physical connection, keyed by
+ * their SQL text.
+ * <p>
+ * Preparing a statement has the driver parse and plan its SQL, which is wasted
+ * work when the same SQL is run over and over. Statements which are closed by
+ * their user are kept here instead, and handed out again the next time the
+ * same SQL is prepared on this connection. The least recently used statement
+ * is closed for real once the cache is full.
+ * <p>
+ * A statement is removed from the cache while it is being used, so it can
+ * never be handed out twice at the same time.
+ *
+ * @see ConnectionPool
+ */
+class StatementCache {
+
+	private final Connection conn;
+	private final int maxSize;
+	private final Map<String, PreparedStatement> statements;
+
+	/**
+	 * Constructs a new {@code StatementCache}.
+	 *
+	 * @param conn
+	 *            the physical connection.
+	 * @param maxSize
+	 *            the maximum number of cached statements, zero to disable
+	 *            caching.
+	 */
+	StatementCache(Connection conn, int maxSize) {
+		this.conn = conn;
+		this.maxSize = maxSize;
+		this.statements = new LinkedHashMap<>(16, 0.75F, true);
+	}
+
+	/**
+	 * Takes the statement cached for the given SQL.
+	 *
+	 * @param sql
+	 *            the SQL text.
+	 * @return the cached statement, {@code null} if none.
+	 */
+	synchronized PreparedStatement take(String sql) {
+		return statements.remove(sql);
+	}
+
+	/**
+	 * Prepares a new statement on the physical connection. This does not go
+	 * through the cache, see {@link #take(String)}.
+	 *
+	 * @param sql
+	 *            the SQL text.
+	 * @return the prepared statement.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	PreparedStatement prepare(String sql) throws SQLException {
+		return conn.prepareStatement(sql);
+	}
+
+	/**
+	 * Gives a statement back to the cache once its user is done with it.
+	 * <p>
+	 * If caching is disabled or a statement is already cached for the same
+	 * SQL, the statement is closed instead.
+	 *
+	 * @param sql
+	 *            the SQL text.
+	 * @param stmt
+	 *            the statement.
+	 */
+	void offer(String sql, PreparedStatement stmt) {
+		PreparedStatement closing = null;
+		synchronized (this) {
+			if (maxSize <= 0 || statements.containsKey(sql)) {
+				closing = stmt;
+			} else {
+				statements.put(sql, stmt);
+				if (statements.size() > maxSize) {
+					Iterator<PreparedStatement> eldest =
+							statements.values().iterator();
+					closing = eldest.next();
+					eldest.remove();
+				}
+			}
+		}
+		if (closing != null) {
+			closeQuietly(closing);
+		}
+	}
+
+	/**
+	 * Closes every cached statement.
+	 */
+	synchronized void close() {
+		for (PreparedStatement stmt : statements.values()) {
+			closeQuietly(stmt);
+		}
+		statements.clear();
+	}
+
+	/**
+	 * Returns how many statements are cached.
+	 *
+	 * @return how many statements are cached.
+	 */
+	synchronized int size() {
+		return statements.size();
+	}
+
+	private static void closeQuietly(PreparedStatement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			/* TODO: Use Log4j2 */
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,320 @@
+package net.whirvis.mc.discraft.bot.guild;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import net.whirvis.mc.discraft.bot.db.DBExecutor;
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.util.LongMap;
+import net.whirvis.mc.discraft.bot.util.PrefixTrie;
+import net.whirvis.mc.discraft.bot.util.SQLColumn;
+import net.whirvis.mc.discraft.bot.util.SQLQuery;
+import net.whirvis.mc.discraft.bot.util.SQLTable;
+
+/**
+ * The command prefixes of each guild.
+ * <p>
+ * Every guild can use the default prefix. A guild may also set a prefix of
+ * its own, which can be used alongside it. The default prefix always works,
+ * so a guild cannot lock itself out by forgetting its prefix.
+ * <p>
+ * Every custom prefix is kept in memory, as they are checked against every
+ * message the bot sees. Lookups never lock or allocate. Instead, each change
+ * publishes a new snapshot of the prefixes, along with a {@link PrefixTrie}
+ * built from them. Changes made through {@link #setPrefix(long, String)} take
+ * effect right away. Changes made to the database by anything else take
+ * effect the next time the prefixes are reloaded, see {@link #reload()}.
+ */
+public class GuildPrefixes {
+
+	/**
+	 * The maximum length of a prefix.
+	 */
+	public static final int MAX_LENGTH = 32;
+
+	private static final SQLTable SQL_TABLE = new SQLTable("guild_settings");
+	private static final SQLColumn<Long> GUILD_ID =
+			SQL_TABLE.addKey("guild_id", Long.class);
+	private static final SQLColumn<String> PREFIX =
+			SQL_TABLE.addColumn("prefix", String.class);
+
+	private static final SQLQuery SELECT_PREFIXES =
+			SQL_TABLE.select(GUILD_ID, PREFIX).build();
+	private static final SQLQuery UPSERT_PREFIX = SQL_TABLE.upsert(PREFIX);
+
+	/**
+	 * An immutable view of every prefix. Once published, it is never
+	 * modified again, so it can be read without locking.
+	 */
+	private static class Snapshot {
+
+		private final LongMap<String> byGuild;
+		private final PrefixTrie trie;
+
+		private Snapshot(String defaultPrefix, Map<Long, String> prefixes) {
+			this.byGuild = new LongMap<>(prefixes.size());
+			List<String> all = new ArrayList<>(prefixes.size() + 1);
+			all.add(defaultPrefix);
+			for (Map.Entry<Long, String> entry : prefixes.entrySet()) {
+				byGuild.put(entry.getKey(), entry.getValue());
+				all.add(entry.getValue());
+			}
+			this.trie = new PrefixTrie(all);
+		}
+
+	}
+
+	private final DBRouter router;
+	private final DBExecutor executor;
+	private final String defaultPrefix;
+
+	/*
+	 * The prefixes are only modified while holding this lock, which is also
+	 * held while they are written and reloaded. Otherwise, a reload which
+	 * read the database just before a write could publish the old prefix
+	 * again after it.
+	 */
+	private final Map<Long, String> prefixes;
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Constructs a new {@code GuildPrefixes}.
+	 * <p>
+	 * No custom prefixes are known until they are loaded, see
+	 * {@link #reload()}.
+	 *
+	 * @param router
+	 *            the database router.
+	 * @param executor
+	 *            the executor to run asynchronous writes on.
+	 * @param defaultPrefix
+	 *            the prefix every guild can use.
+	 * @throws NullPointerException
+	 *             if {@code router}, {@code executor} or
+	 *             {@code defaultPrefix} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code defaultPrefix} is not a valid prefix.
+	 */
+	public GuildPrefixes(@NotNull DBRouter router,
+			@NotNull DBExecutor executor, @NotNull String defaultPrefix) {
+		this.router = Objects.requireNonNull(router, "router");
+		this.executor = Objects.requireNonNull(executor, "executor");
+		this.defaultPrefix = checkPrefix(defaultPrefix);
+		this.prefixes = new HashMap<>();
+		this.snapshot = new Snapshot(defaultPrefix, prefixes);
+	}
+
+	/**
+	 * Checks that a prefix is valid. A prefix may not be empty, longer than
+	 * {@value #MAX_LENGTH} characters, or contain whitespace.
+	 *
+	 * @param prefix
+	 *            the prefix to check.
+	 * @return {@code prefix}.
+	 * @throws NullPointerException
+	 *             if {@code prefix} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code prefix} is not a valid prefix.
+	 */
+	@NotNull
+	public static String checkPrefix(@NotNull String prefix) {
+		Objects.requireNonNull(prefix, "prefix");
+		if (prefix.isEmpty()) {
+			throw new IllegalArgumentException("prefix cannot be empty");
+		} else if (prefix.length() > MAX_LENGTH) {
+			throw new IllegalArgumentException(
+					"prefix.length() > " + MAX_LENGTH);
+		} else if (!prefix.matches("\\S+")) {
+			throw new IllegalArgumentException(
+					"prefix cannot contain whitespace");
+		}
+		return prefix;
+	}
+
+	/**
+	 * Returns the prefix every guild can use.
+	 *
+	 * @return the default prefix.
+	 */
+	@NotNull
+	public String getDefaultPrefix() {
+		return this.defaultPrefix;
+	}
+
+	/**
+	 * Returns the custom prefix of a guild.
+	 *
+	 * @param guildId
+	 *            the guild ID.
+	 * @return the custom prefix, {@code null} if the guild only uses the
+	 *         default prefix.
+	 */
+	@Nullable
+	public String getPrefix(long guildId) {
+		return snapshot.byGuild.get(guildId);
+	}
+
+	/**
+	 * Returns how many guilds have a custom prefix.
+	 *
+	 * @return how many guilds have a custom prefix.
+	 */
+	public int getCustomCount() {
+		return snapshot.byGuild.size();
+	}
+
+	private static boolean startsWith(String text, String prefix, int length) {
+		return prefix != null && prefix.length() == length
+				&& text.regionMatches(true, 0, prefix, 0, length);
+	}
+
+	/**
+	 * Finds the prefix of a command sent in a guild.
+	 * <p>
+	 * The prefix must be followed by whitespace, and must be either the
+	 * default prefix or the custom prefix of the guild. Most text does not
+	 * start with any known prefix at all, and is turned away after a few
+	 * characters without looking up the guild.
+	 *
+	 * @param guildId
+	 *            the guild ID, {@code 0} if the command was not sent in a
+	 *            guild.
+	 * @param text
+	 *            the command text.
+	 * @return the length of the prefix, {@code -1} if {@code text} does not
+	 *         start with a prefix of the guild.
+	 * @throws NullPointerException
+	 *             if {@code text} is {@code null}.
+	 */
+	public int match(long guildId, @NotNull String text) {
+		Snapshot current = this.snapshot;
+		int length = current.trie.match(text, 0);
+		while (length >= 0) {
+			if (length < text.length()
+					&& Character.isWhitespace(text.charAt(length))) {
+				if (startsWith(text, defaultPrefix, length)) {
+					return length;
+				} else if (guildId != 0L && startsWith(text,
+						current.byGuild.get(guildId), length)) {
+					return length;
+				}
+			}
+			length = current.trie.match(text, length + 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns if some text is only a prefix of a guild, with no command.
+	 *
+	 * @param guildId
+	 *            the guild ID, {@code 0} if the text was not sent in a guild.
+	 * @param text
+	 *            the text.
+	 * @return {@code true} if {@code text} is the default prefix or the
+	 *         custom prefix of the guild, {@code false} otherwise.
+	 */
+	public boolean isPrefix(long guildId, @Nullable String text) {
+		if (text == null) {
+			return false;
+		} else if (text.equalsIgnoreCase(defaultPrefix)) {
+			return true;
+		}
+		return guildId != 0L && text.equalsIgnoreCase(this.getPrefix(guildId));
+	}
+
+	/**
+	 * Reloads every custom prefix from the database.
+	 * <p>
+	 * Prefixes are read from the primary, so a change this bot has just
+	 * written is never replaced by an older copy from a replica.
+	 *
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public synchronized void reload() throws SQLException {
+		Map<Long, String> loaded = new HashMap<>();
+		try (Connection conn = router.getPrimaryConnection();
+				PreparedStatement stmt = SELECT_PREFIXES.prepare(conn,
+						router.getDialect());
+				ResultSet set = stmt.executeQuery()) {
+			while (set.next()) {
+				Long guildId = GUILD_ID.get(set);
+				String prefix = PREFIX.get(set);
+				if (guildId != null && prefix != null) {
+					loaded.put(guildId, prefix);
+				}
+			}
+		}
+
+		prefixes.clear();
+		prefixes.putAll(loaded);
+		this.snapshot = new Snapshot(defaultPrefix, prefixes);
+	}
+
+	/**
+	 * Sets the custom prefix of a guild.
+	 * <p>
+	 * The prefix is written to the database before it takes effect.
+	 *
+	 * @param guildId
+	 *            the guild ID.
+	 * @param prefix
+	 *            the new prefix, {@code null} to only use the default prefix.
+	 * @throws IllegalArgumentException
+	 *             if {@code prefix} is not a valid prefix.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public synchronized void setPrefix(long guildId, @Nullable String prefix)
+			throws SQLException {
+		if (prefix != null) {
+			checkPrefix(prefix);
+		}
+
+		router.write(guildId, conn -> {
+			try (PreparedStatement stmt = UPSERT_PREFIX.prepare(conn,
+					router.getDialect(), guildId, prefix)) {
+				return stmt.execute();
+			}
+		});
+
+		if (prefix != null) {
+			prefixes.put(guildId, prefix);
+		} else {
+			prefixes.remove(guildId);
+		}
+		this.snapshot = new Snapshot(defaultPrefix, prefixes);
+	}
+
+	/**
+	 * Sets the custom prefix of a guild asynchronously.
+	 *
+	 * @param guildId
+	 *            the guild ID.
+	 * @param prefix
+	 *            the new prefix, {@code null} to only use the default prefix.
+	 * @return a future which completes once the prefix has taken effect.
+	 * @see #setPrefix(long, String)
+	 */
+	@NotNull
+	public CompletableFuture<Void> setPrefixAsync(long guildId,
+			@Nullable String prefix) {
+		return executor.supply(() -> {
+			this.setPrefix(guildId, prefix);
+			return null;
+		});
+	}
+
+}
@@ -0,0 +1,36 @@
+package net.whirvis.mc.discraft.bot.link;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.UUID;
+
+/**
+ * Thrown when a Minecraft account cannot be linked, because it is already
+ * linked to another Discord account.
+ * <p>
+ * A Minecraft account must be unlinked before it can be linked to another
+ * Discord account. Links are never moved from one Discord account to another
+ * silently.
+ *
+ * @see LinkManager#activateCode(UUID, String)
+ */
+public class LinkConflictException
+		extends SQLIntegrityConstraintViolationException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a new {@code LinkConflictException}.
+	 *
+	 * @param minecraftId
+	 *            the UUID of the Minecraft account.
+	 * @param cause
+	 *            the constraint violation reported by the database,
+	 *            {@code null} if the conflict was found beforehand.
+	 */
+	public LinkConflictException(UUID minecraftId, Throwable cause) {
+		super("Minecraft account " + minecraftId
+				+ " is already linked to another Discord account", "23000",
+				cause);
+	}
+
+}
@@ -2,32 +2,45 @@ package net.whirvis.mc.discraft.bot.link;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import net.dv8tion.jda.api.entities.User;
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.db.DBExecutor;
+import net.whirvis.mc.discraft.bot.util.LongMap;
 
 public class LinkManager {
 
-	private final Map<User, LinkProcess> activeLinks;
+	/*
+	 * Keyed by Discord ID. This map is accessed by both JDA and the
+	 * webserver, so all access to it must be synchronized.
+	 */
+	private final LongMap<LinkProcess> activeLinks;
 
-	private final Connection conn;
+	private final DBRouter router;
+	private final DBExecutor executor;
 	
-	public LinkManager(Connection conn) {
-		this.conn = conn;
-		this.activeLinks = new HashMap<>();
+	public LinkManager(DBRouter router, DBExecutor executor) {
+		this.router = Objects.requireNonNull(router, "router");
+		this.executor = Objects.requireNonNull(executor, "executor");
+		this.activeLinks = new LongMap<>();
 	}
 	
 	public boolean isLinking(User user) {
-		return activeLinks.containsKey(user);
+		synchronized (activeLinks) {
+			return activeLinks.containsKey(user.getIdLong());
+		}
 	}
 	
 	public LinkProcess beginLinking(User user) {
 		LinkProcess process = new LinkProcess(user);
-		activeLinks.put(user, process);
+		synchronized (activeLinks) {
+			activeLinks.put(user.getIdLong(), process);
+		}
 		return process;
 	}
 
@@ -36,20 +49,121 @@ public class LinkManager {
 		Objects.requireNonNull(secretCode, "secretCode");
 		
 		LinkProcess link = null;
-		for (LinkProcess process : activeLinks.values()) {
-			if (secretCode.equalsIgnoreCase(process.getSecret())) {
-				link = process;
-				break;
+		synchronized (activeLinks) {
+			for (LinkProcess process : activeLinks) {
+				if (secretCode.equalsIgnoreCase(process.getSecret())) {
+					link = process;
+					break;
+				}
 			}
 		}
 		
 		if (link != null) {
-			PreparedStatement stmt = conn.prepareStatement("INSERT INTO minecraft_links VALUES(?, ?)");
-			stmt.setLong(1, link.getUser().getIdLong());
-			stmt.setString(2, uuid.toString());
-			stmt.execute();
+			long discordId = link.getUser().getIdLong();
+			try {
+				router.write(discordId,
+						conn -> writeLink(conn, discordId, uuid));
+			} catch (LinkConflictException e) {
+				throw e;
+			} catch (SQLException e) {
+				/*
+				 * Another link for the same Minecraft account was committed
+				 * between the check and the insert. The unique index on the
+				 * UUID caught it, which is the same conflict.
+				 */
+				if (router.getDialect().isConstraintViolation(e)) {
+					throw new LinkConflictException(uuid, e);
+				}
+				throw e;
+			}
+			router.pin(DBRouter.keyOf(uuid));
 		}
 		return link;
 	}
 
+	/*
+	 * An upsert cannot be used here. The table has two unique keys, and each
+	 * database resolves a conflict on the second differently. MySQL would
+	 * rewrite the row of whoever owns the UUID, while SQLite would fail. So
+	 * the conflict is checked for explicitly, and the old link of this
+	 * Discord account (if any) is replaced in the same transaction.
+	 */
+	private static boolean writeLink(Connection conn, long discordId,
+			UUID uuid) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement(
+				"SELECT discord_id FROM minecraft_links WHERE uuid = ?")) {
+			stmt.setString(1, uuid.toString());
+			try (ResultSet set = stmt.executeQuery()) {
+				if (set.next() && set.getLong("discord_id") != discordId) {
+					throw new LinkConflictException(uuid, null);
+				}
+			}
+		}
+
+		try (PreparedStatement stmt = conn.prepareStatement(
+				"DELETE FROM minecraft_links WHERE discord_id = ?")) {
+			stmt.setLong(1, discordId);
+			stmt.executeUpdate();
+		}
+		try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO"
+				+ " minecraft_links (discord_id, uuid) VALUES (?, ?)")) {
+			stmt.setLong(1, discordId);
+			stmt.setString(2, uuid.toString());
+			return stmt.executeUpdate() > 0;
+		}
+	}
+
+	public CompletableFuture<LinkProcess> activateCodeAsync(UUID uuid,
+			String secretCode) {
+		Objects.requireNonNull(uuid, "uuid");
+		Objects.requireNonNull(secretCode, "secretCode");
+		return executor.supply(() -> this.activateCode(uuid, secretCode));
+	}
+
+	/*
+	 * Both of these lookups are backed by an index, see DiscraftSchema. They
+	 * are pinned to the primary by both IDs whenever a link is written.
+	 */
+	public UUID getMinecraftId(long discordId) throws SQLException {
+		try (Connection conn = router.getReadConnection(discordId);
+				PreparedStatement stmt = conn.prepareStatement(
+						"SELECT uuid FROM minecraft_links WHERE discord_id = ?")) {
+			stmt.setLong(1, discordId);
+			try (ResultSet set = stmt.executeQuery()) {
+				return set.next() ? UUID.fromString(set.getString("uuid"))
+						: null;
+			}
+		}
+	}
+
+	public Long getDiscordId(UUID minecraftId) throws SQLException {
+		Objects.requireNonNull(minecraftId, "minecraftId");
+		try (Connection conn = router.getReadConnection(
+				DBRouter.keyOf(minecraftId));
+				PreparedStatement stmt = conn.prepareStatement(
+						"SELECT discord_id FROM minecraft_links WHERE uuid = ?")) {
+			stmt.setString(1, minecraftId.toString());
+			try (ResultSet set = stmt.executeQuery()) {
+				return set.next() ? set.getLong("discord_id") : null;
+			}
+		}
+	}
+
+	public CompletableFuture<UUID> getMinecraftIdAsync(long discordId) {
+		return executor.supply(() -> this.getMinecraftId(discordId));
+	}
+
+	public CompletableFuture<Long> getDiscordIdAsync(UUID minecraftId) {
+		Objects.requireNonNull(minecraftId, "minecraftId");
+		return executor.supply(() -> this.getDiscordId(minecraftId));
+	}
+
+	public int expireLinks(long maxAge) {
+		long currentTime = System.currentTimeMillis();
+		synchronized (activeLinks) {
+			return activeLinks.removeIf(
+					process -> currentTime - process.getCreated() >= maxAge);
+		}
+	}
+
 }
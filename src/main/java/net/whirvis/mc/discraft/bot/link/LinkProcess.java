@@ -24,10 +24,12 @@ public class LinkProcess {
 
 	private final User user;
 	private final String secretCode;
+	private final long created;
 
 	public LinkProcess(User user) {
 		this.user = user;
 		this.secretCode = genSecret(6);
+		this.created = System.currentTimeMillis();
 	}
 
 	public User getUser() {
@@ -38,4 +40,8 @@ public class LinkProcess {
 		return this.secretCode;
 	}
 
+	public long getCreated() {
+		return this.created;
+	}
+
 }
@@ -0,0 +1,30 @@
+package net.whirvis.mc.discraft.bot.rest;
+
+/**
+ * How urgently a request to Discord must be sent.
+ * <p>
+ * Requests with a higher priority are always sent first. Under pressure, low
+ * priority requests may be merged with each other or dropped, see
+ * {@link RestScheduler}.
+ */
+public enum RestPriority {
+
+	/**
+	 * Something a user is actively waiting on outside of Discord, such as
+	 * the confirmation of a link made from Minecraft.
+	 */
+	HIGH,
+
+	/**
+	 * Direct messages a user needs in order to continue, such as the code
+	 * for linking their account.
+	 */
+	NORMAL,
+
+	/**
+	 * Replies to commands in chat. These are the first to be merged or
+	 * dropped when the bot is sending more than Discord allows.
+	 */
+	LOW
+
+}
@@ -0,0 +1,525 @@
+package net.whirvis.mc.discraft.bot.rest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.PrivateChannel;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.whirvis.mc.discraft.bot.util.LongMap;
+import net.whirvis.mc.discraft.bot.util.RateLimiter;
+
+/**
+ * Sends requests to Discord in order of priority, without going over its
+ * rate limits.
+ * <p>
+ * JDA sends every request it is given in the order it is given them. When
+ * the bot is sending more than Discord allows, a burst of command replies can
+ * hold up the confirmation of a link for as long as it takes to send all of
+ * them. Requests given to this scheduler wait here instead, and are only
+ * handed to JDA once they fit within the rate limits. As such, the waiting
+ * happens where priority can still be taken into account.
+ * <p>
+ * Each request has a route, such as the channel a message is sent to. Like
+ * Discord, each route has its own limit, and there is a global limit shared
+ * by every route. A request whose route is over its limit does not hold up
+ * requests to other routes.
+ * <p>
+ * Under pressure, low priority requests give way:
+ * <ul>
+ * <li>Low priority messages to the same channel which are still waiting are
+ * merged into one message, if they fit.</li>
+ * <li>Low priority requests which have waited too long are dropped.</li>
+ * <li>Once the queue is full, the oldest request of the lowest priority is
+ * dropped to make room for a request of higher priority.</li>
+ * </ul>
+ *
+ * @see RestPriority
+ */
+public class RestScheduler {
+
+	private static final int MAX_LENGTH = 2000;
+	private static final long GLOBAL_ROUTE = 0L;
+	private static final RestPriority[] PRIORITIES = RestPriority.values();
+
+	private static class Request {
+
+		private final long route;
+		private final RestPriority priority;
+		private final long created;
+		private final Runnable send;
+		private final MessageChannel channel;
+		private final StringBuilder text;
+
+		private Request(long route, RestPriority priority, Runnable send,
+				MessageChannel channel, String text) {
+			this.route = route;
+			this.priority = priority;
+			this.created = System.currentTimeMillis();
+			this.send = send;
+			this.channel = channel;
+			this.text = text != null ? new StringBuilder(text) : null;
+		}
+
+		private void send() {
+			if (send != null) {
+				send.run();
+			} else {
+				channel.sendMessage(text.toString()).queue();
+			}
+		}
+
+	}
+
+	private final String name;
+	private final RateLimiter routes;
+	private final RateLimiter global;
+	private final int maxQueued;
+	private final long staleAfter;
+	private final LongMap<PrivateChannel> privateChannels;
+	private final Thread thread;
+
+	/*
+	 * Everything below is guarded by this scheduler. Each priority has its
+	 * own queue, in the order requests were given. The last low priority
+	 * message waiting for each route is kept, so new ones can be merged into
+	 * it.
+	 */
+	private final List<ArrayDeque<Request>> queues;
+	private final LongMap<Request> mergeable;
+	private int queued;
+	private boolean closed;
+
+	private final LongAdder sent;
+	private final LongAdder merged;
+	private final LongAdder shed;
+
+	/**
+	 * Constructs a new {@code RestScheduler}.
+	 *
+	 * @param name
+	 *            the scheduler name, used to name its thread.
+	 * @param settings
+	 *            the scheduler settings.
+	 * @throws NullPointerException
+	 *             if {@code name} or {@code settings} are {@code null}.
+	 */
+	public RestScheduler(@NotNull String name, @NotNull RestSettings settings) {
+		this.name = Objects.requireNonNull(name, "name");
+		Objects.requireNonNull(settings, "settings");
+		this.routes = new RateLimiter(settings.getRouteBurst(),
+				settings.getRoutePeriod());
+		this.global = new RateLimiter(settings.getGlobalBurst(),
+				settings.getGlobalPeriod());
+		this.maxQueued = settings.getMaxQueued();
+		this.staleAfter = settings.getStaleAfter();
+		this.privateChannels = new LongMap<>();
+
+		this.queues = new ArrayList<>(PRIORITIES.length);
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			queues.add(new ArrayDeque<>());
+		}
+		this.mergeable = new LongMap<>();
+		this.sent = new LongAdder();
+		this.merged = new LongAdder();
+		this.shed = new LongAdder();
+
+		this.thread = new Thread(this::run, name + "-rest");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the scheduler name.
+	 *
+	 * @return the scheduler name.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Sends a message to a channel.
+	 *
+	 * @param channel
+	 *            the channel.
+	 * @param text
+	 *            the message text.
+	 * @param priority
+	 *            the priority of the message.
+	 * @return {@code true} if the message was accepted, {@code false} if it
+	 *         was dropped as the queue is full of higher priority requests.
+	 *         An accepted message can still be dropped later, see the
+	 *         {@linkplain RestScheduler class documentation}.
+	 * @throws NullPointerException
+	 *             if {@code channel}, {@code text} or {@code priority} are
+	 *             {@code null}.
+	 */
+	public boolean send(@NotNull MessageChannel channel, @NotNull String text,
+			@NotNull RestPriority priority) {
+		Objects.requireNonNull(channel, "channel");
+		Objects.requireNonNull(text, "text");
+		Objects.requireNonNull(priority, "priority");
+		return this.enqueue(new Request(channel.getIdLong(), priority, null,
+				channel, text));
+	}
+
+	/**
+	 * Sends a direct message to a user.
+	 * <p>
+	 * Unless the private channel of {@code user} has already been opened by
+	 * this scheduler, opening it is a request of its own. In that case, the
+	 * message is only queued once the channel is open, under the route of the
+	 * channel rather than the user. The message is dropped if the channel
+	 * fails to open.
+	 *
+	 * @param user
+	 *            the user.
+	 * @param priority
+	 *            the priority of the message.
+	 * @param message
+	 *            creates the message, once the private channel of
+	 *            {@code user} has been opened.
+	 * @return {@code true} if the message was accepted, {@code false} if it
+	 *         was dropped as the queue is full of higher priority requests.
+	 *         An accepted message can still be dropped later, see the
+	 *         {@linkplain RestScheduler class documentation}.
+	 * @throws NullPointerException
+	 *             if {@code user}, {@code priority} or {@code message} are
+	 *             {@code null}.
+	 */
+	public boolean sendPrivate(@NotNull User user,
+			@NotNull RestPriority priority,
+			@NotNull Function<PrivateChannel, RestAction<?>> message) {
+		Objects.requireNonNull(user, "user");
+		Objects.requireNonNull(priority, "priority");
+		Objects.requireNonNull(message, "message");
+		long userId = user.getIdLong();
+		PrivateChannel known;
+		synchronized (privateChannels) {
+			known = privateChannels.get(userId);
+		}
+		if (known != null) {
+			return this.submit(known.getIdLong(), priority,
+					() -> message.apply(known).queue());
+		}
+
+		return this.submit(userId, priority,
+				() -> user.openPrivateChannel().queue(channel -> {
+					synchronized (privateChannels) {
+						privateChannels.put(userId, channel);
+					}
+					this.submit(channel.getIdLong(), priority,
+							() -> message.apply(channel).queue());
+				}));
+	}
+
+	/**
+	 * Sends a direct message to a user.
+	 *
+	 * @param user
+	 *            the user.
+	 * @param text
+	 *            the message text.
+	 * @param priority
+	 *            the priority of the message.
+	 * @return {@code true} if the message was accepted, {@code false} if it
+	 *         was dropped as the queue is full of higher priority requests.
+	 *         An accepted message can still be dropped later, see the
+	 *         {@linkplain RestScheduler class documentation}.
+	 * @throws NullPointerException
+	 *             if {@code user}, {@code text} or {@code priority} are
+	 *             {@code null}.
+	 */
+	public boolean sendPrivate(@NotNull User user, @NotNull String text,
+			@NotNull RestPriority priority) {
+		Objects.requireNonNull(text, "text");
+		return this.sendPrivate(user, priority,
+				channel -> channel.sendMessage(text));
+	}
+
+	/**
+	 * Sends any other request.
+	 *
+	 * @param route
+	 *            the route of the request, such as the ID of the channel it
+	 *            is for.
+	 * @param priority
+	 *            the priority of the request.
+	 * @param send
+	 *            hands the request to JDA once it is allowed to be sent.
+	 * @return {@code true} if the request was accepted, {@code false} if it
+	 *         was dropped as the queue is full of higher priority requests.
+	 *         An accepted request can still be dropped later, see the
+	 *         {@linkplain RestScheduler class documentation}.
+	 * @throws NullPointerException
+	 *             if {@code priority} or {@code send} are {@code null}.
+	 */
+	public boolean submit(long route, @NotNull RestPriority priority,
+			@NotNull Runnable send) {
+		Objects.requireNonNull(priority, "priority");
+		Objects.requireNonNull(send, "send");
+		return this.enqueue(new Request(route, priority, send, null, null));
+	}
+
+	private boolean enqueue(Request request) {
+		synchronized (this) {
+			if (!closed) {
+				return this.add(request);
+			}
+		}
+
+		/*
+		 * Once closed, there's no one left to wait on the rate limits.
+		 * Requests are handed straight to JDA instead, which still sends
+		 * them as long as it is running.
+		 */
+		request.send();
+		sent.increment();
+		return true;
+	}
+
+	private boolean add(Request request) {
+		if (request.priority == RestPriority.LOW && request.text != null) {
+			Request last = mergeable.get(request.route);
+			if (last != null && last.channel == request.channel
+					&& last.text.length() + 1
+							+ request.text.length() <= MAX_LENGTH) {
+				last.text.append('\n').append(request.text);
+				merged.increment();
+				return true;
+			}
+		}
+
+		if (queued >= maxQueued && !this.makeRoom(request.priority)) {
+			shed.increment();
+			return false;
+		}
+
+		queues.get(request.priority.ordinal()).add(request);
+		if (request.priority == RestPriority.LOW && request.text != null) {
+			mergeable.put(request.route, request);
+		}
+		this.queued++;
+		this.notifyAll();
+		return true;
+	}
+
+	/*
+	 * Drops the oldest request of the lowest priority, as long as it is
+	 * lower than the priority of the request which needs the room.
+	 */
+	private boolean makeRoom(RestPriority priority) {
+		for (int i = PRIORITIES.length - 1; i > priority.ordinal(); i--) {
+			Request dropped = queues.get(i).pollFirst();
+			if (dropped != null) {
+				this.forget(dropped);
+				shed.increment();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void forget(Request request) {
+		if (mergeable.get(request.route) == request) {
+			mergeable.remove(request.route);
+		}
+		this.queued--;
+	}
+
+	/*
+	 * Removes every request which can be sent now, in order of priority.
+	 * Returns how long until the next request could be sent, or zero if no
+	 * requests are left waiting.
+	 */
+	private long takeReady(List<Request> ready) {
+		long now = System.currentTimeMillis();
+		long wait = 0L;
+		for (ArrayDeque<Request> queue : queues) {
+			Iterator<Request> requests = queue.iterator();
+			while (requests.hasNext()) {
+				Request request = requests.next();
+				if (request.priority == RestPriority.LOW
+						&& now - request.created >= staleAfter) {
+					requests.remove();
+					this.forget(request);
+					shed.increment();
+					continue;
+				}
+
+				long globalWait = global.acquire(GLOBAL_ROUTE);
+				if (globalWait > 0L) {
+					return globalWait; /* nothing else can be sent */
+				}
+
+				long routeWait = routes.acquire(request.route);
+				if (routeWait > 0L) {
+					global.release(GLOBAL_ROUTE);
+					wait = wait > 0L ? Math.min(wait, routeWait) : routeWait;
+					continue;
+				}
+
+				requests.remove();
+				this.forget(request);
+				ready.add(request);
+			}
+		}
+		return wait;
+	}
+
+	private void run() {
+		List<Request> ready = new ArrayList<>();
+		while (true) {
+			synchronized (this) {
+				try {
+					while (queued <= 0 && !closed) {
+						this.wait();
+					}
+					if (closed) {
+						this.takeAll(ready);
+					} else {
+						long wait = this.takeReady(ready);
+						if (ready.isEmpty() && wait > 0L) {
+							this.wait(wait);
+						}
+					}
+				} catch (InterruptedException e) {
+					/* only woken up early, try again */
+				}
+			}
+
+			for (Request request : ready) {
+				try {
+					request.send();
+					sent.increment();
+				} catch (RuntimeException e) {
+					/* TODO: Use Log4j2 */
+					e.printStackTrace();
+				}
+			}
+			ready.clear();
+
+			synchronized (this) {
+				if (closed && queued <= 0) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void takeAll(List<Request> ready) {
+		for (ArrayDeque<Request> queue : queues) {
+			ready.addAll(queue);
+			queue.clear();
+		}
+		mergeable.clear();
+		this.queued = 0;
+	}
+
+	/**
+	 * Removes the rate limits of every route which has not been sent to
+	 * recently.
+	 * <p>
+	 * This also forgets every private channel which has been opened, so they
+	 * do not pile up. The next message to each of those users will open their
+	 * channel again.
+	 *
+	 * @return how many routes were removed.
+	 * @see RateLimiter#sweep()
+	 */
+	public int sweep() {
+		synchronized (privateChannels) {
+			privateChannels.clear();
+		}
+		return routes.sweep() + global.sweep();
+	}
+
+	/**
+	 * Returns how many requests are waiting to be sent.
+	 *
+	 * @return how many requests are waiting.
+	 */
+	public synchronized int getQueued() {
+		return this.queued;
+	}
+
+	/**
+	 * Returns how many requests of a priority are waiting to be sent.
+	 *
+	 * @param priority
+	 *            the priority.
+	 * @return how many requests of {@code priority} are waiting.
+	 * @throws NullPointerException
+	 *             if {@code priority} is {@code null}.
+	 */
+	public synchronized int getQueued(@NotNull RestPriority priority) {
+		Objects.requireNonNull(priority, "priority");
+		return queues.get(priority.ordinal()).size();
+	}
+
+	/**
+	 * Returns how many requests have been handed to JDA.
+	 *
+	 * @return how many requests have been sent.
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+
+	/**
+	 * Returns how many messages were merged into one already waiting.
+	 *
+	 * @return how many messages were merged.
+	 */
+	public long getMerged() {
+		return merged.sum();
+	}
+
+	/**
+	 * Returns how many requests were dropped, either to make room for a
+	 * request of higher priority or because they waited too long.
+	 *
+	 * @return how many requests were dropped.
+	 */
+	public long getShed() {
+		return shed.sum();
+	}
+
+	/**
+	 * Stops the scheduler. Every request still waiting is handed to JDA
+	 * right away, as are any requests made afterwards.
+	 *
+	 * @param timeout
+	 *            how long to wait for waiting requests to be handed over.
+	 * @param unit
+	 *            the unit of {@code timeout}.
+	 * @return {@code true} if every waiting request was handed over in time,
+	 *         {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if {@code unit} is {@code null}.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	public boolean shutdown(long timeout, @NotNull TimeUnit unit)
+			throws InterruptedException {
+		Objects.requireNonNull(unit, "unit");
+		synchronized (this) {
+			this.closed = true;
+			this.notifyAll();
+		}
+		thread.join(unit.toMillis(timeout));
+		return !thread.isAlive();
+	}
+
+}
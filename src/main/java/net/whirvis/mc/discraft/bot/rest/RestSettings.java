@@ -0,0 +1,204 @@
+package net.whirvis.mc.discraft.bot.rest;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The settings for a {@link RestScheduler}.
+ * <p>
+ * Each setting starts out with a sensible default, and can be changed via its
+ * respective setter before the scheduler is created. The defaults match the
+ * limits Discord puts on sending messages.
+ */
+public class RestSettings {
+
+	private int routeBurst;
+	private long routePeriod;
+	private int globalBurst;
+	private long globalPeriod;
+	private int maxQueued;
+	private long staleAfter;
+
+	/**
+	 * Constructs a new {@code RestSettings} with the default settings.
+	 */
+	public RestSettings() {
+		this.routeBurst = 5;
+		this.routePeriod = 5000L;
+		this.globalBurst = 50;
+		this.globalPeriod = 1000L;
+		this.maxQueued = 1000;
+		this.staleAfter = 30000L;
+	}
+
+	/**
+	 * Sets how many requests can be sent to one route at once, such as to
+	 * one channel.
+	 *
+	 * @param routeBurst
+	 *            the route burst.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code routeBurst} is not positive.
+	 */
+	@NotNull
+	public RestSettings routeBurst(int routeBurst) {
+		if (routeBurst <= 0) {
+			throw new IllegalArgumentException("routeBurst must be positive");
+		}
+		this.routeBurst = routeBurst;
+		return this;
+	}
+
+	/**
+	 * Sets how long it takes for the limit of a route to reset.
+	 *
+	 * @param routePeriod
+	 *            the route period, in milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code routePeriod} is not positive.
+	 */
+	@NotNull
+	public RestSettings routePeriod(long routePeriod) {
+		if (routePeriod <= 0) {
+			throw new IllegalArgumentException(
+					"routePeriod must be positive");
+		}
+		this.routePeriod = routePeriod;
+		return this;
+	}
+
+	/**
+	 * Sets how many requests can be sent at once across every route.
+	 *
+	 * @param globalBurst
+	 *            the global burst.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code globalBurst} is not positive.
+	 */
+	@NotNull
+	public RestSettings globalBurst(int globalBurst) {
+		if (globalBurst <= 0) {
+			throw new IllegalArgumentException(
+					"globalBurst must be positive");
+		}
+		this.globalBurst = globalBurst;
+		return this;
+	}
+
+	/**
+	 * Sets how long it takes for the global limit to reset.
+	 *
+	 * @param globalPeriod
+	 *            the global period, in milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code globalPeriod} is not positive.
+	 */
+	@NotNull
+	public RestSettings globalPeriod(long globalPeriod) {
+		if (globalPeriod <= 0) {
+			throw new IllegalArgumentException(
+					"globalPeriod must be positive");
+		}
+		this.globalPeriod = globalPeriod;
+		return this;
+	}
+
+	/**
+	 * Sets how many requests can wait to be sent. Once this many are
+	 * waiting, lower priority requests are dropped to make room for higher
+	 * priority ones.
+	 *
+	 * @param maxQueued
+	 *            the maximum number of waiting requests.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxQueued} is not positive.
+	 */
+	@NotNull
+	public RestSettings maxQueued(int maxQueued) {
+		if (maxQueued <= 0) {
+			throw new IllegalArgumentException("maxQueued must be positive");
+		}
+		this.maxQueued = maxQueued;
+		return this;
+	}
+
+	/**
+	 * Sets how long a low priority request can wait before it is dropped.
+	 * By then, whoever it was meant for has likely moved on.
+	 *
+	 * @param staleAfter
+	 *            how long until a low priority request is stale, in
+	 *            milliseconds.
+	 * @return these settings.
+	 * @throws IllegalArgumentException
+	 *             if {@code staleAfter} is not positive.
+	 */
+	@NotNull
+	public RestSettings staleAfter(long staleAfter) {
+		if (staleAfter <= 0) {
+			throw new IllegalArgumentException("staleAfter must be positive");
+		}
+		this.staleAfter = staleAfter;
+		return this;
+	}
+
+	/**
+	 * Returns how many requests can be sent to one route at once.
+	 *
+	 * @return the route burst.
+	 */
+	public int getRouteBurst() {
+		return this.routeBurst;
+	}
+
+	/**
+	 * Returns how long it takes for the limit of a route to reset.
+	 *
+	 * @return the route period, in milliseconds.
+	 */
+	public long getRoutePeriod() {
+		return this.routePeriod;
+	}
+
+	/**
+	 * Returns how many requests can be sent at once across every route.
+	 *
+	 * @return the global burst.
+	 */
+	public int getGlobalBurst() {
+		return this.globalBurst;
+	}
+
+	/**
+	 * Returns how long it takes for the global limit to reset.
+	 *
+	 * @return the global period, in milliseconds.
+	 */
+	public long getGlobalPeriod() {
+		return this.globalPeriod;
+	}
+
+	/**
+	 * Returns how many requests can wait to be sent.
+	 *
+	 * @return the maximum number of waiting requests.
+	 */
+	public int getMaxQueued() {
+		return this.maxQueued;
+	}
+
+	/**
+	 * Returns how long a low priority request can wait before it is dropped.
+	 *
+	 * @return how long until a low priority request is stale, in
+	 *         milliseconds.
+	 */
+	public long getStaleAfter() {
+		return this.staleAfter;
+	}
+
+}
@@ -0,0 +1,196 @@
+package net.whirvis.mc.discraft.bot.sched;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs periodic maintenance for the Discraft bot.
+ * <p>
+ * Maintenance consists of jobs like flushing cached users to the database or
+ * expiring old link processes. Each job is run on a small pool of named
+ * threads, which sleep in between runs rather than spinning.
+ *
+ * @see #schedule(String, long, long, TimeUnit, MaintenanceTask)
+ * @see #shutdown(long, TimeUnit)
+ */
+public class MaintenanceEngine {
+
+	private final String name;
+	private final ScheduledThreadPoolExecutor executor;
+	private final Map<String, MaintenanceJob> jobs;
+
+	/**
+	 * Constructs a new {@code MaintenanceEngine}.
+	 *
+	 * @param name
+	 *            the engine name, used to name its threads.
+	 * @param threads
+	 *            how many threads to run jobs on.
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code threads} is not positive.
+	 */
+	public MaintenanceEngine(@NotNull String name, int threads) {
+		this.name = Objects.requireNonNull(name, "name");
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+
+		AtomicInteger threadId = new AtomicInteger();
+		ThreadFactory factory = (runnable) -> {
+			Thread thread = new Thread(runnable,
+					name + "-maintenance-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		this.executor = new ScheduledThreadPoolExecutor(threads, factory);
+		executor.setRemoveOnCancelPolicy(true);
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.jobs = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the engine name.
+	 *
+	 * @return the engine name.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Schedules a job to be run periodically.
+	 * <p>
+	 * The first run of the job will happen after one interval has passed.
+	 * Each following run happens one interval (plus jitter) after the previous
+	 * run has finished.
+	 *
+	 * @param name
+	 *            the job name.
+	 * @param interval
+	 *            the delay between each run.
+	 * @param jitter
+	 *            the maximum random delay added to {@code interval}.
+	 * @param unit
+	 *            the unit of {@code interval} and {@code jitter}.
+	 * @param task
+	 *            the task to run.
+	 * @return the scheduled job.
+	 * @throws NullPointerException
+	 *             if {@code name}, {@code unit}, or {@code task} are
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code interval} is not positive, {@code jitter} is
+	 *             negative, or a job with the same name is already scheduled.
+	 * @throws IllegalStateException
+	 *             if this engine has been shutdown.
+	 */
+	@NotNull
+	public MaintenanceJob schedule(@NotNull String name, long interval,
+			long jitter, @NotNull TimeUnit unit,
+			@NotNull MaintenanceTask task) {
+		if (executor.isShutdown()) {
+			throw new IllegalStateException("engine has been shutdown");
+		}
+
+		MaintenanceJob job = new MaintenanceJob(name, interval, jitter, unit,
+				task, executor);
+		if (jobs.putIfAbsent(name, job) != null) {
+			throw new IllegalArgumentException(
+					"job \"" + name + "\" already scheduled");
+		}
+		job.scheduleNext();
+		return job;
+	}
+
+	/**
+	 * Returns a scheduled job by its name.
+	 *
+	 * @param name
+	 *            the job name.
+	 * @return the job, {@code null} if none exist by that name.
+	 */
+	@Nullable
+	public MaintenanceJob getJob(@Nullable String name) {
+		return name != null ? jobs.get(name) : null;
+	}
+
+	/**
+	 * Returns all scheduled jobs.
+	 *
+	 * @return all scheduled jobs.
+	 */
+	@NotNull
+	public Collection<MaintenanceJob> getJobs() {
+		return Collections.unmodifiableCollection(jobs.values());
+	}
+
+	/**
+	 * Returns if this engine has been shutdown.
+	 *
+	 * @return {@code true} if this engine has been shutdown, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+	/**
+	 * Shuts down this engine.
+	 * <p>
+	 * Jobs which are currently running are allowed to finish. Afterwards, any
+	 * job set to run on shutdown is run one final time on the calling thread.
+	 *
+	 * @param timeout
+	 *            how long to wait for running jobs to finish.
+	 * @param unit
+	 *            the unit of {@code timeout}.
+	 * @return {@code true} if all running jobs finished in time,
+	 *         {@code false} otherwise.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 * @see MaintenanceJob#runOnShutdown(boolean)
+	 */
+	public boolean shutdown(long timeout, @NotNull TimeUnit unit)
+			throws InterruptedException {
+		Objects.requireNonNull(unit, "unit");
+		if (executor.isShutdown()) {
+			return executor.isTerminated();
+		}
+
+		for (MaintenanceJob job : jobs.values()) {
+			job.cancel();
+		}
+		executor.shutdown();
+		boolean terminated = executor.awaitTermination(timeout, unit);
+
+		/*
+		 * Only perform the final runs once the other threads are done. If
+		 * they aren't done by now, they're stuck and running the jobs again
+		 * would just make things worse.
+		 */
+		if (terminated) {
+			for (MaintenanceJob job : new ArrayList<>(jobs.values())) {
+				if (job.isRunOnShutdown()) {
+					job.runTask();
+				}
+			}
+		}
+		return terminated;
+	}
+
+}
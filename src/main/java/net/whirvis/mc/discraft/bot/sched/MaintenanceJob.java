@@ -0,0 +1,283 @@
+package net.whirvis.mc.discraft.bot.sched;
+
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A job scheduled by a {@link MaintenanceEngine}.
+ * <p>
+ * Each job is run after a fixed delay, plus a random amount of jitter. The
+ * jitter keeps jobs that share an interval from all waking up at the exact same
+ * time. Jobs never overlap with themselves, as the next run is only scheduled
+ * once the previous run has finished.
+ *
+ * @see #runOnShutdown(boolean)
+ */
+public class MaintenanceJob implements Runnable {
+
+	private final String name;
+	private final long intervalNanos;
+	private final long jitterNanos;
+	private final MaintenanceTask task;
+	private final ScheduledExecutorService executor;
+
+	private final AtomicLong runCount;
+	private final AtomicLong failureCount;
+	private final AtomicLong totalNanos;
+	private volatile long lastNanos;
+	private volatile long maxNanos;
+	private volatile long lastRun;
+
+	private volatile boolean runOnShutdown;
+	private volatile boolean cancelled;
+	private volatile ScheduledFuture<?> future;
+
+	/**
+	 * Constructs a new {@code MaintenanceJob}.
+	 *
+	 * @param name
+	 *            the job name.
+	 * @param interval
+	 *            the delay between each run.
+	 * @param jitter
+	 *            the maximum random delay added to {@code interval}.
+	 * @param unit
+	 *            the unit of {@code interval} and {@code jitter}.
+	 * @param task
+	 *            the task to run.
+	 * @param executor
+	 *            the executor to run the task on.
+	 * @throws NullPointerException
+	 *             if {@code name}, {@code unit}, {@code task}, or
+	 *             {@code executor} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code interval} is not positive or {@code jitter} is
+	 *             negative.
+	 */
+	MaintenanceJob(@NotNull String name, long interval, long jitter,
+			@NotNull TimeUnit unit, @NotNull MaintenanceTask task,
+			@NotNull ScheduledExecutorService executor) {
+		this.name = Objects.requireNonNull(name, "name");
+		Objects.requireNonNull(unit, "unit");
+		this.task = Objects.requireNonNull(task, "task");
+		this.executor = Objects.requireNonNull(executor, "executor");
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		} else if (jitter < 0) {
+			throw new IllegalArgumentException("jitter cannot be negative");
+		}
+
+		this.intervalNanos = unit.toNanos(interval);
+		this.jitterNanos = unit.toNanos(jitter);
+
+		this.runCount = new AtomicLong();
+		this.failureCount = new AtomicLong();
+		this.totalNanos = new AtomicLong();
+	}
+
+	/**
+	 * Schedules the next run of this job.
+	 */
+	void scheduleNext() {
+		if (cancelled || executor.isShutdown()) {
+			return;
+		}
+		long delay = intervalNanos;
+		if (jitterNanos > 0) {
+			delay += ThreadLocalRandom.current().nextLong(jitterNanos + 1);
+		}
+		try {
+			this.future =
+					executor.schedule(this, delay, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			/* engine was shutdown in the meantime */
+		}
+	}
+
+	/**
+	 * Runs the task of this job once, recording how long it took.
+	 * <p>
+	 * Exceptions thrown by the task are counted as a failure and printed,
+	 * they will not stop the job from being run again.
+	 */
+	void runTask() {
+		long start = System.nanoTime();
+		try {
+			task.run();
+		} catch (Exception e) {
+			failureCount.incrementAndGet();
+			/* TODO: Use Log4j2 */
+			System.err.println("Maintenance job \"" + name + "\" failed");
+			e.printStackTrace();
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			runCount.incrementAndGet();
+			totalNanos.addAndGet(elapsed);
+			this.lastNanos = elapsed;
+			if (elapsed > maxNanos) {
+				this.maxNanos = elapsed;
+			}
+			this.lastRun = System.currentTimeMillis();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			this.runTask();
+		} finally {
+			this.scheduleNext();
+		}
+	}
+
+	/**
+	 * Sets whether or not this job should be run one final time when its
+	 * engine is shutdown. This is useful for jobs which write cached data
+	 * somewhere else, so nothing is lost when the bot stops.
+	 *
+	 * @param runOnShutdown
+	 *            {@code true} if this job should run on shutdown,
+	 *            {@code false} otherwise.
+	 * @return this job.
+	 */
+	@NotNull
+	public MaintenanceJob runOnShutdown(boolean runOnShutdown) {
+		this.runOnShutdown = runOnShutdown;
+		return this;
+	}
+
+	/**
+	 * Returns if this job should be run when its engine is shutdown.
+	 *
+	 * @return {@code true} if this job should be run on shutdown,
+	 *         {@code false} otherwise.
+	 */
+	public boolean isRunOnShutdown() {
+		return this.runOnShutdown;
+	}
+
+	/**
+	 * Cancels this job. A run that is already in progress will be allowed to
+	 * finish, but no more runs will be scheduled afterwards.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+		ScheduledFuture<?> future = this.future;
+		if (future != null) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Returns if this job has been cancelled.
+	 *
+	 * @return {@code true} if this job has been cancelled, {@code false}
+	 *         otherwise.
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Returns the job name.
+	 *
+	 * @return the job name.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the delay between each run.
+	 *
+	 * @param unit
+	 *            the time unit.
+	 * @return the delay between each run, not including jitter.
+	 */
+	public long getInterval(@NotNull TimeUnit unit) {
+		return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns how many times this job has been run.
+	 *
+	 * @return how many times this job has been run.
+	 */
+	public long getRunCount() {
+		return runCount.get();
+	}
+
+	/**
+	 * Returns how many times this job has failed.
+	 *
+	 * @return how many times this job has failed.
+	 */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * Returns when this job was last run.
+	 *
+	 * @return when this job last finished running, in milliseconds since the
+	 *         epoch. If it has never been run, {@code 0} is returned.
+	 */
+	public long getLastRun() {
+		return this.lastRun;
+	}
+
+	/**
+	 * Returns how long the last run of this job took.
+	 *
+	 * @param unit
+	 *            the time unit.
+	 * @return how long the last run took.
+	 */
+	public long getLastDuration(@NotNull TimeUnit unit) {
+		return unit.convert(lastNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns how long the longest run of this job took.
+	 *
+	 * @param unit
+	 *            the time unit.
+	 * @return how long the longest run took.
+	 */
+	public long getMaxDuration(@NotNull TimeUnit unit) {
+		return unit.convert(maxNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns how long a run of this job takes on average.
+	 *
+	 * @param unit
+	 *            the time unit.
+	 * @return how long a run takes on average, {@code 0} if this job has
+	 *         never been run.
+	 */
+	public long getAverageDuration(@NotNull TimeUnit unit) {
+		long runs = runCount.get();
+		if (runs <= 0) {
+			return 0L;
+		}
+		return unit.convert(totalNanos.get() / runs, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return name + " [runs=" + getRunCount() + ", failures="
+				+ getFailureCount() + ", avg="
+				+ getAverageDuration(TimeUnit.MICROSECONDS) + "us, max="
+				+ getMaxDuration(TimeUnit.MICROSECONDS) + "us]";
+	}
+
+}
@@ -0,0 +1,20 @@
+package net.whirvis.mc.discraft.bot.sched;
+
+/**
+ * A periodic task run by a {@link MaintenanceEngine}.
+ *
+ * @see MaintenanceEngine#schedule(String, long, long, java.util.concurrent.TimeUnit,
+ *      MaintenanceTask)
+ */
+@FunctionalInterface
+public interface MaintenanceTask {
+
+	/**
+	 * Runs the task.
+	 *
+	 * @throws Exception
+	 *             if an error occurs. The job will still be rescheduled.
+	 */
+	public void run() throws Exception;
+
+}
@@ -1,11 +1,13 @@
 package net.whirvis.mc.discraft.bot.user;
 
 import java.io.Closeable;
-import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.db.DBExecutor;
 
 /**
  * A user of the Discraft Discord bot.
@@ -14,46 +16,76 @@ import java.sql.SQLException;
  */
 public class DiscraftUser implements Closeable {
 
-	private final Connection conn;
+	private final DBRouter router;
+	private final DBExecutor executor;
 	private final long discordId;
+	private final SettingsFlusher flusher;
 
-	private UserSettings settings;
-	
-	private long refCount;
-	private long lastReffed;
-	private long lastUpdated;
+	private volatile UserSettings settings;
 
-	
+	/*
+	 * Users are shared between the JDA event threads and the maintenance
+	 * engine, so all of these must be safe to access from multiple threads.
+	 */
+	private final AtomicLong refCount;
+	private volatile long lastReffed;
+	private volatile long lastUpdated;
 
-	protected DiscraftUser(Connection conn, long discordId) {
-		this.conn = conn;
+	protected DiscraftUser(DBRouter router, DBExecutor executor,
+			long discordId, SettingsFlusher flusher) {
+		this.router = router;
+		this.executor = executor;
 		this.discordId = discordId;
-		
+		this.flusher = flusher;
+
+		this.refCount = new AtomicLong();
 		this.lastReffed = System.currentTimeMillis();
 	}
 
-	public UserSettings getSettings() throws SQLException {
+	public long getDiscordId() {
+		return this.discordId;
+	}
+
+	public synchronized UserSettings getSettings() throws SQLException {
 		if (settings != null) {
 			return settings;
 		}
 
 		/*
-		 * 
+		 * Creating the settings row is a single upsert, which does nothing
+		 * if the row already exists. This is safe to run more than once, even
+		 * at the same time from different threads.
 		 */
-		PreparedStatement stmt = conn.prepareStatement("SELECT discord_id "
-				+ "FROM user_settings WHERE discord_id = ?");
-		stmt.setLong(1, discordId);
-		ResultSet set = stmt.executeQuery();
-		if (!set.next()) {
-			stmt = conn.prepareStatement(
-					"INSERT INTO user_settings VALUES(?, DEFAULT)");
-			stmt.setLong(1, discordId);
-			stmt.execute();
-		}
+		router.write(discordId, conn -> {
+			try (PreparedStatement stmt = UserSettings.CREATE_ROW
+					.prepare(conn, router.getDialect(), discordId)) {
+				return stmt.execute();
+			}
+		});
 
-		this.settings = new UserSettings(conn, discordId);
+		this.settings = new UserSettings(router, discordId, flusher);
 		return settings;
 	}
+
+	/**
+	 * Returns the settings of this user without blocking the calling thread.
+	 * <p>
+	 * The settings are fully loaded by the time the returned future completes,
+	 * so reading them afterwards will not touch the database.
+	 *
+	 * @return a future for the settings of this user.
+	 */
+	public CompletableFuture<UserSettings> getSettingsAsync() {
+		UserSettings settings = this.settings;
+		if (settings != null && settings.isLoaded()) {
+			return CompletableFuture.completedFuture(settings);
+		}
+		return executor.supply(() -> {
+			UserSettings loaded = this.getSettings();
+			loaded.load();
+			return loaded;
+		});
+	}
 	
 	public long lastUpdated() {
 		return this.lastUpdated;
@@ -61,7 +93,8 @@ public class DiscraftUser implements Closeable {
 
 	public void update() throws SQLException {
 		long currentTime = System.currentTimeMillis();
-		if (settings != null) {
+		UserSettings settings = this.settings;
+		if (settings != null && settings.isDirty()) {
 			settings.update();
 		}
 		this.lastUpdated = currentTime;
@@ -72,17 +105,17 @@ public class DiscraftUser implements Closeable {
 	}
 	
 	public void updateRefCount() {
-		this.refCount++;
+		refCount.incrementAndGet();
 		this.lastReffed = System.currentTimeMillis();
 	}
-	
+
 	public boolean hasReference() {
-		return refCount > 0;
+		return refCount.get() > 0;
 	}
 
 	@Override
-	public void close() throws IOException {
-		this.refCount--;
+	public void close() {
+		refCount.updateAndGet(count -> count > 0 ? count - 1 : 0);
 	}
 
 }
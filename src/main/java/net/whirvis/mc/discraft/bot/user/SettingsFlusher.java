@@ -0,0 +1,336 @@
+package net.whirvis.mc.discraft.bot.user;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.user.UserSettings.CachedSQL;
+import net.whirvis.mc.discraft.bot.util.SQLQuery;
+
+/**
+ * Writes dirty user settings back to the database in the background.
+ * <p>
+ * Settings are queued the moment one of their values goes from clean to dirty.
+ * As such, each flush only touches the settings that were actually changed,
+ * rather than every cached user.
+ * <p>
+ * All of the values written in one flush are grouped by column and sent to the
+ * database with JDBC batching, inside of a single transaction. If the flush
+ * fails, the transaction is rolled back and every value in it becomes dirty
+ * again, to be retried on the next flush.
+ * <p>
+ * The exception is when the database rejects the values themselves, such as
+ * for violating a constraint. One such value would otherwise fail every flush
+ * after it forever. Instead, each value is written again on its own, and the
+ * values which are rejected again are dropped.
+ *
+ * @see UserSettings
+ */
+class SettingsFlusher {
+
+	private static class Write {
+
+		private final CachedSQL<?> value;
+		private final long discordId;
+		private final Object flushed;
+
+		private Write(CachedSQL<?> value, long discordId, Object flushed) {
+			this.value = value;
+			this.discordId = discordId;
+			this.flushed = flushed;
+		}
+
+	}
+
+	private final DBRouter router;
+	private final int maxBatch;
+	private final Queue<UserSettings> dirty;
+	private final LongAdder flushed;
+	private final LongAdder batches;
+	private final LongAdder dropped;
+
+	/**
+	 * Constructs a new {@code SettingsFlusher}.
+	 *
+	 * @param router
+	 *            the database router.
+	 * @param maxBatch
+	 *            the maximum number of updates sent in one batch.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxBatch} is not positive.
+	 */
+	SettingsFlusher(DBRouter router, int maxBatch) {
+		if (maxBatch <= 0) {
+			throw new IllegalArgumentException("maxBatch must be positive");
+		}
+		this.router = router;
+		this.maxBatch = maxBatch;
+		this.dirty = new ConcurrentLinkedQueue<>();
+		this.flushed = new LongAdder();
+		this.batches = new LongAdder();
+		this.dropped = new LongAdder();
+	}
+
+	/**
+	 * Queues settings to be written back on the next flush.
+	 * <p>
+	 * Settings which are already queued will not be queued again.
+	 *
+	 * @param settings
+	 *            the settings to queue.
+	 * @throws NullPointerException
+	 *             if {@code settings} is {@code null}.
+	 */
+	void markDirty(@NotNull UserSettings settings) {
+		Objects.requireNonNull(settings, "settings");
+		if (settings.markQueued()) {
+			dirty.add(settings);
+		}
+	}
+
+	/**
+	 * Writes every queued setting back to the database.
+	 *
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	synchronized void flush() throws SQLException {
+		/*
+		 * Drain the queue before flushing anything. Settings that fail to
+		 * flush are queued again, and would otherwise be retried forever.
+		 */
+		List<UserSettings> pending = new ArrayList<>();
+		UserSettings polled;
+		while ((polled = dirty.poll()) != null) {
+			polled.clearQueued();
+			pending.add(polled);
+		}
+		this.write(pending);
+	}
+
+	/**
+	 * Writes a single user's settings back to the database immediately.
+	 * <p>
+	 * This goes through the same lock as a regular flush. This ensures a
+	 * value can never be written while an older copy of it is still waiting
+	 * to be committed.
+	 *
+	 * @param settings
+	 *            the settings to write.
+	 * @throws NullPointerException
+	 *             if {@code settings} is {@code null}.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	synchronized void flush(@NotNull UserSettings settings)
+			throws SQLException {
+		Objects.requireNonNull(settings, "settings");
+		this.write(Collections.singletonList(settings));
+	}
+
+	private void write(List<UserSettings> pending) throws SQLException {
+		Map<SQLQuery, List<Write>> columns = new LinkedHashMap<>();
+		int count = 0;
+		for (UserSettings settings : pending) {
+			for (CachedSQL<?> value : settings.getCached()) {
+				if (!value.isDirty()) {
+					continue;
+				}
+				List<Write> writes = columns.get(value.getUpsert());
+				if (writes == null) {
+					writes = new ArrayList<>();
+					columns.put(value.getUpsert(), writes);
+				}
+				writes.add(new Write(value, settings.getDiscordId(),
+						value.markClean()));
+				count++;
+			}
+		}
+		if (count <= 0) {
+			return;
+		}
+
+		try {
+			router.write(conn -> {
+				for (Map.Entry<SQLQuery, List<Write>> entry : columns
+						.entrySet()) {
+					this.writeColumn(conn, entry.getKey(), entry.getValue());
+				}
+				return null;
+			});
+			flushed.add(count);
+
+			/*
+			 * This write touches many users at once, so each of them must be
+			 * pinned to the primary separately.
+			 */
+			for (List<Write> writes : columns.values()) {
+				for (Write write : writes) {
+					router.pin(write.discordId);
+				}
+			}
+		} catch (SQLException e) {
+			if (!this.isDataError(e)) {
+				this.markDirty(columns);
+				throw e;
+			}
+			this.writeEach(columns);
+		} catch (RuntimeException e) {
+			this.markDirty(columns);
+			throw e;
+		}
+	}
+
+	/*
+	 * This also covers failing to get a connection in the first place, in
+	 * which case nothing was written either.
+	 */
+	private void markDirty(Map<SQLQuery, List<Write>> columns) {
+		for (List<Write> writes : columns.values()) {
+			for (Write write : writes) {
+				write.value.markDirty();
+			}
+		}
+	}
+
+	/*
+	 * The driver may wrap the error, such as in a BatchUpdateException, so
+	 * every cause is checked.
+	 */
+	private boolean isDataError(Throwable error) {
+		for (Throwable cause = error; cause != null; cause =
+				cause.getCause()) {
+			if (cause instanceof SQLException && router.getDialect()
+					.isDataError((SQLException) cause)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Only used once a batch has been rejected for its values. Each value is
+	 * written in a transaction of its own, so the bad ones can be told apart
+	 * from the rest. If the database fails for any other reason, then there
+	 * is no point in trying the remaining values until the next flush.
+	 */
+	private void writeEach(Map<SQLQuery, List<Write>> columns)
+			throws SQLException {
+		Exception failure = null;
+		for (Map.Entry<SQLQuery, List<Write>> entry : columns.entrySet()) {
+			SQLQuery upsert = entry.getKey();
+			for (Write write : entry.getValue()) {
+				if (failure != null) {
+					write.value.markDirty();
+					continue;
+				}
+
+				try {
+					router.write(conn -> {
+						this.writeColumn(conn, upsert,
+								Collections.singletonList(write));
+						return null;
+					});
+					flushed.increment();
+					router.pin(write.discordId);
+				} catch (SQLException e) {
+					if (!this.isDataError(e)) {
+						write.value.markDirty();
+						failure = e;
+						continue;
+					}
+
+					/*
+					 * The value stays cached as it is, it is only never
+					 * written back. It will be replaced the next time the
+					 * user changes it, or once the user is reloaded.
+					 */
+					dropped.increment();
+					/* TODO: Use Log4j2 */
+					System.err.println("Dropped setting for user "
+							+ write.discordId + ", rejected by database");
+					e.printStackTrace();
+				} catch (RuntimeException e) {
+					write.value.markDirty();
+					failure = e;
+				}
+			}
+		}
+		if (failure instanceof SQLException) {
+			throw (SQLException) failure;
+		} else if (failure != null) {
+			throw (RuntimeException) failure;
+		}
+	}
+
+	private void writeColumn(Connection conn, SQLQuery upsert,
+			List<Write> writes) throws SQLException {
+		String sql = upsert.getSQL(router.getDialect());
+		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+			int batched = 0;
+			for (Write write : writes) {
+				upsert.bind(stmt, write.discordId, write.flushed);
+				stmt.addBatch();
+				if (++batched >= maxBatch) {
+					stmt.executeBatch();
+					batches.increment();
+					batched = 0;
+				}
+			}
+			if (batched > 0) {
+				stmt.executeBatch();
+				batches.increment();
+			}
+		}
+	}
+
+	/**
+	 * Returns how many settings are waiting to be flushed.
+	 *
+	 * @return how many settings are waiting to be flushed.
+	 */
+	int getPending() {
+		return dirty.size();
+	}
+
+	/**
+	 * Returns how many setting values have been flushed.
+	 *
+	 * @return how many setting values have been flushed.
+	 */
+	long getFlushed() {
+		return flushed.sum();
+	}
+
+	/**
+	 * Returns how many batches have been sent to the database.
+	 *
+	 * @return how many batches have been sent to the database.
+	 */
+	long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * Returns how many setting values were dropped, because the database
+	 * rejected them.
+	 *
+	 * @return how many setting values were dropped.
+	 */
+	long getDropped() {
+		return dropped.sum();
+	}
+
+}
@@ -0,0 +1,129 @@
+package net.whirvis.mc.discraft.bot.user;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A short lived cache of Discord IDs which are known to not be registered.
+ * <p>
+ * This cache is direct-mapped, each Discord ID can only ever occupy one slot.
+ * When two IDs map to the same slot, the most recent one wins. This makes the
+ * cache lossy, but it means it takes up a fixed amount of memory (two longs
+ * per slot) and never needs to be locked. Losing an entry only costs an extra
+ * database query, it can never make a registered user appear unregistered.
+ */
+class UnregisteredCache {
+
+	private final AtomicLongArray ids;
+	private final AtomicLongArray expiries;
+	private final int slotMask;
+	private final long ttl;
+
+	private final LongAdder hits;
+
+	/**
+	 * Constructs a new {@code UnregisteredCache}.
+	 *
+	 * @param slots
+	 *            the number of slots, rounded up to a power of two.
+	 * @param ttl
+	 *            how long an entry lives, in milliseconds. A value of zero
+	 *            disables the cache entirely.
+	 * @throws IllegalArgumentException
+	 *             if {@code slots} is not positive or {@code ttl} is
+	 *             negative.
+	 */
+	UnregisteredCache(int slots, long ttl) {
+		if (slots <= 0) {
+			throw new IllegalArgumentException("slots must be positive");
+		} else if (ttl < 0) {
+			throw new IllegalArgumentException("ttl cannot be negative");
+		}
+		int count = Integer.highestOneBit(slots);
+		if (count < slots) {
+			count <<= 1;
+		}
+
+		this.ids = new AtomicLongArray(count);
+		this.expiries = new AtomicLongArray(count);
+		this.slotMask = count - 1;
+		this.ttl = ttl;
+
+		this.hits = new LongAdder();
+	}
+
+	private int slotFor(long discordId) {
+		long hash = discordId * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 32) & slotMask;
+	}
+
+	/**
+	 * Returns if a Discord ID is known to not be registered.
+	 *
+	 * @param discordId
+	 *            the Discord ID.
+	 * @return {@code true} if {@code discordId} is known to not be registered,
+	 *         {@code false} if it is unknown.
+	 */
+	boolean contains(long discordId) {
+		int slot = this.slotFor(discordId);
+		long expiry = expiries.get(slot);
+		if (expiry == 0L || ids.get(slot) != discordId) {
+			return false;
+		} else if (System.currentTimeMillis() >= expiry) {
+			return false;
+		}
+
+		/*
+		 * If the expiry changed while reading the ID, another thread wrote
+		 * to this slot in the meantime. Treat it as unknown to be safe.
+		 */
+		if (expiries.get(slot) != expiry) {
+			return false;
+		}
+		hits.increment();
+		return true;
+	}
+
+	/**
+	 * Marks a Discord ID as not registered.
+	 *
+	 * @param discordId
+	 *            the Discord ID.
+	 */
+	void add(long discordId) {
+		if (ttl <= 0) {
+			return;
+		}
+		int slot = this.slotFor(discordId);
+		expiries.set(slot, 0L);
+		ids.set(slot, discordId);
+		expiries.set(slot, System.currentTimeMillis() + ttl);
+	}
+
+	/**
+	 * Removes a Discord ID from this cache.
+	 * <p>
+	 * This must be called when a user is registered, so they will not be
+	 * mistaken for being unregistered.
+	 *
+	 * @param discordId
+	 *            the Discord ID.
+	 */
+	void remove(long discordId) {
+		int slot = this.slotFor(discordId);
+		if (ids.get(slot) == discordId) {
+			expiries.set(slot, 0L);
+		}
+	}
+
+	/**
+	 * Returns how many lookups were answered by this cache.
+	 *
+	 * @return how many lookups were answered by this cache.
+	 */
+	long getHits() {
+		return hits.sum();
+	}
+
+}
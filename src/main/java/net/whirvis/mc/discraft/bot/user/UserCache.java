@@ -0,0 +1,416 @@
+package net.whirvis.mc.discraft.bot.user;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import net.whirvis.mc.discraft.bot.util.LongMap;
+
+/**
+ * The cache of users kept in memory by a {@link UserManager}.
+ * <p>
+ * Users are spread across a fixed number of segments by their Discord ID, each
+ * with their own read/write lock. Lookups only take a read lock, so they never
+ * block each other. Writes and evictions only lock the segment they touch, so
+ * there is never a lock held over the entire cache.
+ * <p>
+ * The cache is bounded. Each segment holds at most its share of the maximum
+ * number of entries. When a segment is full, a few of its users are sampled
+ * from a random position, and the least recently referenced one that is not
+ * currently referenced is evicted to make room. This keeps inserts cheap no
+ * matter how large a segment is. If every sampled user is referenced, the
+ * segment is allowed to grow past its share until the next sweep, as
+ * referenced users must stay cached.
+ * <p>
+ * Evicted users are written back <i>before</i> they are removed, and only
+ * removed if they were not referenced in the meantime. Otherwise, another
+ * thread could miss the cache and load the user again from the database
+ * before their settings were written.
+ */
+class UserCache {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+	private static final int EVICTION_SAMPLES = 8;
+	private static final int EVICTION_ATTEMPTS = 3;
+
+	private static class Segment {
+
+		private final ReentrantReadWriteLock lock;
+		private final LongMap<DiscraftUser> users;
+
+		private Segment() {
+			this.lock = new ReentrantReadWriteLock();
+			this.users = new LongMap<>();
+		}
+
+	}
+
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final int segmentCapacity;
+	private final Predicate<DiscraftUser> onEviction;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+
+	/**
+	 * Constructs a new {@code UserCache}.
+	 *
+	 * @param segments
+	 *            the number of segments, rounded up to a power of two.
+	 * @param maxEntries
+	 *            the maximum number of cached users.
+	 * @param onEviction
+	 *            called with each user about to be evicted to make room for
+	 *            another, after the segment has been unlocked. It should
+	 *            write the user back, and return {@code false} if that
+	 *            failed, in which case the user is kept.
+	 * @throws NullPointerException
+	 *             if {@code onEviction} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code segments} or {@code maxEntries} are not positive.
+	 */
+	UserCache(int segments, int maxEntries,
+			@NotNull Predicate<DiscraftUser> onEviction) {
+		this.onEviction = Objects.requireNonNull(onEviction, "onEviction");
+		if (segments <= 0) {
+			throw new IllegalArgumentException("segments must be positive");
+		} else if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		int count = Integer.highestOneBit(segments);
+		if (count < segments) {
+			count <<= 1;
+		}
+
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			this.segments[i] = new Segment();
+		}
+		this.segmentMask = count - 1;
+		this.segmentCapacity = Math.max(1, (maxEntries + count - 1) / count);
+
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	/**
+	 * Constructs a new {@code UserCache} with the default number of segments.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of cached users.
+	 * @param onEviction
+	 *            called with each user about to be evicted to make room for
+	 *            another, after the segment has been unlocked. It should
+	 *            write the user back, and return {@code false} if that
+	 *            failed, in which case the user is kept.
+	 * @throws NullPointerException
+	 *             if {@code onEviction} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries} is not positive.
+	 */
+	UserCache(int maxEntries, @NotNull Predicate<DiscraftUser> onEviction) {
+		this(DEFAULT_SEGMENTS, maxEntries, onEviction);
+	}
+
+	private Segment segmentFor(long discordId) {
+		/*
+		 * Discord IDs are snowflakes, the lowest bits of which are a counter
+		 * that is usually zero. Mix in the higher bits so the users are spread
+		 * out evenly across all segments.
+		 */
+		long hash = discordId ^ (discordId >>> 32);
+		hash ^= (hash >>> 16);
+		return segments[(int) hash & segmentMask];
+	}
+
+	/**
+	 * Returns a cached user and references them.
+	 * <p>
+	 * The reference is taken while the segment is still locked. This ensures
+	 * the user cannot be evicted between being found and being referenced.
+	 *
+	 * @param discordId
+	 *            the Discord ID of the user.
+	 * @return the cached user, {@code null} if they are not cached.
+	 */
+	@Nullable
+	DiscraftUser get(long discordId) {
+		return this.get(discordId, true);
+	}
+
+	/**
+	 * Returns a cached user and references them.
+	 * <p>
+	 * The reference is taken while the segment is still locked. This ensures
+	 * the user cannot be evicted between being found and being referenced.
+	 *
+	 * @param discordId
+	 *            the Discord ID of the user.
+	 * @param record
+	 *            {@code true} if this lookup should count towards the hits
+	 *            and misses of this cache, {@code false} otherwise.
+	 * @return the cached user, {@code null} if they are not cached.
+	 */
+	@Nullable
+	DiscraftUser get(long discordId, boolean record) {
+		Segment segment = this.segmentFor(discordId);
+		segment.lock.readLock().lock();
+		try {
+			DiscraftUser user = segment.users.get(discordId);
+			if (user != null) {
+				user.updateRefCount();
+			}
+			if (record) {
+				(user != null ? hits : misses).increment();
+			}
+			return user;
+		} finally {
+			segment.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts a hit for a lookup made with {@link #get(long, boolean)} which
+	 * did not record itself.
+	 */
+	void recordHit() {
+		hits.increment();
+	}
+
+	/**
+	 * Caches a user if they are not already cached.
+	 * <p>
+	 * If another thread cached the same user first, that instance is kept
+	 * and returned instead. This ensures there is only ever one instance of
+	 * a user in memory at a time.
+	 *
+	 * @param user
+	 *            the user to cache.
+	 * @param reference
+	 *            {@code true} if the returned user should be referenced,
+	 *            {@code false} otherwise.
+	 * @return the cached user.
+	 * @throws NullPointerException
+	 *             if {@code user} is {@code null}.
+	 */
+	@NotNull
+	DiscraftUser putIfAbsent(@NotNull DiscraftUser user, boolean reference) {
+		Objects.requireNonNull(user, "user");
+		long discordId = user.getDiscordId();
+		Segment segment = this.segmentFor(discordId);
+		DiscraftUser cached = null;
+		DiscraftUser victim = null;
+		segment.lock.writeLock().lock();
+		try {
+			cached = segment.users.get(discordId);
+			if (cached == null) {
+				segment.users.put(discordId, user);
+				cached = user;
+				if (segment.users.size() > segmentCapacity) {
+					victim = this.chooseVictim(segment, user);
+				}
+			}
+			if (reference) {
+				cached.updateRefCount();
+			}
+		} finally {
+			segment.lock.writeLock().unlock();
+		}
+
+		if (victim != null) {
+			this.evict(segment, victim, user);
+		}
+		return cached;
+	}
+
+	/**
+	 * Chooses a user to evict from a segment, by sampling a few of its users
+	 * from a random position. Users who are currently referenced are never
+	 * chosen.
+	 * <p>
+	 * The segment <i>must</i> be write locked by the calling thread.
+	 *
+	 * @param segment
+	 *            the segment to evict from.
+	 * @param keep
+	 *            a user which must not be chosen, such as the one just
+	 *            added to the segment.
+	 * @return the least recently referenced user sampled, {@code null} if
+	 *         every user sampled is currently referenced.
+	 */
+	@Nullable
+	private DiscraftUser chooseVictim(@NotNull Segment segment,
+			@NotNull DiscraftUser keep) {
+		int position = ThreadLocalRandom.current().nextInt();
+		DiscraftUser victim = null;
+		for (DiscraftUser user : segment.users.valuesNear(position,
+				EVICTION_SAMPLES)) {
+			if (user == keep || user.hasReference()) {
+				continue;
+			} else if (victim == null
+					|| user.getLastReffed() < victim.getLastReffed()) {
+				victim = user;
+			}
+		}
+		return victim;
+	}
+
+	/*
+	 * The victim is written back while the segment is unlocked, and only
+	 * removed afterwards if it was not referenced in the meantime. If it was,
+	 * or another thread already made room, a new victim is chosen. The
+	 * number of attempts is capped, as the segment is allowed to grow past
+	 * its share for a while.
+	 */
+	private void evict(Segment segment, DiscraftUser victim,
+			DiscraftUser keep) {
+		for (int i = 0; victim != null && i < EVICTION_ATTEMPTS; i++) {
+			long lastReffed = victim.getLastReffed();
+			if (!onEviction.test(victim)) {
+				return; /* could not be written back, keep it for now */
+			}
+
+			long discordId = victim.getDiscordId();
+			segment.lock.writeLock().lock();
+			try {
+				if (segment.users.size() <= segmentCapacity) {
+					return;
+				} else if (segment.users.get(discordId) == victim
+						&& !victim.hasReference()
+						&& victim.getLastReffed() == lastReffed) {
+					segment.users.remove(discordId);
+					evictions.increment();
+					return;
+				}
+				victim = this.chooseVictim(segment, keep);
+			} finally {
+				segment.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Removes a user from the cache, but only if they are still cached and
+	 * pass the given condition.
+	 * <p>
+	 * The condition is tested while the segment is locked. As such, no other
+	 * thread can reference the user while it is being tested.
+	 *
+	 * @param user
+	 *            the user to remove.
+	 * @param condition
+	 *            the condition the user must pass.
+	 * @return {@code true} if the user was removed, {@code false} otherwise.
+	 * @throws NullPointerException
+	 *             if {@code user} or {@code condition} are {@code null}.
+	 */
+	boolean removeIf(@NotNull DiscraftUser user,
+			@NotNull Predicate<DiscraftUser> condition) {
+		Objects.requireNonNull(user, "user");
+		Objects.requireNonNull(condition, "condition");
+		long discordId = user.getDiscordId();
+		Segment segment = this.segmentFor(discordId);
+		segment.lock.writeLock().lock();
+		try {
+			if (segment.users.get(discordId) != user
+					|| !condition.test(user)) {
+				return false;
+			}
+			segment.users.remove(discordId);
+			evictions.increment();
+			return true;
+		} finally {
+			segment.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of every cached user.
+	 * <p>
+	 * Each segment is copied one at a time, so the snapshot may not reflect
+	 * changes made while it was being taken.
+	 *
+	 * @return a snapshot of every cached user.
+	 */
+	@NotNull
+	List<DiscraftUser> values() {
+		List<DiscraftUser> values = new ArrayList<>();
+		for (Segment segment : segments) {
+			segment.lock.readLock().lock();
+			try {
+				for (DiscraftUser user : segment.users) {
+					values.add(user);
+				}
+			} finally {
+				segment.lock.readLock().unlock();
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns how many users are cached.
+	 *
+	 * @return how many users are cached.
+	 */
+	int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			segment.lock.readLock().lock();
+			try {
+				size += segment.users.size();
+			} finally {
+				segment.lock.readLock().unlock();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of users each segment holds before evicting.
+	 *
+	 * @return the maximum number of users each segment holds.
+	 */
+	int getSegmentCapacity() {
+		return this.segmentCapacity;
+	}
+
+	/**
+	 * Returns how many lookups found a cached user.
+	 *
+	 * @return how many lookups found a cached user.
+	 */
+	long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns how many lookups did not find a cached user.
+	 *
+	 * @return how many lookups did not find a cached user.
+	 */
+	long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns how many users have been evicted, either to make room for
+	 * another user or for being idle.
+	 *
+	 * @return how many users have been evicted.
+	 */
+	long getEvictions() {
+		return evictions.sum();
+	}
+
+}
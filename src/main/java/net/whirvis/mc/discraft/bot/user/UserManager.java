@@ -5,104 +5,335 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import net.dv8tion.jda.api.entities.User;
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.db.DBExecutor;
+import net.whirvis.mc.discraft.bot.util.SQLColumn;
+import net.whirvis.mc.discraft.bot.util.SQLQuery;
+import net.whirvis.mc.discraft.bot.util.SQLTable;
 
 public class UserManager {
 
-	private static final String FUCK =
-			"SELECT discord_id FROM user WHERE discord_id = ?";
+	private static final SQLTable SQL_TABLE = new SQLTable("user");
+	private static final SQLColumn<Long> DISCORD_ID =
+			SQL_TABLE.addKey("discord_id", Long.class);
+	private static final SQLColumn<Timestamp> CREATED =
+			SQL_TABLE.addColumn("created", Timestamp.class);
 
-	private final Connection conn;
+	private static final SQLQuery SELECT_USER =
+			SQL_TABLE.select(DISCORD_ID).where(DISCORD_ID).build();
+	private static final SQLQuery INSERT_USER =
+			SQL_TABLE.insert(DISCORD_ID, CREATED);
 
-	private final Map<Long, DiscraftUser> cachedUsers;
-	private long lastFetchClear;
+	private static final int DEFAULT_MAX_USERS = 10000;
+	private static final long DEFAULT_MAX_IDLE = 10000L;
+	private static final long DEFAULT_UNREGISTERED_TTL = 5000L;
+	private static final int UNREGISTERED_SLOTS = 4096;
+	private static final int DEFAULT_FLUSH_BATCH = 500;
 
-	public UserManager(Connection conn) {
-		this.conn = conn;
-		this.cachedUsers = new HashMap<>();
+	private final DBRouter router;
+	private final DBExecutor executor;
+
+	private final UserCache cachedUsers;
+	private final SettingsFlusher flusher;
+	private final UnregisteredCache unregistered;
+	private final Map<Long, CompletableFuture<DiscraftUser>> loading;
+	private final LongAdder coalescedLoads;
+	private final long maxIdle;
+
+	public UserManager(DBRouter router, DBExecutor executor,
+			int maxUsers, long maxIdle, long unregisteredTtl, int flushBatch) {
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException("maxIdle cannot be negative");
+		}
+		this.router = Objects.requireNonNull(router, "router");
+		this.executor = Objects.requireNonNull(executor, "executor");
+		this.cachedUsers = new UserCache(maxUsers, this::onEviction);
+		this.flusher = new SettingsFlusher(router, flushBatch);
+		this.maxIdle = maxIdle;
+		this.loading = new ConcurrentHashMap<>();
+		this.coalescedLoads = new LongAdder();
+
+		/*
+		 * A user registered while another thread was still looking them up
+		 * can end up wrongly marked as unregistered. This is harmless while
+		 * they are cached, as the cache is always checked first. Capping the
+		 * TTL to the max idle time ensures the mark is gone by the time they
+		 * could have been evicted.
+		 */
+		long ttl = Math.min(unregisteredTtl, maxIdle);
+		this.unregistered = new UnregisteredCache(UNREGISTERED_SLOTS, ttl);
+	}
+
+	public UserManager(DBRouter router, DBExecutor executor) {
+		this(router, executor, DEFAULT_MAX_USERS, DEFAULT_MAX_IDLE,
+				DEFAULT_UNREGISTERED_TTL, DEFAULT_FLUSH_BATCH);
+	}
+
+	/*
+	 * Users are written back before they are evicted, the same way update()
+	 * does. If they can't be written back, they stay cached until they can.
+	 */
+	private boolean onEviction(DiscraftUser user) {
+		try {
+			user.update();
+			return true;
+		} catch (SQLException e) {
+			/* TODO: Use Log4j2 */
+			e.printStackTrace();
+			return false;
+		}
 	}
 
 	public DiscraftUser getUser(long discordId) throws SQLException {
 		DiscraftUser registered = cachedUsers.get(discordId);
 		if (registered != null) {
-			registered.updateRefCount();
 			return registered;
+		} else if (unregistered.contains(discordId)) {
+			return null;
+		}
+
+		/*
+		 * Only one thread may load a user at a time. Any other thread that
+		 * misses the cache for the same user while they're being loaded will
+		 * wait for that load to finish, rather than querying on their own.
+		 */
+		CompletableFuture<DiscraftUser> load = new CompletableFuture<>();
+		CompletableFuture<DiscraftUser> inFlight =
+				loading.putIfAbsent(discordId, load);
+		if (inFlight != null) {
+			coalescedLoads.increment();
+			return this.awaitLoad(inFlight);
+		}
+
+		try {
+			registered = this.loadUser(discordId);
+			load.complete(registered);
+			return registered;
+		} catch (Throwable e) {
+			load.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(discordId, load);
 		}
+	}
 
-		PreparedStatement stmt = conn.prepareStatement(FUCK);
-		stmt.setLong(1, discordId);
-		ResultSet set = stmt.executeQuery();
-		
-		if (!set.next()) {
+	private DiscraftUser loadUser(long discordId) throws SQLException {
+		/*
+		 * Another thread may have finished loading this user between the
+		 * first cache check and this thread claiming the load.
+		 */
+		DiscraftUser registered = cachedUsers.get(discordId, false);
+		if (registered != null) {
+			return registered;
+		} else if (unregistered.contains(discordId)) {
 			return null;
 		}
-		
-		/* sanity check */
-		long storedId = set.getLong("discord_id");
-		if(storedId != discordId) {
-			throw new SQLException("failed sanity check");
+
+		try (Connection conn = router.getReadConnection(discordId);
+				PreparedStatement stmt = SELECT_USER.prepare(conn,
+						router.getDialect(), discordId);
+				ResultSet set = stmt.executeQuery()) {
+			if (!set.next()) {
+				unregistered.add(discordId);
+				return null;
+			}
+
+			/* sanity check */
+			Long storedId = DISCORD_ID.get(set);
+			if (storedId == null || storedId != discordId) {
+				throw new SQLException("failed sanity check");
+			}
+		}
+
+		registered = new DiscraftUser(router, executor, discordId, flusher);
+		return cachedUsers.putIfAbsent(registered, true);
+	}
+
+	private DiscraftUser awaitLoad(CompletableFuture<DiscraftUser> load)
+			throws SQLException {
+		DiscraftUser loaded;
+		try {
+			loaded = load.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SQLException(cause);
 		}
-		
-		registered = new DiscraftUser(conn, discordId);
-		cachedUsers.put(discordId, registered);
-		return registered;
+
+		/*
+		 * The loading thread only referenced the user for itself. Reference
+		 * them again for this thread, re-caching them in the unlikely event
+		 * they were evicted already.
+		 */
+		return loaded != null ? cachedUsers.putIfAbsent(loaded, true) : null;
 	}
-	
+
 	public DiscraftUser getUser(User user) throws SQLException {
 		return getUser(user.getIdLong());
 	}
 
+	public CompletableFuture<DiscraftUser> getUserAsync(long discordId) {
+		/*
+		 * Users who are already cached (or known to be unregistered) don't
+		 * need the database, so there's no need to leave this thread. A miss
+		 * is not counted here, as getUser() counts it again on the executor.
+		 */
+		DiscraftUser registered = cachedUsers.get(discordId, false);
+		if (registered != null) {
+			cachedUsers.recordHit();
+			return CompletableFuture.completedFuture(registered);
+		} else if (unregistered.contains(discordId)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return executor.supply(() -> this.getUser(discordId));
+	}
+
+	public CompletableFuture<DiscraftUser> getUserAsync(User user) {
+		return this.getUserAsync(user.getIdLong());
+	}
+
 	public boolean isRegistered(long discordId) throws SQLException {
-		return getUser(discordId) != null;
+		DiscraftUser user = getUser(discordId);
+		if (user == null) {
+			return false;
+		}
+		user.close();
+		return true;
 	}
 
 	public boolean isRegistered(User user) throws SQLException {
 		return this.isRegistered(user.getIdLong());
 	}
 
+	public CompletableFuture<Boolean> isRegisteredAsync(long discordId) {
+		return this.getUserAsync(discordId).thenApply(user -> {
+			if (user == null) {
+				return false;
+			}
+			user.close();
+			return true;
+		});
+	}
+
+	public CompletableFuture<Boolean> isRegisteredAsync(User user) {
+		return this.isRegisteredAsync(user.getIdLong());
+	}
+
+	/*
+	 * Returns null if the user is already registered. This includes a user
+	 * registered by someone else between the check and the insert, which the
+	 * primary key of the table catches.
+	 */
 	public DiscraftUser createUser(User user) throws SQLException {
 		Objects.requireNonNull(user, "user");
 		if (this.isRegistered(user)) {
-			throw new IllegalStateException("user already registered");
+			return null;
 		}
 
-		Objects.requireNonNull(user, "user");
-
 		long currentTime = System.currentTimeMillis();
 
-		PreparedStatement stmt =
-				conn.prepareStatement("INSERT INTO user VALUES(?, ?)");
-		stmt.setLong(1, user.getIdLong());
-		stmt.setTimestamp(2, new Timestamp(currentTime));
-		stmt.execute();
-		
-		DiscraftUser registered = new DiscraftUser(conn, user.getIdLong());
-		cachedUsers.put(user.getIdLong(), registered);
+		Timestamp created = new Timestamp(currentTime);
+		try {
+			router.write(user.getIdLong(), conn -> {
+				try (PreparedStatement stmt = INSERT_USER.prepare(conn,
+						router.getDialect(), user.getIdLong(), created)) {
+					return stmt.execute();
+				}
+			});
+		} catch (SQLException e) {
+			if (router.getDialect().isConstraintViolation(e)) {
+				return null;
+			}
+			throw e;
+		}
+
+		DiscraftUser registered = new DiscraftUser(router, executor,
+				user.getIdLong(), flusher);
+		registered = cachedUsers.putIfAbsent(registered, false);
+		unregistered.remove(user.getIdLong());
 		return registered;
 	}
-	
+
+	public CompletableFuture<DiscraftUser> createUserAsync(User user) {
+		Objects.requireNonNull(user, "user");
+		return executor.supply(() -> this.createUser(user));
+	}
+
 	public void update() throws SQLException {
 		long currentTime = System.currentTimeMillis();
-		Iterator<DiscraftUser> usersI = cachedUsers.values().iterator();
-		while(usersI.hasNext()) {
-			DiscraftUser user = usersI.next();
-			if(currentTime - user.lastUpdated() >= 1000L) {
+		for (DiscraftUser user : cachedUsers.values()) {
+			/*
+			 * Flush the user before removing them, otherwise they could be
+			 * loaded again from the database before their settings are
+			 * written. The reference check is repeated while the cache is
+			 * locked, in case they were referenced in the meantime.
+			 */
+			if (isEvictable(user, currentTime)) {
 				user.update();
-			}
-			
-			if(currentTime - user.getLastReffed() >= 10000L) {
-				if(!user.hasReference()) {
-					user.update();
-					usersI.remove();
-					System.out.println("wiped from memory");
-				}
+				cachedUsers.removeIf(user, u -> isEvictable(u, currentTime));
 			}
 		}
 	}
 
+	public void flushSettings() throws SQLException {
+		flusher.flush();
+	}
+
+	private boolean isEvictable(DiscraftUser user, long currentTime) {
+		return currentTime - user.getLastReffed() >= maxIdle
+				&& !user.hasReference();
+	}
+
+	public int getCacheSize() {
+		return cachedUsers.size();
+	}
+
+	public long getCacheHits() {
+		return cachedUsers.getHits();
+	}
+
+	public long getCacheMisses() {
+		return cachedUsers.getMisses();
+	}
+
+	public long getCacheEvictions() {
+		return cachedUsers.getEvictions();
+	}
+
+	public long getUnregisteredHits() {
+		return unregistered.getHits();
+	}
+
+	public long getCoalescedLoads() {
+		return coalescedLoads.sum();
+	}
+
+	public int getPendingSettings() {
+		return flusher.getPending();
+	}
+
+	public long getFlushedSettings() {
+		return flusher.getFlushed();
+	}
+
+	public long getSettingsBatches() {
+		return flusher.getBatches();
+	}
+
+	public long getDroppedSettings() {
+		return flusher.getDropped();
+	}
+
 }
@@ -5,98 +5,178 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import net.whirvis.mc.discraft.bot.db.DBRouter;
 import net.whirvis.mc.discraft.bot.util.Cached;
 import net.whirvis.mc.discraft.bot.util.CachedException;
+import net.whirvis.mc.discraft.bot.util.SQLColumn;
+import net.whirvis.mc.discraft.bot.util.SQLQuery;
+import net.whirvis.mc.discraft.bot.util.SQLTable;
 
 public class UserSettings {
 
-	private static List<String> getList(String... values) {
-		List<String> list = new ArrayList<>();
-		for (String s : values) {
-			list.add(s);
-		}
-		return Collections.unmodifiableList(list);
+	private static final SQLTable SQL_TABLE = new SQLTable("user_settings");
+	private static final SQLColumn<Long> DISCORD_ID =
+			SQL_TABLE.addKey("discord_id", Long.class);
+	private static final SQLColumn<String> LANG =
+			SQL_TABLE.addColumn("lang", String.class);
+
+	/*
+	 * The whole row is loaded in one query. Rows are created and values are
+	 * written with upserts, so neither needs to check if the row exists first.
+	 * Each of these is only compiled once, see SQLTable.
+	 */
+	private static final SQLQuery SELECT_ROW =
+			SQL_TABLE.select(LANG).where(DISCORD_ID).build();
+	static final SQLQuery CREATE_ROW = SQL_TABLE.insertIgnore();
+	private static final SQLQuery UPSERT_LANG = SQL_TABLE.upsert(LANG);
+
+	private static void updateColumn(DBRouter router, long discordId,
+			SQLQuery upsert, Object value) throws SQLException {
+		router.write(discordId, conn -> {
+			try (PreparedStatement stmt = upsert.prepare(conn,
+					router.getDialect(), discordId, value)) {
+				return stmt.execute();
+			}
+		});
 	}
 
-	private static final String SQL_TABLE = "user_settings";
-	private static final List<String> SQL_COLUMNS = getList("lang");
+	private final DBRouter router;
+	private final long discordId;
+	private final SettingsFlusher flusher;
+	private final AtomicBoolean queued;
+	private final List<CachedSQL<?>> cached;
+	private final CachedSQL<String> dbLang;
+	private volatile boolean loaded;
+
+	class CachedSQL<T> extends Cached<T> {
+
+		private final SQLColumn<T> column;
+		private final SQLQuery upsert;
+
+		/*
+		 * Values are never fetched one at a time. The whole row is loaded by
+		 * loadRow() before any value is read, see get().
+		 */
+		private CachedSQL(SQLColumn<T> column, SQLQuery upsert) {
+			super(() -> null, value -> flushSQL(upsert, value));
+			this.column = column;
+			this.upsert = upsert;
+			cached.add(this);
+		}
+
+		/*
+		 * The parameters are the Discord ID, followed by the value.
+		 */
+		SQLQuery getUpsert() {
+			return this.upsert;
+		}
 
-	private static void updateColumn(Connection conn, long discordId,
-			String column, Object value) throws SQLException {
-		if (!SQL_COLUMNS.contains(column)) {
-			throw new IllegalArgumentException("no such column");
+		private void loadFrom(ResultSet set) throws SQLException {
+			this.load(set != null ? column.get(set) : null);
 		}
-		PreparedStatement stmt = conn.prepareStatement("UPDATE " + SQL_TABLE
-				+ " SET " + column + " = ? WHERE discord_id = ?");
-		stmt.setObject(1, value);
-		stmt.setLong(2, discordId);
-		stmt.execute();
-	}
 
-	@SuppressWarnings("unchecked")
-	private static <T> T queryColumn(Connection conn, long discordId,
-			String column) throws SQLException {
-		if (!SQL_COLUMNS.contains(column)) {
-			throw new IllegalArgumentException("no such column");
+		@Override
+		public T get() {
+			loadRow();
+			return super.get();
 		}
-		String querySql = "SELECT " + column + " FROM " + SQL_TABLE
-				+ " WHERE discord_id = ?";
-		PreparedStatement stmt = conn.prepareStatement(querySql,
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-
-		ResultSet set = stmt.executeQuery();
-		if (!set.next()) {
-			return null;
-		} else if (set.getLong("discord_id") != discordId) {
-			// TODO: Sanity failure
+
+		@Override
+		protected void onDirty() {
+			flusher.markDirty(UserSettings.this);
 		}
-		return (T) set.getObject(column);
+
 	}
 
-	private final Connection conn;
-	private final long discordId;
-	private final Cached<String> dbLang;
-	
-	private class CachedSQL<T> extends Cached<T> {
-		
-		private final String column;
-		
-		public CachedSQL(String column) {
-			super(null, null);
-			this.column = column;
+	/**
+	 * Loads every setting from the database in a single query, the first
+	 * time any of them are read.
+	 * <p>
+	 * This is synchronized on the settings rather than on each value. That
+	 * way, the lock for the settings is always taken before the lock for a
+	 * value, and two threads reading different values cannot deadlock.
+	 */
+	private synchronized void loadRow() {
+		if (loaded) {
+			return;
 		}
-		
-		private String querySQL() {
-			try {
-				return queryColumn(conn, discordId, "lang");
-			} catch (SQLException e) {
-				throw new CachedException(e);
+
+		try (Connection conn = router.getReadConnection(discordId);
+				PreparedStatement stmt = SELECT_ROW.prepare(conn,
+						router.getDialect(), discordId);
+				ResultSet set = stmt.executeQuery()) {
+			boolean found = set.next();
+			for (CachedSQL<?> value : cached) {
+				value.loadFrom(found ? set : null);
 			}
+		} catch (SQLException e) {
+			throw new CachedException(e);
 		}
+		this.loaded = true;
+	}
 
-		private void flushSQL(String lang) {
-			try {
-				updateColumn(conn, discordId, "lang", lang);
-			} catch (SQLException e) {
-				throw new CachedException(e);
-			}
+	/**
+	 * Loads every setting from the database now, rather than waiting for one
+	 * of them to be read.
+	 */
+	void load() {
+		this.loadRow();
+	}
+
+	boolean isLoaded() {
+		return this.loaded;
+	}
+
+	private void flushSQL(SQLQuery upsert, Object value) {
+		try {
+			updateColumn(router, discordId, upsert, value);
+		} catch (SQLException e) {
+			throw new CachedException(e);
 		}
-		
 	}
 
-	protected UserSettings(Connection conn, long discordId) {
-		this.conn = conn;
+	protected UserSettings(DBRouter router, long discordId,
+			SettingsFlusher flusher) {
+		this.router = router;
 		this.discordId = discordId;
+		this.flusher = Objects.requireNonNull(flusher, "flusher");
+		this.queued = new AtomicBoolean();
+		this.cached = new ArrayList<>();
+
+		this.dbLang = new CachedSQL<>(LANG, UPSERT_LANG);
+	}
+
+	long getDiscordId() {
+		return this.discordId;
+	}
 
-		this.dbLang = null;//new Cached<>(this::queryLang, this::flushLang);
+	boolean markQueued() {
+		return queued.compareAndSet(false, true);
+	}
+
+	void clearQueued() {
+		queued.set(false);
+	}
+
+	List<CachedSQL<?>> getCached() {
+		return this.cached;
+	}
+
+	public boolean isDirty() {
+		for (CachedSQL<?> value : cached) {
+			if (value.isDirty()) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public void update() throws SQLException {
-		dbLang.flush();
+		flusher.flush(this);
 	}
 
 	public String getLang() {
@@ -9,7 +9,12 @@ import java.util.function.Supplier;
  * This container should be used in order to contain a value that must first be
  * fetched from another source. This value may be updated later on, and must be
  * able to be stored somewhere else not immediately.
- * 
+ * <p>
+ * Updating the value marks it as dirty. Only dirty values are written back on
+ * {@link #flush()}, and any number of updates made in between two flushes are
+ * written back as one. Subclasses can override {@link #onDirty()} to find out
+ * when a value needs to be written back.
+ *
  * @param <T>
  *            the value type.
  */
@@ -17,20 +22,24 @@ public class Cached<T> {
 
 	private final Supplier<T> fetch;
 	private final Consumer<T> flush;
+	private final Object flushLock;
 	private T value;
 	private boolean fetched;
+	private boolean dirty;
 
 	public Cached(Supplier<T> fetch, Consumer<T> flush) {
 		this.fetch = fetch;
 		this.flush = flush;
+		this.flushLock = new Object();
 	}
 
 	public Cached(T value, Supplier<T> fetch, Consumer<T> flush) {
 		this(fetch, flush);
-		this.set(value);
+		this.value = value;
+		this.fetched = true;
 	}
 
-	public T get() {
+	public synchronized T get() {
 		if (!fetched) {
 			this.value = fetch.get();
 			this.fetched = true;
@@ -38,13 +47,113 @@ public class Cached<T> {
 		return this.value;
 	}
 
-	public void set(T value) {
+	/**
+	 * Supplies the fetched value from somewhere other than the fetch function,
+	 * such as when many values are loaded from the same source at once.
+	 * <p>
+	 * If this value has already been fetched or set, this method does nothing.
+	 * This ensures an update made before loading is not overwritten.
+	 *
+	 * @param value
+	 *            the fetched value.
+	 * @return {@code true} if the value was loaded, {@code false} otherwise.
+	 */
+	public synchronized boolean load(T value) {
+		if (fetched) {
+			return false;
+		}
 		this.value = value;
 		this.fetched = true;
+		return true;
+	}
+
+	public void set(T value) {
+		boolean becameDirty;
+		synchronized (this) {
+			this.value = value;
+			this.fetched = true;
+			becameDirty = !dirty;
+			this.dirty = true;
+		}
+		if (becameDirty) {
+			this.onDirty();
+		}
+	}
+
+	/**
+	 * Returns if this value has been updated since it was last flushed.
+	 *
+	 * @return {@code true} if this value must be flushed, {@code false}
+	 *         otherwise.
+	 */
+	public synchronized boolean isDirty() {
+		return this.dirty;
 	}
 
+	/**
+	 * Writes this value back, if it has been updated since it was last
+	 * flushed. If writing the value back fails, it remains dirty.
+	 */
 	public void flush() {
-		flush.accept(value);
+		/*
+		 * Flushes must not overlap, otherwise an older value could end up
+		 * being written after a newer one.
+		 */
+		synchronized (flushLock) {
+			T value;
+			synchronized (this) {
+				if (!dirty) {
+					return;
+				}
+				value = this.value;
+				this.dirty = false;
+			}
+
+			try {
+				flush.accept(value);
+			} catch (RuntimeException e) {
+				this.markDirty();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Marks this value as clean and returns it.
+	 * <p>
+	 * This is for callers which write the value back themselves, such as when
+	 * writing many values at once. If writing the value back fails, the caller
+	 * must call {@link #markDirty()} so it will be written again later.
+	 *
+	 * @return the current value.
+	 */
+	public synchronized T markClean() {
+		this.dirty = false;
+		return this.value;
+	}
+
+	/**
+	 * Marks this value as dirty, so it will be written back on the next
+	 * flush.
+	 */
+	public void markDirty() {
+		boolean becameDirty;
+		synchronized (this) {
+			becameDirty = !dirty;
+			this.dirty = true;
+		}
+		if (becameDirty) {
+			this.onDirty();
+		}
+	}
+
+	/**
+	 * Called when this value goes from being clean to being dirty.
+	 * <p>
+	 * By default, this method does nothing.
+	 */
+	protected void onDirty() {
+		/* optional implementation */
 	}
 
 }
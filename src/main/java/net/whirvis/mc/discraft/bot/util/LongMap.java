@@ -0,0 +1,414 @@
+package net.whirvis.mc.discraft.bot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A map from {@code long} keys to object values.
+ * <p>
+ * This map is meant for keys like Discord IDs (snowflakes). Unlike a
+ * {@code HashMap<Long, V>}, keys are never boxed and there are no entry
+ * objects. The keys and values are stored in two parallel arrays using open
+ * addressing with linear probing. Removals shift the following entries back
+ * rather than leaving tombstones, so lookups never slow down over time.
+ * <p>
+ * This map is <i>not</i> thread-safe. It must be externally synchronized if
+ * it is accessed by multiple threads.
+ *
+ * @param <V>
+ *            the value type.
+ */
+public class LongMap<V> implements Iterable<V> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5F;
+
+	/*
+	 * A key of zero marks an empty slot. A real key of zero is stored off to
+	 * the side, so the map can still hold one.
+	 */
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+	private int resizeAt;
+
+	private boolean hasZeroKey;
+	private Object zeroValue;
+
+	/**
+	 * Constructs a new {@code LongMap}.
+	 *
+	 * @param expected
+	 *            the expected number of entries.
+	 * @throws IllegalArgumentException
+	 *             if {@code expected} is negative.
+	 */
+	public LongMap(int expected) {
+		if (expected < 0) {
+			throw new IllegalArgumentException("expected cannot be negative");
+		}
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+	/**
+	 * Constructs a new {@code LongMap}.
+	 */
+	public LongMap() {
+		this(0);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.resizeAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private static int hash(long key) {
+		/*
+		 * The low bits of a snowflake are a counter which is usually zero, so
+		 * the bits must be mixed before they are masked.
+		 */
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	private int slotOf(long key) {
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0L) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value mapped to a key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the value mapped to {@code key}, {@code null} if none.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if (key == 0L) {
+			return (V) zeroValue;
+		}
+		int slot = this.slotOf(key);
+		return slot >= 0 ? (V) values[slot] : null;
+	}
+
+	/**
+	 * Returns if a key has a value mapped to it.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return {@code true} if {@code key} has a value mapped to it,
+	 *         {@code false} otherwise.
+	 */
+	public boolean containsKey(long key) {
+		if (key == 0L) {
+			return hasZeroKey;
+		}
+		return this.slotOf(key) >= 0;
+	}
+
+	/**
+	 * Maps a value to a key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value.
+	 * @return the value previously mapped to {@code key}, {@code null} if
+	 *         none.
+	 * @throws NullPointerException
+	 *             if {@code value} is {@code null}.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V put(long key, @NotNull V value) {
+		Objects.requireNonNull(value, "value");
+		if (key == 0L) {
+			V previous = (V) zeroValue;
+			if (!hasZeroKey) {
+				this.hasZeroKey = true;
+				this.size++;
+			}
+			this.zeroValue = value;
+			return previous;
+		}
+
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0L) {
+			if (keys[slot] == key) {
+				V previous = (V) values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > resizeAt) {
+			this.resize(keys.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the value mapped to a key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the removed value, {@code null} if none.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		if (key == 0L) {
+			V previous = (V) zeroValue;
+			if (hasZeroKey) {
+				this.hasZeroKey = false;
+				this.zeroValue = null;
+				this.size--;
+			}
+			return previous;
+		}
+
+		int slot = this.slotOf(key);
+		if (slot < 0) {
+			return null;
+		}
+		V previous = (V) values[slot];
+		this.shiftBack(slot);
+		this.size--;
+		return previous;
+	}
+
+	/**
+	 * Fills the gap left by a removed entry by shifting back any entries
+	 * that had probed past it. This keeps every entry reachable from its home
+	 * slot without needing tombstones.
+	 */
+	private void shiftBack(int gap) {
+		int slot = gap;
+		while (true) {
+			slot = (slot + 1) & mask;
+			long key = keys[slot];
+			if (key == 0L) {
+				break;
+			}
+
+			/*
+			 * An entry may only move back into the gap if the gap lies between
+			 * its home slot and where it currently is.
+			 */
+			int home = hash(key) & mask;
+			boolean movable = gap <= slot ? (home <= gap || home > slot)
+					: (home <= gap && home > slot);
+			if (movable) {
+				keys[gap] = key;
+				values[gap] = values[slot];
+				gap = slot;
+			}
+		}
+		keys[gap] = 0L;
+		values[gap] = null;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			long key = oldKeys[i];
+			if (key == 0L) {
+				continue;
+			}
+			int slot = hash(key) & mask;
+			while (keys[slot] != 0L) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = oldValues[i];
+		}
+	}
+
+	/**
+	 * Returns the values stored at and after a position in this map, wrapping
+	 * around if need be. Passing a random position samples values at random,
+	 * without iterating over the entire map.
+	 *
+	 * @param position
+	 *            the position to start looking from, any number works.
+	 * @param count
+	 *            the most values to return.
+	 * @return up to {@code count} values, in the order they were found.
+	 * @throws IllegalArgumentException
+	 *             if {@code count} is negative.
+	 */
+	@NotNull
+	@SuppressWarnings("unchecked")
+	public List<V> valuesNear(int position, int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count cannot be negative");
+		}
+		List<V> found = new ArrayList<>(Math.min(count, size));
+		if (hasZeroKey && count > 0) {
+			found.add((V) zeroValue);
+		}
+		int slot = position & mask;
+		for (int i = 0; i < keys.length && found.size() < count; i++) {
+			if (keys[slot] != 0L) {
+				found.add((V) values[slot]);
+			}
+			slot = (slot + 1) & mask;
+		}
+		return found;
+	}
+
+	/**
+	 * Removes every value which passes the given condition.
+	 *
+	 * @param condition
+	 *            the condition.
+	 * @return how many values were removed.
+	 * @throws NullPointerException
+	 *             if {@code condition} is {@code null}.
+	 */
+	@SuppressWarnings("unchecked")
+	public int removeIf(@NotNull Predicate<? super V> condition) {
+		Objects.requireNonNull(condition, "condition");
+		int removed = 0;
+		if (hasZeroKey && condition.test((V) zeroValue)) {
+			this.remove(0L);
+			removed++;
+		}
+
+		/*
+		 * Removing shifts entries around, so the keys to remove must be found
+		 * first and removed afterwards.
+		 */
+		long[] doomed = null;
+		int doomedCount = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0L && condition.test((V) values[i])) {
+				if (doomed == null) {
+					doomed = new long[8];
+				} else if (doomedCount >= doomed.length) {
+					doomed = Arrays.copyOf(doomed, doomedCount << 1);
+				}
+				doomed[doomedCount++] = keys[i];
+			}
+		}
+		for (int i = 0; i < doomedCount; i++) {
+			this.remove(doomed[i]);
+		}
+		return removed + doomedCount;
+	}
+
+	/**
+	 * Removes every entry from this map.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0L);
+		Arrays.fill(values, null);
+		this.hasZeroKey = false;
+		this.zeroValue = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of entries in this map.
+	 *
+	 * @return the number of entries in this map.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns if this map is empty.
+	 *
+	 * @return {@code true} if this map is empty, {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns a copy of every value in this map.
+	 *
+	 * @return a copy of every value in this map.
+	 */
+	@NotNull
+	public List<V> values() {
+		List<V> copy = new ArrayList<>(size);
+		for (V value : this) {
+			copy.add(value);
+		}
+		return copy;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned iterator does not support removal, and must not be used
+	 * after this map has been modified.
+	 */
+	@Override
+	@NotNull
+	public Iterator<V> iterator() {
+		return new Iterator<V>() {
+
+			private boolean zeroPending = hasZeroKey;
+			private int slot = this.nextSlot(0);
+
+			private int nextSlot(int from) {
+				while (from < keys.length && keys[from] == 0L) {
+					from++;
+				}
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return zeroPending || slot < keys.length;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public V next() {
+				if (zeroPending) {
+					this.zeroPending = false;
+					return (V) zeroValue;
+				} else if (slot >= keys.length) {
+					throw new NoSuchElementException();
+				}
+				V value = (V) values[slot];
+				this.slot = this.nextSlot(slot + 1);
+				return value;
+			}
+
+		};
+	}
+
+}
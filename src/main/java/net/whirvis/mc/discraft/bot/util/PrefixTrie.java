@@ -0,0 +1,155 @@
+package net.whirvis.mc.discraft.bot.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable set of prefixes, which text can be matched against.
+ * <p>
+ * Matching walks one node per character of the text, picking the next node
+ * by its first character. As such, matching takes as long as the longest
+ * prefix the text starts with, no matter how many prefixes there are. It also
+ * does not allocate anything, so it can be used on every message the bot
+ * sees.
+ * <p>
+ * Prefixes are matched ignoring case, the same way as
+ * {@link String#regionMatches(boolean, int, String, int, int)} does. Since a
+ * trie is immutable, it is rebuilt whenever its prefixes change.
+ */
+public class PrefixTrie {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static class Node {
+
+		/*
+		 * The keys are sorted, so the next node can be found with a binary
+		 * search. Most nodes only have one child anyway.
+		 */
+		private char[] keys = NO_KEYS;
+		private Node[] children = NO_CHILDREN;
+		private boolean terminal;
+
+		private Node get(char key) {
+			int index = Arrays.binarySearch(keys, key);
+			return index >= 0 ? children[index] : null;
+		}
+
+		private Node getOrAdd(char key) {
+			int index = Arrays.binarySearch(keys, key);
+			if (index >= 0) {
+				return children[index];
+			}
+
+			int insert = -(index + 1);
+			char[] newKeys = new char[keys.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, insert);
+			System.arraycopy(children, 0, newChildren, 0, insert);
+			System.arraycopy(keys, insert, newKeys, insert + 1,
+					keys.length - insert);
+			System.arraycopy(children, insert, newChildren, insert + 1,
+					children.length - insert);
+
+			Node child = new Node();
+			newKeys[insert] = key;
+			newChildren[insert] = child;
+			this.keys = newKeys;
+			this.children = newChildren;
+			return child;
+		}
+
+	}
+
+	private final Node root;
+	private final int size;
+
+	/**
+	 * Constructs a new {@code PrefixTrie}.
+	 *
+	 * @param prefixes
+	 *            the prefixes to match. Duplicates, including those which
+	 *            only differ by case, are only stored once.
+	 * @throws NullPointerException
+	 *             if {@code prefixes} or any of its elements are
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if any of the prefixes are empty.
+	 */
+	public PrefixTrie(@NotNull Collection<String> prefixes) {
+		Objects.requireNonNull(prefixes, "prefixes");
+		this.root = new Node();
+
+		int size = 0;
+		for (String prefix : prefixes) {
+			Objects.requireNonNull(prefix, "prefix");
+			if (prefix.isEmpty()) {
+				throw new IllegalArgumentException("prefix cannot be empty");
+			}
+
+			Node node = root;
+			for (int i = 0; i < prefix.length(); i++) {
+				node = node.getOrAdd(fold(prefix.charAt(i)));
+			}
+			if (!node.terminal) {
+				node.terminal = true;
+				size++;
+			}
+		}
+		this.size = size;
+	}
+
+	/*
+	 * This folds case the same way regionMatches() does when ignoring case.
+	 * Some characters only compare equal once converted to uppercase, and
+	 * others only once converted back to lowercase.
+	 */
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Returns how many distinct prefixes this trie contains.
+	 *
+	 * @return how many distinct prefixes this trie contains.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Finds the shortest prefix in this trie which some text starts with.
+	 * <p>
+	 * Since one prefix can start with another, the text may start with more
+	 * than one of them. To find the next one, call this method again with a
+	 * {@code minLength} one greater than the last length returned.
+	 *
+	 * @param text
+	 *            the text to match.
+	 * @param minLength
+	 *            the minimum length of the prefix to find.
+	 * @return the length of the prefix found, {@code -1} if {@code text} does
+	 *         not start with any prefix of at least {@code minLength}
+	 *         characters.
+	 * @throws NullPointerException
+	 *             if {@code text} is {@code null}.
+	 */
+	public int match(@NotNull String text, int minLength) {
+		Objects.requireNonNull(text, "text");
+		Node node = root;
+		for (int i = 0; i < text.length(); i++) {
+			node = node.get(fold(text.charAt(i)));
+			if (node == null) {
+				return -1;
+			} else if (node.terminal && i + 1 >= minLength) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+}
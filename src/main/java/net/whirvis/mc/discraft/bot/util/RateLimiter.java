@@ -0,0 +1,167 @@
+package net.whirvis.mc.discraft.bot.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how often something can be done for each ID, such as each user.
+ * <p>
+ * This is a token bucket, tracked with the generic cell rate algorithm. Each
+ * ID may use up to {@code burst} tokens at once, and gets one token back
+ * every {@code interval} milliseconds. Rather than storing a count of tokens
+ * and when they were last refilled, each bucket is a single number: the time
+ * at which it will next be full. Taking a token moves that time forward by
+ * one interval, with a compare-and-set. As such, checking a limit never
+ * locks.
+ * <p>
+ * A bucket which is full is the same as one that does not exist. Full
+ * buckets are removed by {@link #sweep()}, so memory is only used for IDs
+ * which have done something recently.
+ */
+public class RateLimiter {
+
+	/*
+	 * A bucket is marked as removed before it is removed from the map. Any
+	 * thread which still has a reference to it will see the mark and look
+	 * the bucket up again, rather than taking a token from one which is no
+	 * longer in the map.
+	 */
+	private static final long REMOVED = Long.MIN_VALUE;
+
+	private final int burst;
+	private final long interval;
+	private final long tolerance;
+	private final Map<Long, AtomicLong> buckets;
+
+	/**
+	 * Constructs a new {@code RateLimiter}.
+	 *
+	 * @param burst
+	 *            how many tokens each ID may use at once.
+	 * @param period
+	 *            how long it takes for an empty bucket to become full again,
+	 *            in milliseconds.
+	 * @throws IllegalArgumentException
+	 *             if {@code burst} or {@code period} are not positive.
+	 */
+	public RateLimiter(int burst, long period) {
+		if (burst <= 0) {
+			throw new IllegalArgumentException("burst must be positive");
+		} else if (period <= 0) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		this.burst = burst;
+		this.interval = Math.max(1L, period / burst);
+		this.tolerance = interval * burst;
+		this.buckets = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns how many tokens each ID may use at once.
+	 *
+	 * @return how many tokens each ID may use at once.
+	 */
+	public int getBurst() {
+		return this.burst;
+	}
+
+	/**
+	 * Returns how often a token is given back, in milliseconds.
+	 *
+	 * @return how often a token is given back.
+	 */
+	public long getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * Returns how many buckets are currently being tracked.
+	 *
+	 * @return how many buckets are being tracked.
+	 */
+	public int getBuckets() {
+		return buckets.size();
+	}
+
+	/**
+	 * Takes a token for an ID.
+	 *
+	 * @param id
+	 *            the ID.
+	 * @return {@code 0} if a token was taken, otherwise how long until one
+	 *         will be available, in milliseconds.
+	 */
+	public long acquire(long id) {
+		long now = System.currentTimeMillis();
+		while (true) {
+			AtomicLong bucket =
+					buckets.computeIfAbsent(id, key -> new AtomicLong(now));
+			long full = bucket.get();
+			if (full == REMOVED) {
+				buckets.remove(id, bucket);
+				continue; /* swept, look up again */
+			}
+
+			long next = Math.max(full, now) + interval;
+			if (next - now > tolerance) {
+				return next - now - tolerance;
+			} else if (bucket.compareAndSet(full, next)) {
+				return 0L;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a token taken for an ID. This is used when something was
+	 * allowed by this limiter, but turned away by another.
+	 *
+	 * @param id
+	 *            the ID.
+	 */
+	public void release(long id) {
+		AtomicLong bucket = buckets.get(id);
+		if (bucket == null) {
+			return;
+		}
+
+		long full;
+		do {
+			full = bucket.get();
+			if (full == REMOVED) {
+				return;
+			}
+		} while (!bucket.compareAndSet(full, full - interval));
+	}
+
+	/**
+	 * Removes every bucket which is full. These buckets are the same as ones
+	 * which do not exist, so removing them does not change any limits.
+	 *
+	 * @return how many buckets were removed.
+	 */
+	public int sweep() {
+		long now = System.currentTimeMillis();
+		int removed = 0;
+		Iterator<Map.Entry<Long, AtomicLong>> entries =
+				buckets.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<Long, AtomicLong> entry = entries.next();
+			AtomicLong bucket = entry.getValue();
+			long full = bucket.get();
+			if (full != REMOVED && full <= now
+					&& bucket.compareAndSet(full, REMOVED)) {
+				buckets.remove(entry.getKey(), bucket);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public String toString() {
+		return burst + " per " + tolerance + "ms";
+	}
+
+}
@@ -0,0 +1,177 @@
+package net.whirvis.mc.discraft.bot.util;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A typed column of an {@link SQLTable}.
+ * <p>
+ * Values are read and written through the column, rather than by calling
+ * {@code getObject()} and {@code setObject()} directly. This way, each value
+ * is converted to and from the Java type of the column in one place, and a
+ * value of the wrong type is caught before it ever reaches the database.
+ *
+ * @param <T>
+ *            the value type.
+ * @see SQLTable#addColumn(String, Class)
+ */
+public class SQLColumn<T> {
+
+	private final SQLTable table;
+	private final String name;
+	private final Class<T> type;
+	private final int sqlType;
+
+	SQLColumn(SQLTable table, String name, Class<T> type) {
+		this.table = table;
+		this.name = name;
+		this.type = type;
+		this.sqlType = sqlTypeOf(type);
+	}
+
+	private static int sqlTypeOf(Class<?> type) {
+		if (type == Long.class) {
+			return Types.BIGINT;
+		} else if (type == Integer.class) {
+			return Types.INTEGER;
+		} else if (type == Boolean.class) {
+			return Types.BOOLEAN;
+		} else if (type == String.class) {
+			return Types.VARCHAR;
+		} else if (type == Timestamp.class) {
+			return Types.TIMESTAMP;
+		}
+		return Types.JAVA_OBJECT;
+	}
+
+	/**
+	 * Returns the table this column belongs to.
+	 *
+	 * @return the table this column belongs to.
+	 */
+	@NotNull
+	public SQLTable getTable() {
+		return this.table;
+	}
+
+	/**
+	 * Returns the column name.
+	 *
+	 * @return the column name.
+	 */
+	@NotNull
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the value type.
+	 *
+	 * @return the value type.
+	 */
+	@NotNull
+	public Class<T> getType() {
+		return this.type;
+	}
+
+	/**
+	 * Reads the value of this column from the current row of a result set.
+	 *
+	 * @param set
+	 *            the result set.
+	 * @return the value, {@code null} if the value is SQL {@code NULL}.
+	 * @throws NullPointerException
+	 *             if {@code set} is {@code null}.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 * @throws ClassCastException
+	 *             if the stored value cannot be converted to the type of this
+	 *             column.
+	 */
+	@Nullable
+	public T get(@NotNull ResultSet set) throws SQLException {
+		Objects.requireNonNull(set, "set");
+		Object value;
+		switch (sqlType) {
+			case Types.BIGINT:
+				value = set.getLong(name);
+				break;
+			case Types.INTEGER:
+				value = set.getInt(name);
+				break;
+			case Types.BOOLEAN:
+				value = set.getBoolean(name);
+				break;
+			case Types.VARCHAR:
+				value = set.getString(name);
+				break;
+			case Types.TIMESTAMP:
+				value = set.getTimestamp(name);
+				break;
+			default:
+				value = set.getObject(name);
+				break;
+		}
+		return set.wasNull() ? null : type.cast(value);
+	}
+
+	/**
+	 * Binds a value for this column to a statement parameter.
+	 *
+	 * @param stmt
+	 *            the statement.
+	 * @param index
+	 *            the parameter index, starting from one.
+	 * @param value
+	 *            the value, may be {@code null}.
+	 * @throws NullPointerException
+	 *             if {@code stmt} is {@code null}.
+	 * @throws ClassCastException
+	 *             if {@code value} is not of the type of this column.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public void set(@NotNull PreparedStatement stmt, int index,
+			@Nullable Object value) throws SQLException {
+		Objects.requireNonNull(stmt, "stmt");
+		if (value == null) {
+			stmt.setNull(index, sqlType);
+			return;
+		}
+
+		T typed = type.cast(value);
+		switch (sqlType) {
+			case Types.BIGINT:
+				stmt.setLong(index, (Long) typed);
+				break;
+			case Types.INTEGER:
+				stmt.setInt(index, (Integer) typed);
+				break;
+			case Types.BOOLEAN:
+				stmt.setBoolean(index, (Boolean) typed);
+				break;
+			case Types.VARCHAR:
+				stmt.setString(index, (String) typed);
+				break;
+			case Types.TIMESTAMP:
+				stmt.setTimestamp(index, (Timestamp) typed);
+				break;
+			default:
+				stmt.setObject(index, typed);
+				break;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return table.getName() + "." + name;
+	}
+
+}
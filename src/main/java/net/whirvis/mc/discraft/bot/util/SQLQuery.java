@@ -0,0 +1,240 @@
+package net.whirvis.mc.discraft.bot.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+
+import net.whirvis.mc.discraft.bot.db.SQLDialect;
+
+/**
+ * A compiled query on an {@link SQLTable}.
+ * <p>
+ * The SQL text of a query is built once, when it is compiled, for every
+ * supported {@link SQLDialect}. Running the query afterwards only looks the
+ * text up. Since the text is always the same string, the statement cache of
+ * the connection pool can hand back the statement prepared the last time the
+ * query was run.
+ * <p>
+ * Queries should be compiled once and kept in a constant, see
+ * {@link SQLTable#select(SQLColumn...)} and its siblings.
+ */
+public class SQLQuery {
+
+	/**
+	 * Builds an {@code SQLQuery} with a {@code WHERE} clause.
+	 */
+	public static class Builder {
+
+		private final SQLTable table;
+		private final String shape;
+		private final String base;
+		private final List<SQLColumn<?>> params;
+		private final List<SQLColumn<?>> results;
+		private final List<Where> where;
+
+		Builder(SQLTable table, String shape, String base,
+				List<SQLColumn<?>> params, List<SQLColumn<?>> results) {
+			this.table = table;
+			this.shape = shape;
+			this.base = base;
+			this.params = params;
+			this.results = results;
+			this.where = new ArrayList<>();
+		}
+
+		/**
+		 * Adds a condition to the query. Conditions are joined with
+		 * {@code AND}.
+		 *
+		 * @param condition
+		 *            the condition.
+		 * @return this builder.
+		 * @throws NullPointerException
+		 *             if {@code condition} is {@code null}.
+		 * @throws IllegalArgumentException
+		 *             if the condition is on a column of another table.
+		 */
+		@NotNull
+		public Builder where(@NotNull Where condition) {
+			Objects.requireNonNull(condition, "condition");
+			table.checkColumn(condition.column);
+			where.add(condition);
+			return this;
+		}
+
+		/**
+		 * Adds a condition to the query, checking a column for equality.
+		 *
+		 * @param column
+		 *            the column.
+		 * @return this builder.
+		 * @throws NullPointerException
+		 *             if {@code column} is {@code null}.
+		 * @throws IllegalArgumentException
+		 *             if {@code column} belongs to another table.
+		 */
+		@NotNull
+		public Builder where(@NotNull SQLColumn<?> column) {
+			return this.where(new Where(column));
+		}
+
+		/**
+		 * Compiles the query.
+		 * <p>
+		 * If a query of the same shape has already been compiled for this
+		 * table, that query is returned instead.
+		 *
+		 * @return the compiled query.
+		 */
+		@NotNull
+		public SQLQuery build() {
+			StringBuilder sql = new StringBuilder(base);
+			StringBuilder key = new StringBuilder(shape);
+			List<SQLColumn<?>> bound = new ArrayList<>(params);
+			for (int i = 0; i < where.size(); i++) {
+				Where condition = where.get(i);
+				sql.append(i == 0 ? " WHERE " : " AND ");
+				sql.append(condition.column.getName()).append(' ')
+						.append(condition.operator).append(" ?");
+				key.append(i == 0 ? "|where:" : ",")
+						.append(condition.column.getName())
+						.append(condition.operator);
+				bound.add(condition.column);
+			}
+
+			String text = sql.toString();
+			return table.compile(key.toString(),
+					dialect -> text, bound, results);
+		}
+
+	}
+
+	private final String[] sql;
+	private final List<SQLColumn<?>> params;
+	private final List<SQLColumn<?>> results;
+
+	SQLQuery(Function<SQLDialect, String> compiler,
+			List<SQLColumn<?>> params, List<SQLColumn<?>> results) {
+		SQLDialect[] dialects = SQLDialect.values();
+		this.sql = new String[dialects.length];
+		for (SQLDialect dialect : dialects) {
+			sql[dialect.ordinal()] = compiler.apply(dialect);
+		}
+		this.params = Collections.unmodifiableList(new ArrayList<>(params));
+		this.results = Collections.unmodifiableList(new ArrayList<>(results));
+	}
+
+	/**
+	 * Returns the SQL text of this query.
+	 *
+	 * @param dialect
+	 *            the SQL dialect.
+	 * @return the SQL text for {@code dialect}.
+	 * @throws NullPointerException
+	 *             if {@code dialect} is {@code null}.
+	 */
+	@NotNull
+	public String getSQL(@NotNull SQLDialect dialect) {
+		Objects.requireNonNull(dialect, "dialect");
+		return sql[dialect.ordinal()];
+	}
+
+	/**
+	 * Returns the columns of the parameters of this query, in the order they
+	 * must be bound.
+	 *
+	 * @return the parameter columns.
+	 */
+	@NotNull
+	public List<SQLColumn<?>> getParameters() {
+		return this.params;
+	}
+
+	/**
+	 * Returns the columns selected by this query.
+	 *
+	 * @return the selected columns, empty if this query selects nothing.
+	 */
+	@NotNull
+	public List<SQLColumn<?>> getResults() {
+		return this.results;
+	}
+
+	/**
+	 * Prepares this query and binds its parameters.
+	 * <p>
+	 * Each parameter is bound through its column, so a value of the wrong
+	 * type is rejected before the query is sent.
+	 *
+	 * @param conn
+	 *            the database connection.
+	 * @param dialect
+	 *            the SQL dialect of the database.
+	 * @param values
+	 *            the parameter values, in the order given by
+	 *            {@link #getParameters()}.
+	 * @return the prepared statement, which the caller must close.
+	 * @throws NullPointerException
+	 *             if {@code conn}, {@code dialect} or {@code values} are
+	 *             {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the wrong number of values are given.
+	 * @throws ClassCastException
+	 *             if a value is not of the type of its column.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	@NotNull
+	public PreparedStatement prepare(@NotNull Connection conn,
+			@NotNull SQLDialect dialect, @NotNull Object... values)
+			throws SQLException {
+		Objects.requireNonNull(conn, "conn");
+		PreparedStatement stmt = conn.prepareStatement(this.getSQL(dialect));
+		try {
+			this.bind(stmt, values);
+		} catch (SQLException | RuntimeException e) {
+			stmt.close();
+			throw e;
+		}
+		return stmt;
+	}
+
+	/**
+	 * Binds the parameters of a statement prepared from this query. This is
+	 * meant for statements that are run more than once, such as in a batch.
+	 *
+	 * @param stmt
+	 *            the statement.
+	 * @param values
+	 *            the parameter values, in the order given by
+	 *            {@link #getParameters()}.
+	 * @throws NullPointerException
+	 *             if {@code stmt} or {@code values} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if the wrong number of values are given.
+	 * @throws ClassCastException
+	 *             if a value is not of the type of its column.
+	 * @throws SQLException
+	 *             if an SQL error occurs.
+	 */
+	public void bind(@NotNull PreparedStatement stmt,
+			@NotNull Object... values) throws SQLException {
+		Objects.requireNonNull(stmt, "stmt");
+		Objects.requireNonNull(values, "values");
+		if (values.length != params.size()) {
+			throw new IllegalArgumentException("expected " + params.size()
+					+ " values, got " + values.length);
+		}
+		for (int i = 0; i < values.length; i++) {
+			params.get(i).set(stmt, i + 1, values[i]);
+		}
+	}
+
+}
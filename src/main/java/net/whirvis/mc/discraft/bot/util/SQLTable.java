@@ -1,23 +1,43 @@
 package net.whirvis.mc.discraft.bot.util;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import net.whirvis.mc.discraft.bot.db.SQLDialect;
+
+/**
+ * A database table, and a builder for the queries run on it.
+ * <p>
+ * The columns of a table are declared once, up front. Each query is then
+ * built from those columns, which are validated when the query is compiled
+ * rather than every time it runs. Compiling a query with the same shape as
+ * one compiled before returns the existing query, so each distinct shape is
+ * only ever turned into SQL text once.
+ * <p>
+ * Every value in a query is bound as a parameter. Table and column names are
+ * the only text that ends up in the SQL, and they may only contain letters,
+ * numbers, and underscores.
+ *
+ * @see SQLQuery
+ */
 public class SQLTable {
 
 	private static final String SQL_ALPHABET =
-			"^[abcdefhijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_]+$";
+			"^[abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_]+$";
 
 	private final String table;
-	private final List<String> columns;
+	private final List<SQLColumn<?>> columns;
+	private final Map<String, SQLQuery> compiled;
+	private SQLColumn<?> key;
 
 	public SQLTable(String table) {
 		this.table = Objects.requireNonNull(table, "table");
@@ -26,71 +46,306 @@ public class SQLTable {
 					+ "letters, numbers, and underscores");
 		}
 		this.columns = new ArrayList<>();
+		this.compiled = new ConcurrentHashMap<>();
 	}
 
-	public void addColumn(String column) {
+	/**
+	 * Declares a column of this table.
+	 *
+	 * @param <T>
+	 *            the value type.
+	 * @param column
+	 *            the column name.
+	 * @param type
+	 *            the value type.
+	 * @return the declared column.
+	 * @throws NullPointerException
+	 *             if {@code column} or {@code type} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code column} is not a valid column name or was already
+	 *             declared, or if {@code type} is primitive.
+	 */
+	@NotNull
+	public synchronized <T> SQLColumn<T> addColumn(@NotNull String column,
+			@NotNull Class<T> type) {
 		Objects.requireNonNull(column, "column");
+		Objects.requireNonNull(type, "type");
 		if (column.length() > 32) {
 			throw new IllegalArgumentException("column.length() > 32");
-		} else if (column.matches(SQL_ALPHABET)) {
+		} else if (!column.matches(SQL_ALPHABET)) {
 			throw new IllegalArgumentException("column name may only contain "
 					+ "letters, numbers, and underscores");
+		} else if (this.hasColumn(column)) {
+			throw new IllegalArgumentException("duplicate column");
+		} else if (type.isPrimitive()) {
+			throw new IllegalArgumentException("type cannot be primitive");
 		}
-		columns.add(column);
-	}
 
-	public void removeColumn(String column) {
-		columns.remove(column);
+		SQLColumn<T> declared = new SQLColumn<>(this, column, type);
+		columns.add(declared);
+		return declared;
 	}
-	
-	private String generateWhere(Where... where) {
-		if(where == null) {
-			return null;
-		} else if(where.length <= 0) {
-			return "";
+
+	/**
+	 * Declares the key column of this table. Upserts use this column to find
+	 * the row that already exists.
+	 *
+	 * @param <T>
+	 *            the value type.
+	 * @param column
+	 *            the column name.
+	 * @param type
+	 *            the value type.
+	 * @return the declared column.
+	 * @throws NullPointerException
+	 *             if {@code column} or {@code type} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code column} is not a valid column name, or if
+	 *             {@code type} is primitive.
+	 * @throws IllegalStateException
+	 *             if this table already has a key.
+	 */
+	@NotNull
+	public synchronized <T> SQLColumn<T> addKey(@NotNull String column,
+			@NotNull Class<T> type) {
+		if (key != null) {
+			throw new IllegalStateException("table already has a key");
 		}
-		
-		StringBuilder whereBuilder = new StringBuilder("WHERE ");
-		for(int i = 0; i < where.length; i++) {
-			//whereBuilder.append();
+		SQLColumn<T> declared = this.addColumn(column, type);
+		this.key = declared;
+		return declared;
+	}
+
+	public String getName() {
+		return this.table;
+	}
+
+	/**
+	 * Returns the key column of this table.
+	 *
+	 * @return the key column, {@code null} if none was declared.
+	 */
+	@Nullable
+	public synchronized SQLColumn<?> getKey() {
+		return this.key;
+	}
+
+	public synchronized List<SQLColumn<?>> getColumns() {
+		return Collections.unmodifiableList(new ArrayList<>(columns));
+	}
+
+	public synchronized boolean hasColumn(String column) {
+		for (SQLColumn<?> declared : columns) {
+			if (declared.getName().equals(column)) {
+				return true;
+			}
 		}
-		return whereBuilder.toString();
+		return false;
 	}
 
-	public void updateColumn(@NotNull Connection conn, @NotNull String column,
-			@Nullable Object value) throws SQLException {
-		Objects.requireNonNull(conn, "conn");
+	void checkColumn(SQLColumn<?> column) {
 		Objects.requireNonNull(column, "column");
-		if (!columns.contains(column)) {
-			throw new IllegalArgumentException("no such column");
+		if (column.getTable() != this) {
+			throw new IllegalArgumentException(
+					column + " does not belong to " + table);
+		}
+	}
+
+	private List<SQLColumn<?>> checkColumns(SQLColumn<?>[] columns,
+			boolean allowEmpty) {
+		Objects.requireNonNull(columns, "columns");
+		if (!allowEmpty && columns.length <= 0) {
+			throw new IllegalArgumentException("no columns given");
+		}
+		for (SQLColumn<?> column : columns) {
+			this.checkColumn(column);
+		}
+		return Arrays.asList(columns);
+	}
+
+	private SQLColumn<?> requireKey() {
+		SQLColumn<?> key = this.getKey();
+		if (key == null) {
+			throw new IllegalStateException("table has no key");
+		}
+		return key;
+	}
+
+	private static String names(List<SQLColumn<?>> columns) {
+		StringBuilder names = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				names.append(", ");
+			}
+			names.append(columns.get(i).getName());
+		}
+		return names.toString();
+	}
+
+	private static String[] nameArray(List<SQLColumn<?>> columns) {
+		String[] names = new String[columns.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = columns.get(i).getName();
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the query compiled for a shape, compiling it if this is the
+	 * first time the shape has been seen.
+	 */
+	SQLQuery compile(String shape, Function<SQLDialect, String> compiler,
+			List<SQLColumn<?>> params, List<SQLColumn<?>> results) {
+		return compiled.computeIfAbsent(shape,
+				key -> new SQLQuery(compiler, params, results));
+	}
+
+	/**
+	 * Starts building a query which selects the given columns.
+	 *
+	 * @param columns
+	 *            the columns to select.
+	 * @return the query builder.
+	 * @throws NullPointerException
+	 *             if {@code columns} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no columns are given, or any of them belong to another
+	 *             table.
+	 */
+	@NotNull
+	public SQLQuery.Builder select(@NotNull SQLColumn<?>... columns) {
+		List<SQLColumn<?>> selected = this.checkColumns(columns, false);
+		String names = names(selected);
+		return new SQLQuery.Builder(this, "select:" + names,
+				"SELECT " + names + " FROM " + table,
+				Collections.emptyList(), selected);
+	}
+
+	/**
+	 * Starts building a query which updates the given columns. The new values
+	 * are the first parameters of the query, followed by those of the
+	 * {@code WHERE} clause.
+	 *
+	 * @param columns
+	 *            the columns to update.
+	 * @return the query builder.
+	 * @throws NullPointerException
+	 *             if {@code columns} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no columns are given, or any of them belong to another
+	 *             table.
+	 */
+	@NotNull
+	public SQLQuery.Builder update(@NotNull SQLColumn<?>... columns) {
+		List<SQLColumn<?>> updated = this.checkColumns(columns, false);
+		StringBuilder sql = new StringBuilder("UPDATE ").append(table)
+				.append(" SET ");
+		for (int i = 0; i < updated.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(updated.get(i).getName()).append(" = ?");
 		}
+		return new SQLQuery.Builder(this, "update:" + names(updated),
+				sql.toString(), updated, Collections.emptyList());
+	}
 
-		PreparedStatement stmt = conn.prepareStatement("UPDATE " + table
-				+ " SET " + column + " = ? WHERE discord_id = ?");
-		
-		stmt.setObject(1, value);
-		//stmt.setLong(2, discordId);
-		stmt.execute();
-	}
-
-	@SuppressWarnings("unchecked")
-	private <T> T queryColumn(Connection conn, long discordId,
-			String column) throws SQLException {
-		//if (!SQL_COLUMNS.contains(column)) {
-		//	throw new IllegalArgumentException("no such column");
-		//}
-		String querySql = "SELECT " + column + " FROM " + table;
-			//	+ " WHERE discord_id = ?";
-		PreparedStatement stmt = conn.prepareStatement(querySql,
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-
-		ResultSet set = stmt.executeQuery();
-		if (!set.next()) {
-			return null;
-		} else if (set.getLong("discord_id") != discordId) {
-			// TODO: Sanity failure
+	/**
+	 * Starts building a query which deletes rows.
+	 *
+	 * @return the query builder.
+	 */
+	@NotNull
+	public SQLQuery.Builder delete() {
+		return new SQLQuery.Builder(this, "delete", "DELETE FROM " + table,
+				Collections.emptyList(), Collections.emptyList());
+	}
+
+	/**
+	 * Compiles a query which inserts a row.
+	 *
+	 * @param columns
+	 *            the columns to insert, in the order their values are bound.
+	 * @return the compiled query.
+	 * @throws NullPointerException
+	 *             if {@code columns} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no columns are given, or any of them belong to another
+	 *             table.
+	 */
+	@NotNull
+	public SQLQuery insert(@NotNull SQLColumn<?>... columns) {
+		List<SQLColumn<?>> inserted = this.checkColumns(columns, false);
+		String names = names(inserted);
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+				.append(" (").append(names).append(") VALUES (");
+		for (int i = 0; i < inserted.size(); i++) {
+			sql.append(i > 0 ? ", ?" : "?");
 		}
-		return (T) set.getObject(column);
+		String text = sql.append(")").toString();
+		return this.compile("insert:" + names, dialect -> text, inserted,
+				Collections.emptyList());
+	}
+
+	/**
+	 * Compiles a query which inserts a row, doing nothing if a row with the
+	 * same key already exists. The key is the first parameter, followed by
+	 * the given columns.
+	 *
+	 * @param columns
+	 *            the other columns to insert, may be empty.
+	 * @return the compiled query.
+	 * @throws NullPointerException
+	 *             if {@code columns} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if any of the columns belong to another table.
+	 * @throws IllegalStateException
+	 *             if this table has no key.
+	 * @see SQLDialect#insertIgnore(String, String, String...)
+	 */
+	@NotNull
+	public SQLQuery insertIgnore(@NotNull SQLColumn<?>... columns) {
+		List<SQLColumn<?>> inserted = this.checkColumns(columns, true);
+		SQLColumn<?> key = this.requireKey();
+
+		List<SQLColumn<?>> params = new ArrayList<>();
+		params.add(key);
+		params.addAll(inserted);
+		String[] names = nameArray(inserted);
+		return this.compile("insertIgnore:" + names(params),
+				dialect -> dialect.insertIgnore(table, key.getName(), names),
+				params, Collections.emptyList());
+	}
+
+	/**
+	 * Compiles a query which inserts a row, updating the given columns
+	 * instead if a row with the same key already exists. The key is the first
+	 * parameter, followed by the given columns.
+	 *
+	 * @param columns
+	 *            the columns to insert or update.
+	 * @return the compiled query.
+	 * @throws NullPointerException
+	 *             if {@code columns} is {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if no columns are given, or any of them belong to another
+	 *             table.
+	 * @throws IllegalStateException
+	 *             if this table has no key.
+	 * @see SQLDialect#upsert(String, String, String...)
+	 */
+	@NotNull
+	public SQLQuery upsert(@NotNull SQLColumn<?>... columns) {
+		List<SQLColumn<?>> upserted = this.checkColumns(columns, false);
+		SQLColumn<?> key = this.requireKey();
+
+		List<SQLColumn<?>> params = new ArrayList<>();
+		params.add(key);
+		params.addAll(upserted);
+		String[] names = nameArray(upserted);
+		return this.compile("upsert:" + names(params),
+				dialect -> dialect.upsert(table, key.getName(), names),
+				params, Collections.emptyList());
 	}
 
 }
@@ -1,14 +1,59 @@
 package net.whirvis.mc.discraft.bot.util;
 
+import java.util.Objects;
 
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A condition in the {@code WHERE} clause of an {@link SQLQuery}.
+ * <p>
+ * A condition only describes the shape of the query, that being the column
+ * and how it is compared. The value it is compared against is bound as a
+ * parameter when the query is run, so the same compiled query can be reused
+ * for every value.
+ */
 public class Where {
-	
-	public final String column;
-	public final Object value;
-	
-	public Where(String column, Object value) {
-		this.column = column;
-		this.value = value;
+
+	private static final String[] OPERATORS =
+			{ "=", "<>", "<", "<=", ">", ">=" };
+
+	public final SQLColumn<?> column;
+	public final String operator;
+
+	/**
+	 * Constructs a new {@code Where}.
+	 *
+	 * @param column
+	 *            the column to compare.
+	 * @param operator
+	 *            the comparison operator, one of {@code =}, {@code <>},
+	 *            {@code <}, {@code <=}, {@code >} or {@code >=}.
+	 * @throws NullPointerException
+	 *             if {@code column} or {@code operator} are {@code null}.
+	 * @throws IllegalArgumentException
+	 *             if {@code operator} is not a supported operator.
+	 */
+	public Where(@NotNull SQLColumn<?> column, @NotNull String operator) {
+		this.column = Objects.requireNonNull(column, "column");
+		this.operator = Objects.requireNonNull(operator, "operator");
+		for (String supported : OPERATORS) {
+			if (supported.equals(operator)) {
+				return;
+			}
+		}
+		throw new IllegalArgumentException("unsupported operator");
 	}
-	
+
+	/**
+	 * Constructs a new {@code Where} which checks a column for equality.
+	 *
+	 * @param column
+	 *            the column to compare.
+	 * @throws NullPointerException
+	 *             if {@code column} is {@code null}.
+	 */
+	public Where(@NotNull SQLColumn<?> column) {
+		this(column, "=");
+	}
+
 }
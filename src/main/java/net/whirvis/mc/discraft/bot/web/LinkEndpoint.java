@@ -1,20 +1,31 @@
 package net.whirvis.mc.discraft.bot.web;
 
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 import io.javalin.http.Context;
 import io.javalin.http.HandlerType;
 import net.dv8tion.jda.api.entities.User;
+import net.whirvis.mc.discraft.bot.db.DBUnavailableException;
+import net.whirvis.mc.discraft.bot.link.LinkConflictException;
 import net.whirvis.mc.discraft.bot.link.LinkManager;
 import net.whirvis.mc.discraft.bot.link.LinkProcess;
+import net.whirvis.mc.discraft.bot.rest.RestPriority;
+import net.whirvis.mc.discraft.bot.rest.RestScheduler;
 
 public class LinkEndpoint extends DiscraftHandler {
 
 	private final LinkManager linkManager;
+	private final RestScheduler outbound;
 
-	public LinkEndpoint(LinkManager linkManager) {
+	public LinkEndpoint(LinkManager linkManager, RestScheduler outbound) {
 		super("/link", HandlerType.GET);
 		this.linkManager = linkManager;
+		this.outbound = outbound;
+	}
+
+	public LinkEndpoint(LinkManager linkManager) {
+		this(linkManager, null);
 	}
 
 	@Override
@@ -26,14 +37,50 @@ public class LinkEndpoint extends DiscraftHandler {
 			return;
 		}
 		
-		LinkProcess link = linkManager.activateCode(UUID.fromString(uuid), code);
+		/*
+		 * The database is not touched on this thread, so a slow query will
+		 * not hold up any other requests. Javalin finishes the response once
+		 * the future completes.
+		 */
+		ctx.result(linkManager.activateCodeAsync(UUID.fromString(uuid), code)
+				.handle((link, cause) -> this.respond(ctx, link, cause)));
+	}
+
+	private String respond(Context ctx, LinkProcess link, Throwable cause) {
+		if (cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if (cause instanceof DBUnavailableException) {
+			ctx.status(503);
+			return "";
+		} else if (cause instanceof LinkConflictException) {
+			/* the Minecraft account is linked to someone else */
+			ctx.status(409);
+			return "";
+		} else if (cause != null) {
+			throw new CompletionException(cause);
+		}
+		return this.respond(ctx, link);
+	}
+
+	private String respond(Context ctx, LinkProcess link) {
 		if (link != null) {
 			User user = link.getUser();
-			user.openPrivateChannel().queue(channel -> channel
-					.sendMessage("You have linked your account!").queue());
+			String msg = "You have linked your account!";
+			if (outbound != null) {
+				/*
+				 * The player is waiting on this in Minecraft, so it is sent
+				 * ahead of any command replies.
+				 */
+				outbound.sendPrivate(user, msg, RestPriority.HIGH);
+			} else {
+				user.openPrivateChannel().queue(
+						channel -> channel.sendMessage(msg).queue());
+			}
 		} else {
-			ctx.res.setStatus(403);
+			ctx.status(403);
 		}
+		return "";
 	}
 
 }
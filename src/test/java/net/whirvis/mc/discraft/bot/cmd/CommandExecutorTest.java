@@ -0,0 +1,94 @@
+package net.whirvis.mc.discraft.bot.cmd;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class CommandExecutorTest {
+
+	private CommandExecutor executor;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		if (executor != null) {
+			executor.shutdown(5L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void eachKeyIsCapped() throws InterruptedException {
+		this.executor = new CommandExecutor("test", 4, 64, 2);
+		CountDownLatch release = new CountDownLatch(1);
+		Runnable blocked = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+
+		assertTrue(executor.submit(1L, blocked));
+		assertTrue(executor.submit(1L, blocked));
+		assertFalse(executor.submit(1L, blocked));
+
+		/* other keys still have room in the executor */
+		assertTrue(executor.submit(2L, blocked));
+		assertEquals(1L, executor.getRejected());
+		assertEquals(3, executor.getQueued());
+
+		release.countDown();
+		assertTrue(executor.shutdown(5L, TimeUnit.SECONDS));
+		assertEquals(0, executor.getQueued());
+		assertEquals(0, executor.getMailboxes());
+	}
+
+	@Test
+	void commandsForAKeyRunInOrder() throws InterruptedException {
+		this.executor = new CommandExecutor("test", 4, 1024, 1024);
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			int index = i;
+			assertTrue(executor.submit(1L, () -> order.add(index)));
+		}
+		assertTrue(executor.shutdown(5L, TimeUnit.SECONDS));
+
+		assertEquals(500, order.size());
+		for (int i = 0; i < order.size(); i++) {
+			assertEquals(i, (int) order.get(i));
+		}
+	}
+
+	@Test
+	void noCommandIsLostUnderContention() throws Exception {
+		this.executor = new CommandExecutor("test", 4, 100000, 100000);
+		AtomicInteger ran = new AtomicInteger();
+		AtomicInteger accepted = new AtomicInteger();
+		Thread[] submitters = new Thread[8];
+		for (int i = 0; i < submitters.length; i++) {
+			submitters[i] = new Thread(() -> {
+				for (int j = 0; j < 5000; j++) {
+					if (executor.submit(j % 4, ran::incrementAndGet)) {
+						accepted.incrementAndGet();
+					}
+				}
+			});
+			submitters[i].start();
+		}
+		for (Thread submitter : submitters) {
+			submitter.join();
+		}
+
+		assertTrue(executor.shutdown(10L, TimeUnit.SECONDS));
+		assertEquals(accepted.get(), ran.get());
+		assertEquals(0, executor.getQueued());
+		assertEquals(0, executor.getMailboxes());
+	}
+
+}
@@ -0,0 +1,196 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConnectionPoolTest {
+
+	private TestDatabase db;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		this.db = new TestDatabase("discraft-pool");
+	}
+
+	@AfterEach
+	void tearDown() {
+		db.close();
+	}
+
+	private ConnectionPool open(PoolSettings settings) {
+		return db.open("test", settings);
+	}
+
+	@Test
+	void connectionsAreReused() throws SQLException {
+		ConnectionPool pool = this.open(new PoolSettings());
+		try (Connection conn = pool.getConnection()) {
+			assertEquals(1, pool.getActive());
+		}
+		try (Connection conn = pool.getConnection()) {
+			assertEquals(1, pool.getTotal());
+		}
+		assertEquals(0, pool.getActive());
+		assertEquals(1, pool.getIdle());
+		assertEquals(2L, pool.getAcquired());
+	}
+
+	@Test
+	void preparedStatementsAreCached() throws SQLException {
+		ConnectionPool pool = this.open(new PoolSettings().maxSize(1));
+		for (int i = 0; i < 3; i++) {
+			try (Connection conn = pool.getConnection();
+					PreparedStatement stmt =
+							conn.prepareStatement("SELECT ?")) {
+				stmt.setInt(1, i);
+				try (ResultSet set = stmt.executeQuery()) {
+					assertTrue(set.next());
+					assertEquals(i, set.getInt(1));
+				}
+			}
+		}
+		assertEquals(1L, pool.getStatementMisses());
+		assertEquals(2L, pool.getStatementHits());
+		assertEquals(0L, pool.getLeakedStatements());
+	}
+
+	@Test
+	void leakedStatementsAreClosedOnReturn() throws SQLException {
+		ConnectionPool pool = this.open(new PoolSettings().maxSize(1));
+		Connection conn = pool.getConnection();
+		PreparedStatement stmt = conn.prepareStatement("SELECT 1");
+		ResultSet set = stmt.executeQuery();
+		conn.close();
+
+		/* both the statement and its result set were left open */
+		assertEquals(2L, pool.getLeakedStatements());
+		assertTrue(stmt.isClosed());
+		assertTrue(set.isClosed());
+
+		/* the leaked statement was reset and given back to the cache */
+		try (Connection again = pool.getConnection();
+				PreparedStatement reused = again.prepareStatement("SELECT 1");
+				ResultSet results = reused.executeQuery()) {
+			assertTrue(results.next());
+		}
+		assertEquals(1L, pool.getStatementHits());
+	}
+
+	@Test
+	void leakedConnectionsAreReportedOnce() throws Exception {
+		ConnectionPool pool = this.open(new PoolSettings().leakThreshold(10L));
+		Connection held = pool.getConnection();
+		try (Connection returned = pool.getConnection()) {
+			assertEquals(0, pool.detectLeaks(), "reported too early");
+		}
+
+		Thread.sleep(50L);
+		assertEquals(1, pool.detectLeaks());
+		assertEquals(0, pool.detectLeaks(), "reported twice");
+		assertEquals(1L, pool.getLeakedConnections());
+
+		held.close();
+		assertEquals(0, pool.detectLeaks());
+	}
+
+	@Test
+	void leakDetectionCanBeDisabled() throws Exception {
+		ConnectionPool pool = this.open(new PoolSettings().leakThreshold(0L));
+		try (Connection held = pool.getConnection()) {
+			Thread.sleep(20L);
+			assertEquals(0, pool.detectLeaks());
+		}
+		assertEquals(0L, pool.getLeakedConnections());
+	}
+
+	@Test
+	void acquireTimesOutWhenSaturated() throws SQLException {
+		ConnectionPool pool = this.open(
+				new PoolSettings().maxSize(1).acquireTimeout(50L));
+		try (Connection held = pool.getConnection()) {
+			assertThrows(SQLTimeoutException.class, pool::getConnection);
+		}
+		assertEquals(1L, pool.getTimeouts());
+
+		/* the permit of the failed borrow must not have been lost */
+		try (Connection conn = pool.getConnection()) {
+			assertEquals(1, pool.getActive());
+		}
+	}
+
+	@Test
+	void failedWritesAreRolledBack() throws SQLException {
+		ConnectionPool pool = this.open(new PoolSettings().maxSize(1));
+		pool.write(conn -> conn.createStatement()
+				.execute("CREATE TABLE t (id INTEGER PRIMARY KEY)"));
+
+		assertThrows(SQLException.class, () -> pool.write(conn -> {
+			conn.createStatement().execute("INSERT INTO t VALUES (1)");
+			return conn.createStatement().execute("INSERT INTO t VALUES (1)");
+		}));
+
+		try (Connection conn = pool.getConnection();
+				PreparedStatement stmt =
+						conn.prepareStatement("SELECT COUNT(*) FROM t");
+				ResultSet set = stmt.executeQuery()) {
+			assertTrue(set.next());
+			assertEquals(0, set.getInt(1));
+			assertTrue(conn.getAutoCommit());
+		}
+	}
+
+	@Test
+	void closedPoolsRefuseConnections() throws SQLException {
+		ConnectionPool pool = this.open(new PoolSettings());
+		Connection held = pool.getConnection();
+		pool.close();
+		assertTrue(pool.isClosed());
+		assertThrows(SQLException.class, pool::getConnection);
+
+		held.close();
+		assertEquals(0, pool.getTotal());
+	}
+
+	@Test
+	void poolsForTheSameDatabaseShareAWriter() throws SQLException {
+		ConnectionPool pool = this.open(new PoolSettings().groupCommit(8));
+		pool.write(conn -> conn.createStatement()
+				.execute("CREATE TABLE t (id INTEGER PRIMARY KEY)"));
+
+		ConnectionPool other =
+				db.open("other", new PoolSettings().groupCommit(8));
+		other.write(conn -> conn.createStatement()
+				.execute("INSERT INTO t VALUES (1)"));
+		assertEquals(2L, other.getGroupedWrites());
+		assertEquals(2L, pool.getGroupedWrites());
+
+		/* the writer keeps running for the pool still open */
+		pool.close();
+		other.write(conn -> conn.createStatement()
+				.execute("INSERT INTO t VALUES (2)"));
+		assertThrows(SQLException.class, () -> pool.write(conn -> null));
+	}
+
+	@Test
+	void writerDoesNotWaitOnItself() throws SQLException {
+		ConnectionPool pool = this.open(new PoolSettings().groupCommit(8));
+		long start = System.currentTimeMillis();
+		pool.write(conn -> {
+			pool.close();
+			return null;
+		});
+		assertTrue(pool.isClosed());
+		assertTrue(System.currentTimeMillis() - start < 5000L);
+	}
+
+}
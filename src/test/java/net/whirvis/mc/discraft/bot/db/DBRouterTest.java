@@ -0,0 +1,60 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DBRouterTest {
+
+	private AtomicInteger opened;
+	private ConnectionPool pool;
+	private CircuitBreaker breaker;
+	private DBRouter router;
+
+	@BeforeEach
+	void setUp() {
+		this.opened = new AtomicInteger();
+		this.pool = new ConnectionPool("down", SQLDialect.SQLITE, () -> {
+			opened.incrementAndGet();
+			throw new SQLNonTransientConnectionException("down", "08001");
+		}, new PoolSettings());
+		this.breaker = new CircuitBreaker("down", new BreakerSettings()
+				.windowSize(4).minCalls(2).failureRate(50).openTime(60000L));
+		this.router = new DBRouter(pool);
+		router.setBreaker(breaker);
+	}
+
+	@AfterEach
+	void tearDown() {
+		pool.close();
+	}
+
+	@Test
+	void failuresOpenTheBreaker() {
+		assertThrows(SQLException.class, () -> router.write(1L, conn -> null));
+		assertThrows(SQLException.class, router::getPrimaryConnection);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(2, opened.get());
+	}
+
+	@Test
+	void openBreakerRefusesWithoutConnecting() {
+		assertThrows(SQLException.class, () -> router.write(conn -> null));
+		assertThrows(SQLException.class, () -> router.getReadConnection(1L));
+		int attempts = opened.get();
+
+		assertThrows(DBUnavailableException.class,
+				() -> router.write(1L, conn -> null));
+		assertThrows(DBUnavailableException.class,
+				() -> router.getReadConnection(1L));
+		assertEquals(attempts, opened.get());
+		assertEquals(2L, breaker.getRejected());
+	}
+
+}
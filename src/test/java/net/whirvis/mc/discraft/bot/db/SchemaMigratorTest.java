@@ -0,0 +1,120 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.whirvis.mc.discraft.bot.util.SQLColumn;
+import net.whirvis.mc.discraft.bot.util.SQLQuery;
+import net.whirvis.mc.discraft.bot.util.SQLTable;
+
+class SchemaMigratorTest {
+
+	private TestDatabase db;
+	private ConnectionPool pool;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		this.db = new TestDatabase("discraft-schema");
+		this.pool = db.open();
+	}
+
+	@AfterEach
+	void tearDown() {
+		db.close();
+	}
+
+	@Test
+	void migrationsAreOnlyAppliedOnce() throws SQLException {
+		assertEquals(4, DiscraftSchema.migrate(pool));
+		assertEquals(0, DiscraftSchema.migrate(pool));
+		try (Connection conn = pool.getConnection()) {
+			assertEquals(4, SchemaMigrator.getVersion(conn));
+		}
+	}
+
+	@Test
+	void primaryKeyIsNotIndexedAgain() throws SQLException {
+		DiscraftSchema.migrate(pool);
+		try (Connection conn = pool.getConnection();
+				ResultSet set = conn.getMetaData().getIndexInfo(null, null,
+						"user_settings", false, true)) {
+			while (set.next()) {
+				assertNotEquals("user_settings_discord_id",
+						set.getString("INDEX_NAME"));
+			}
+		}
+	}
+
+	@Test
+	void handMadeTablesAreKeyed() throws SQLException {
+		try (Connection conn = pool.getConnection();
+				Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE user_settings ("
+					+ "discord_id BIGINT NOT NULL, lang VARCHAR(16))");
+		}
+		DiscraftSchema.migrate(pool);
+
+		SQLTable table = new SQLTable("user_settings");
+		SQLColumn<Long> discordId = table.addKey("discord_id", Long.class);
+		SQLColumn<String> lang = table.addColumn("lang", String.class);
+		SQLQuery upsert = table.upsert(lang);
+		try (Connection conn = pool.getConnection()) {
+			for (String value : new String[] { "en_us", "de_de" }) {
+				try (PreparedStatement stmt = upsert.prepare(conn,
+						SQLDialect.SQLITE, 1L, value)) {
+					stmt.execute();
+				}
+			}
+
+			SQLQuery select = table.select(lang).where(discordId).build();
+			try (PreparedStatement stmt = select.prepare(conn,
+					SQLDialect.SQLITE, 1L);
+					ResultSet set = stmt.executeQuery()) {
+				assertTrue(set.next());
+				assertEquals("de_de", set.getString(1));
+				assertFalse(set.next());
+			}
+		}
+	}
+
+	@Test
+	void existingIndexIsNotCreatedAgain() throws SQLException {
+		/*
+		 * This is what MySQL leaves behind when a migration fails after
+		 * creating an index, as the index is committed regardless.
+		 */
+		try (Connection conn = pool.getConnection();
+				Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE links (id BIGINT, uuid VARCHAR(36))");
+			stmt.execute("CREATE UNIQUE INDEX links_uuid ON links (uuid)");
+		}
+
+		SchemaMigrator migrator = new SchemaMigrator();
+		migrator.add(1, "index links by uuid",
+				SchemaMigrator.createIndex(true, "links_uuid", "links", "uuid"));
+		assertEquals(1, migrator.migrate(pool));
+	}
+
+	@Test
+	void failedMigrationIsNotRecorded() throws SQLException {
+		SchemaMigrator migrator = new SchemaMigrator();
+		migrator.add(1, "broken migration",
+				"CREATE TABLE IF NOT EXISTS broken (id BIGINT)",
+				"INSERT INTO missing VALUES (1)");
+		assertThrows(SQLException.class, () -> migrator.migrate(pool));
+		try (Connection conn = pool.getConnection()) {
+			assertEquals(0, SchemaMigrator.getVersion(conn));
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package net.whirvis.mc.discraft.bot.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A SQLite database in a temporary file, for tests which need a real
+ * database.
+ * <p>
+ * Every pool opened to the database is closed along with it, after which the
+ * file is deleted.
+ */
+public class TestDatabase implements AutoCloseable {
+
+	private final File file;
+	private final String url;
+	private final List<ConnectionPool> pools;
+
+	/**
+	 * Creates a new, empty database.
+	 *
+	 * @param prefix
+	 *            the prefix of the file name, at least three characters long.
+	 * @throws NullPointerException
+	 *             if {@code prefix} is {@code null}.
+	 * @throws IOException
+	 *             if the file could not be created.
+	 */
+	public TestDatabase(@NotNull String prefix) throws IOException {
+		Objects.requireNonNull(prefix, "prefix");
+		this.file = File.createTempFile(prefix, ".db");
+		this.url = "jdbc:sqlite:" + file.getAbsolutePath();
+		this.pools = new ArrayList<>();
+	}
+
+	/**
+	 * Opens a connection pool to the database.
+	 *
+	 * @param name
+	 *            the pool name.
+	 * @param settings
+	 *            the pool settings.
+	 * @return the pool.
+	 * @throws NullPointerException
+	 *             if {@code name} or {@code settings} are {@code null}.
+	 */
+	@NotNull
+	public ConnectionPool open(@NotNull String name,
+			@NotNull PoolSettings settings) {
+		ConnectionPool pool = new ConnectionPool(name, SQLDialect.SQLITE,
+				() -> DriverManager.getConnection(url), settings,
+				SQLDialect.SQLITE.databaseOf(url));
+		pools.add(pool);
+		return pool;
+	}
+
+	/**
+	 * Opens a connection pool to the database, with the default settings.
+	 *
+	 * @return the pool.
+	 */
+	@NotNull
+	public ConnectionPool open() {
+		return this.open("test", new PoolSettings());
+	}
+
+	@Override
+	public void close() {
+		for (ConnectionPool pool : pools) {
+			pool.close();
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,136 @@
+package net.whirvis.mc.discraft.bot.guild;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.whirvis.mc.discraft.bot.db.ConnectionPool;
+import net.whirvis.mc.discraft.bot.db.DBExecutor;
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.db.DiscraftSchema;
+import net.whirvis.mc.discraft.bot.db.TestDatabase;
+
+class GuildPrefixesTest {
+
+	private static final long GUILD = 81384788765712384L;
+	private static final long OTHER_GUILD = 172018499005317120L;
+
+	private TestDatabase db;
+	private ConnectionPool pool;
+	private DBExecutor executor;
+	private GuildPrefixes prefixes;
+
+	@BeforeEach
+	void setUp() throws IOException, SQLException {
+		this.db = new TestDatabase("discraft-prefixes");
+		this.pool = db.open();
+		DiscraftSchema.migrate(pool);
+
+		this.executor = new DBExecutor("test", 1, 16);
+		this.prefixes =
+				new GuildPrefixes(new DBRouter(pool), executor, "!discraft");
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		executor.shutdown(10L, TimeUnit.SECONDS);
+		db.close();
+	}
+
+	@Test
+	void defaultPrefixNeedsWhitespaceAfterIt() {
+		assertEquals(9, prefixes.match(0L, "!discraft help"));
+		assertEquals(9, prefixes.match(GUILD, "!discraft\thelp"));
+		assertEquals(-1, prefixes.match(GUILD, "!discrafthelp"));
+		assertEquals(-1, prefixes.match(GUILD, "!discraft"));
+		assertEquals(-1, prefixes.match(GUILD, "!disc help"));
+		assertEquals(-1, prefixes.match(GUILD, "hello there"));
+		assertEquals(-1, prefixes.match(GUILD, ""));
+	}
+
+	@Test
+	void prefixesIgnoreCase() {
+		assertEquals(9, prefixes.match(GUILD, "!DisCraft help"));
+		assertTrue(prefixes.isPrefix(GUILD, "!DISCRAFT"));
+	}
+
+	@Test
+	void customPrefixOnlyWorksInItsGuild() throws SQLException {
+		prefixes.setPrefix(GUILD, "?");
+		assertEquals("?", prefixes.getPrefix(GUILD));
+		assertEquals(1, prefixes.getCustomCount());
+
+		assertEquals(1, prefixes.match(GUILD, "? help"));
+		assertEquals(-1, prefixes.match(OTHER_GUILD, "? help"));
+		assertEquals(-1, prefixes.match(0L, "? help"));
+
+		/* the default prefix keeps working everywhere */
+		assertEquals(9, prefixes.match(GUILD, "!discraft help"));
+		assertEquals(9, prefixes.match(OTHER_GUILD, "!discraft help"));
+
+		assertTrue(prefixes.isPrefix(GUILD, "?"));
+		assertFalse(prefixes.isPrefix(OTHER_GUILD, "?"));
+		assertFalse(prefixes.isPrefix(GUILD, null));
+	}
+
+	@Test
+	void longerPrefixesAreFoundPastShorterOnes() throws SQLException {
+		prefixes.setPrefix(GUILD, "!");
+		prefixes.setPrefix(OTHER_GUILD, "!!");
+
+		assertEquals(1, prefixes.match(GUILD, "! help"));
+		assertEquals(-1, prefixes.match(GUILD, "!! help"));
+		assertEquals(2, prefixes.match(OTHER_GUILD, "!! help"));
+		assertEquals(-1, prefixes.match(OTHER_GUILD, "! help"));
+		assertEquals(9, prefixes.match(GUILD, "!discraft help"));
+	}
+
+	@Test
+	void resettingRemovesTheCustomPrefix() throws Exception {
+		prefixes.setPrefixAsync(GUILD, "?").get(10L, TimeUnit.SECONDS);
+		prefixes.setPrefixAsync(GUILD, null).get(10L, TimeUnit.SECONDS);
+
+		assertNull(prefixes.getPrefix(GUILD));
+		assertEquals(-1, prefixes.match(GUILD, "? help"));
+		assertEquals(0, prefixes.getCustomCount());
+	}
+
+	@Test
+	void reloadReadsPrefixesFromTheDatabase() throws SQLException {
+		try (Connection conn = pool.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(
+						"INSERT INTO guild_settings (guild_id, prefix)"
+								+ " VALUES (?, ?)")) {
+			stmt.setLong(1, GUILD);
+			stmt.setString(2, "$$");
+			stmt.executeUpdate();
+		}
+		assertEquals(-1, prefixes.match(GUILD, "$$ help"));
+
+		prefixes.reload();
+		assertEquals("$$", prefixes.getPrefix(GUILD));
+		assertEquals(2, prefixes.match(GUILD, "$$ help"));
+	}
+
+	@Test
+	void invalidPrefixesAreRejected() {
+		assertThrows(IllegalArgumentException.class,
+				() -> GuildPrefixes.checkPrefix(""));
+		assertThrows(IllegalArgumentException.class,
+				() -> GuildPrefixes.checkPrefix("a b"));
+		assertThrows(IllegalArgumentException.class, () -> GuildPrefixes
+				.checkPrefix(new String(new char[GuildPrefixes.MAX_LENGTH + 1])
+						.replace('\0', 'x')));
+		assertThrows(IllegalArgumentException.class,
+				() -> prefixes.setPrefix(GUILD, "a b"));
+	}
+
+}
@@ -0,0 +1,101 @@
+package net.whirvis.mc.discraft.bot.user;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.whirvis.mc.discraft.bot.db.ConnectionPool;
+import net.whirvis.mc.discraft.bot.db.DBRouter;
+import net.whirvis.mc.discraft.bot.db.TestDatabase;
+
+class SettingsFlusherTest {
+
+	private TestDatabase db;
+	private ConnectionPool pool;
+	private DBRouter router;
+	private SettingsFlusher flusher;
+
+	@BeforeEach
+	void setUp() throws IOException, SQLException {
+		this.db = new TestDatabase("discraft-flush");
+		this.pool = db.open();
+		this.router = new DBRouter(pool);
+		this.flusher = new SettingsFlusher(router, 16);
+
+		/* a value the database will always reject, for any user */
+		try (Connection conn = pool.getConnection();
+				Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE user_settings ("
+					+ "discord_id INTEGER PRIMARY KEY, "
+					+ "lang TEXT CHECK (lang <> 'poison'))");
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		db.close();
+	}
+
+	private UserSettings newSettings(long discordId, String lang) {
+		UserSettings settings = new UserSettings(router, discordId, flusher);
+		settings.setLang(lang);
+		return settings;
+	}
+
+	private String langOf(long discordId) throws SQLException {
+		try (Connection conn = pool.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(
+						"SELECT lang FROM user_settings WHERE discord_id = ?")) {
+			stmt.setLong(1, discordId);
+			try (ResultSet set = stmt.executeQuery()) {
+				return set.next() ? set.getString(1) : null;
+			}
+		}
+	}
+
+	@Test
+	void rejectedValuesAreDropped() throws SQLException {
+		UserSettings first = this.newSettings(1L, "en_us");
+		UserSettings poisoned = this.newSettings(2L, "poison");
+		UserSettings last = this.newSettings(3L, "de_de");
+		flusher.flush();
+
+		assertEquals("en_us", this.langOf(1L));
+		assertNull(this.langOf(2L));
+		assertEquals("de_de", this.langOf(3L));
+		assertEquals(2L, flusher.getFlushed());
+		assertEquals(1L, flusher.getDropped());
+		assertFalse(first.isDirty());
+		assertFalse(poisoned.isDirty());
+		assertFalse(last.isDirty());
+
+		/* the next flush must not be held back by the dropped value */
+		last.setLang("fr_fr");
+		flusher.flush();
+		assertEquals("fr_fr", this.langOf(3L));
+		assertEquals(1L, flusher.getDropped());
+	}
+
+	@Test
+	void otherFailuresKeepValuesDirty() throws SQLException {
+		UserSettings settings = this.newSettings(1L, "en_us");
+		try (Connection conn = pool.getConnection();
+				Statement stmt = conn.createStatement()) {
+			stmt.execute("DROP TABLE user_settings");
+		}
+
+		assertThrows(SQLException.class, flusher::flush);
+		assertTrue(settings.isDirty());
+		assertEquals(0L, flusher.getDropped());
+	}
+
+}
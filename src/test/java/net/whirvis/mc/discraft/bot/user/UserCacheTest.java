@@ -0,0 +1,142 @@
+package net.whirvis.mc.discraft.bot.user;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress tests for {@link UserCache}, run from many threads at once.
+ */
+class UserCacheTest {
+
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 20000;
+
+	private ExecutorService threads;
+
+	@BeforeEach
+	void setUp() {
+		this.threads = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		threads.shutdownNow();
+		threads.awaitTermination(10L, TimeUnit.SECONDS);
+	}
+
+	private static DiscraftUser newUser(long discordId) {
+		return new DiscraftUser(null, null, discordId, null);
+	}
+
+	/*
+	 * Starts every task at the same time, to give them the best chance of
+	 * running into each other, and rethrows the first failure.
+	 */
+	private void race(Runnable task) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(threads.submit(() -> {
+				start.await();
+				task.run();
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(60L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void concurrentPutsKeepOneInstancePerUser() throws Exception {
+		UserCache cache = new UserCache(4, 100000, user -> true);
+		ConcurrentHashMap<Long, DiscraftUser> seen = new ConcurrentHashMap<>();
+
+		this.race(() -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < ROUNDS; i++) {
+				long discordId = random.nextLong(1000L);
+				DiscraftUser cached =
+						cache.putIfAbsent(newUser(discordId), false);
+				DiscraftUser first = seen.putIfAbsent(discordId, cached);
+				assertSame(first != null ? first : cached, cached,
+						"two instances of user " + discordId);
+			}
+		});
+
+		assertEquals(seen.size(), cache.size());
+		assertEquals(0L, cache.getEvictions());
+	}
+
+	@Test
+	void referencedUsersAreNeverEvicted() throws Exception {
+		UserCache cache = new UserCache(2, 16, user -> true);
+
+		this.race(() -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < ROUNDS; i++) {
+				long discordId = random.nextLong(256L);
+				DiscraftUser user = cache.get(discordId);
+				if (user == null) {
+					user = cache.putIfAbsent(newUser(discordId), true);
+				}
+				try {
+					assertSame(user, cache.get(discordId, false),
+							"referenced user " + discordId + " was evicted");
+				} finally {
+					user.close(); /* from get(discordId, false) */
+					user.close();
+				}
+			}
+		});
+
+		assertTrue(cache.getEvictions() > 0, "nothing was evicted");
+	}
+
+	@Test
+	void sizeStaysBoundedOnceUnreferenced() throws Exception {
+		UserCache cache = new UserCache(4, 64, user -> true);
+
+		this.race(() -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < ROUNDS; i++) {
+				long discordId = random.nextLong(10000L);
+				cache.putIfAbsent(newUser(discordId), false);
+			}
+		});
+
+		int bound = 4 * cache.getSegmentCapacity();
+		assertTrue(cache.size() <= bound,
+				"cache grew to " + cache.size() + " past " + bound);
+		assertEquals(0L, cache.getMisses());
+	}
+
+	@Test
+	void hitsAndMissesAreCounted() {
+		UserCache cache = new UserCache(4, 64, user -> true);
+		cache.putIfAbsent(newUser(1L), false);
+
+		assertNotNull(cache.get(1L));
+		assertNull(cache.get(2L));
+		assertNotNull(cache.get(1L, false));
+		assertNull(cache.get(2L, false));
+
+		assertEquals(1L, cache.getHits());
+		assertEquals(1L, cache.getMisses());
+	}
+
+}
@@ -0,0 +1,153 @@
+package net.whirvis.mc.discraft.bot.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class LongMapTest {
+
+	/*
+	 * Keys which all share the same home slot in a map with the default
+	 * capacity of 16. Removing from the middle of such a run is what the
+	 * backward shift has to get right.
+	 */
+	private static List<Long> collidingKeys(int count) {
+		List<Long> keys = new ArrayList<>();
+		int home = homeOf(1L);
+		for (long key = 1L; keys.size() < count; key++) {
+			if (homeOf(key) == home) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	/* must match the hash used by LongMap */
+	private static int homeOf(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & 15;
+	}
+
+	@Test
+	void putGetAndRemove() {
+		LongMap<String> map = new LongMap<>();
+		assertNull(map.put(42L, "a"));
+		assertEquals("a", map.put(42L, "b"));
+		assertEquals("b", map.get(42L));
+		assertTrue(map.containsKey(42L));
+		assertEquals(1, map.size());
+
+		assertEquals("b", map.remove(42L));
+		assertNull(map.get(42L));
+		assertNull(map.remove(42L));
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	void zeroKeyIsStoredLikeAnyOther() {
+		LongMap<String> map = new LongMap<>();
+		assertFalse(map.containsKey(0L));
+		assertNull(map.get(0L));
+
+		assertNull(map.put(0L, "zero"));
+		map.put(7L, "seven");
+		assertTrue(map.containsKey(0L));
+		assertEquals("zero", map.get(0L));
+		assertEquals(2, map.size());
+
+		Set<String> values = new HashSet<>(map.values());
+		assertEquals(new HashSet<>(Arrays.asList("zero", "seven")),
+				values);
+
+		assertEquals("zero", map.remove(0L));
+		assertFalse(map.containsKey(0L));
+		assertEquals("seven", map.get(7L));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	void removalShiftsCollidingKeysBack() {
+		List<Long> keys = collidingKeys(5);
+		LongMap<Long> map = new LongMap<>();
+		for (long key : keys) {
+			map.put(key, key);
+		}
+
+		/* remove from the middle of the run, then the start */
+		assertEquals(keys.get(2), map.remove(keys.get(2)));
+		assertEquals(keys.get(0), map.remove(keys.get(0)));
+		for (int i = 0; i < keys.size(); i++) {
+			long key = keys.get(i);
+			if (i == 0 || i == 2) {
+				assertFalse(map.containsKey(key), "removed " + key);
+			} else {
+				assertEquals(Long.valueOf(key), map.get(key),
+						"lost " + key + " after a removal");
+			}
+		}
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	void matchesHashMapUnderRandomChurn() {
+		Random random = new Random(20210801L);
+		LongMap<Long> map = new LongMap<>();
+		Map<Long, Long> expected = new HashMap<>();
+		for (int i = 0; i < 200000; i++) {
+			long key = random.nextInt(2000) - 100; /* includes zero */
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, (long) i),
+						map.put(key, (long) i));
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+		assertEquals(new HashSet<>(expected.values()),
+				new HashSet<>(map.values()));
+	}
+
+	@Test
+	void removeIfRemovesMatchingValues() {
+		LongMap<Long> map = new LongMap<>();
+		for (long key = 0L; key < 1000L; key++) {
+			map.put(key, key);
+		}
+
+		assertEquals(500, map.removeIf(value -> value % 2 == 0));
+		assertEquals(500, map.size());
+		for (long key = 0L; key < 1000L; key++) {
+			assertEquals(key % 2 != 0, map.containsKey(key));
+		}
+	}
+
+	@Test
+	void valuesNearSamplesDistinctValues() {
+		LongMap<Long> map = new LongMap<>();
+		for (long key = 1L; key <= 100L; key++) {
+			map.put(key, key);
+		}
+
+		for (int position = 0; position < 256; position++) {
+			List<Long> sample = map.valuesNear(position, 8);
+			assertEquals(8, sample.size());
+			assertEquals(8, new HashSet<>(sample).size());
+		}
+		assertEquals(100, map.valuesNear(0, 1000).size());
+		assertTrue(new LongMap<Long>().valuesNear(0, 8).isEmpty());
+	}
+
+}
@@ -0,0 +1,47 @@
+package net.whirvis.mc.discraft.bot.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class PrefixTrieTest {
+
+	@Test
+	void findsEachPrefixShortestFirst() {
+		PrefixTrie trie = new PrefixTrie(Arrays.asList("!", "!!", "!discraft"));
+		String text = "!discraft help";
+		assertEquals(1, trie.match(text, 0));
+		assertEquals(9, trie.match(text, 2));
+		assertEquals(-1, trie.match(text, 10));
+
+		assertEquals(1, trie.match("!!", 0));
+		assertEquals(2, trie.match("!!", 2));
+	}
+
+	@Test
+	void duplicatesAreCountedOnce() {
+		PrefixTrie trie = new PrefixTrie(Arrays.asList("?", "?", "!"));
+		assertEquals(2, trie.size());
+	}
+
+	@Test
+	void matchingIgnoresCaseLikeRegionMatches() {
+		PrefixTrie trie = new PrefixTrie(Arrays.asList("Ab", "\u00c9t\u00e9"));
+		assertEquals(2, trie.match("aB", 0));
+		assertEquals(2, trie.match("AB cd", 0));
+		assertEquals(3, trie.match("\u00e9T\u00c9!", 0));
+		assertEquals(-1, trie.match("a", 0));
+	}
+
+	@Test
+	void emptyTrieMatchesNothing() {
+		PrefixTrie trie = new PrefixTrie(Collections.emptyList());
+		assertEquals(0, trie.size());
+		assertEquals(-1, trie.match("!discraft help", 0));
+		assertEquals(-1, trie.match("", 0));
+	}
+
+}